@@ -0,0 +1,54 @@
+package com.example.location.annotation;
+
+import com.example.location.controllers.LocationController;
+import com.example.location.dto.BulkShareDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owner check overhead per request: resolving the uid and lid arguments by reflection on every call, as the aspect
+ * used to, against the per-method lookup it does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OwnerArgumentsBenchmark {
+
+    private final AuthorizationAspect aspect = new AuthorizationAspect(null, null);
+    private final Map<Method, AuthorizationAspect.OwnerArguments> cache = new ConcurrentHashMap<>();
+
+    private Method method;
+    private Object[] args;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+
+        method = LocationController.class.getMethod("saveShares", Long.class, BulkShareDTO.class);
+        args = new Object[]{1L, new BulkShareDTO(42L, Collections.emptyList())};
+    }
+
+    @Benchmark
+    public Long resolvedPerCall() {
+
+        AuthorizationAspect.OwnerArguments arguments = aspect.resolveOwnerArguments(method);
+        return arguments.uid(args) + arguments.lid(args);
+    }
+
+    @Benchmark
+    public Long cached() {
+
+        AuthorizationAspect.OwnerArguments arguments = cache.computeIfAbsent(method, aspect::resolveOwnerArguments);
+        return arguments.uid(args) + arguments.lid(args);
+    }
+}
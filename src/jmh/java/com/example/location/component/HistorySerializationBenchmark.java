@@ -0,0 +1,62 @@
+package com.example.location.component;
+
+import com.example.location.entities.History;
+import com.example.location.entities.Location;
+import com.example.location.util.Util;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two halves of a history event: the snapshot taken on the request path and the serialization done later on
+ * the writer thread. The serializer is not thread safe, so the state is per thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistorySerializationBenchmark {
+
+    private final HistorySerializer serializer = new HistorySerializer(new ObjectMapper());
+
+    private Location location;
+    private HistoryEvent created;
+    private HistoryEvent updated;
+
+    @Setup
+    public void setUp() {
+
+        location = new Location(42L, 7L, "Home", "Abay Avenue 10, Almaty");
+        Location renamed = new Location(42L, 7L, "Office", "Abay Avenue 10, Almaty");
+        long now = System.currentTimeMillis();
+        created = new HistoryEvent(7L, Util.ObjectType.LOCATION, Util.ActionType.CREATED, null,
+            serializer.snapshot(location), now);
+        updated = new HistoryEvent(7L, Util.ObjectType.LOCATION, Util.ActionType.UPDATED,
+            serializer.snapshot(location), serializer.snapshot(renamed), now);
+    }
+
+    @Benchmark
+    public Object snapshot() {
+
+        return serializer.snapshot(location);
+    }
+
+    @Benchmark
+    public History serializeCreated() throws IOException {
+
+        return serializer.toHistory(created);
+    }
+
+    @Benchmark
+    public History serializeUpdated() throws IOException {
+
+        return serializer.toHistory(updated);
+    }
+}
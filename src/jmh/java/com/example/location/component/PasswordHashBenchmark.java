@@ -0,0 +1,60 @@
+package com.example.location.component;
+
+import com.example.location.configuration.PasswordProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU time of one login and one registration per BCrypt cost. A hashing thread serves about 1000 / score logins
+ * per second, which sizes {@code location.password.threads} for a target login rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PasswordHashBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"8", "10", "12"})
+    public int cost;
+
+    private PasswordHasher hasher;
+    private String stored;
+
+    @Setup
+    public void setUp() {
+
+        PasswordProperties properties = new PasswordProperties();
+        properties.setCost(cost);
+        properties.setThreads(1);
+        hasher = new PasswordHasher(properties);
+        stored = hasher.hash(PASSWORD).join();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+
+        hasher.destroy();
+    }
+
+    @Benchmark
+    public boolean login() {
+
+        return hasher.matches(PASSWORD, stored).join();
+    }
+
+    @Benchmark
+    public String register() {
+
+        return hasher.hash(PASSWORD).join();
+    }
+}
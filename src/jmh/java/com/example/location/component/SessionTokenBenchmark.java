@@ -0,0 +1,58 @@
+package com.example.location.component;
+
+import com.example.location.configuration.SessionProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Clock;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost the session token check adds to every authorized request, for a valid token and for a forged one. Run with
+ * {@code -prof gc} to confirm that verification does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionTokenBenchmark {
+
+    private SessionTokens sessionTokens;
+    private String token;
+    private String forged;
+
+    @Setup
+    public void setUp() {
+
+        SessionProperties properties = new SessionProperties();
+        properties.setSecret(Base64.getEncoder().encodeToString(new byte[32]));
+        sessionTokens = new SessionTokens(properties, Clock.systemUTC());
+        token = sessionTokens.issue(42L);
+        forged = token.substring(0, token.length() - 2) + (token.charAt(token.length() - 2) == 'A' ? "BA" : "AA");
+        // a revocation of another user, so that the denylist lookup is measured too
+        sessionTokens.revokeUser(43L);
+    }
+
+    @Benchmark
+    public long verify() {
+
+        return sessionTokens.verify(token);
+    }
+
+    @Benchmark
+    public long verifyForged() {
+
+        return sessionTokens.verify(forged);
+    }
+
+    @Benchmark
+    public String issue() {
+
+        return sessionTokens.issue(42L);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.location.repositories;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Map;
+
+/**
+ * A single-row {@link ResultSet} answering the getters the row mappers use, so that mapping cost can be measured
+ * without a driver.
+ */
+final class FakeResultSet {
+
+    private FakeResultSet() {
+
+    }
+
+    static ResultSet of(Map<String, Object> row) {
+
+        return (ResultSet) Proxy.newProxyInstance(FakeResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+            (proxy, method, args) -> {
+                Object value = args != null && args.length > 0 ? row.get((String) args[0]) : null;
+                switch (method.getName()) {
+                    case "getLong":
+                        return value == null ? 0L : ((Number) value).longValue();
+                    case "getString":
+                        return value == null ? null : value.toString();
+                    case "getTimestamp":
+                        return (Timestamp) value;
+                    case "getObject":
+                        return value;
+                    case "wasNull":
+                        return false;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.location.repositories;
+
+import com.example.location.dto.SharedLocation;
+import com.example.location.dto.UserAccessDto;
+import com.example.location.entities.Access;
+import com.example.location.entities.History;
+import com.example.location.entities.Location;
+import com.example.location.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of the repository row mappers, column lookups by label included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RowMapperBenchmark {
+
+    private final LocationRepositoryImpl.LocationRowMapper locationRowMapper =
+        new LocationRepositoryImpl.LocationRowMapper();
+    private final LocationRepositoryImpl.SharedLocationRowMapper sharedLocationRowMapper =
+        new LocationRepositoryImpl.SharedLocationRowMapper();
+
+    private ResultSet row;
+
+    @Setup
+    public void setUp() {
+
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("lid", 42L);
+        columns.put("uid", 7L);
+        columns.put("aid", 3L);
+        columns.put("hid", 11L);
+        columns.put("action_by", 7L);
+        columns.put("name", "Home");
+        columns.put("address", "Abay Avenue 10, Almaty");
+        columns.put("email", "john.smith@example.com");
+        columns.put("firstname", "John");
+        columns.put("lastname", "Smith");
+        columns.put("password", "secret");
+        columns.put("type", "read-only");
+        columns.put("accessType", "owner");
+        columns.put("object_type", "LOCATION");
+        columns.put("action", "CREATED");
+        columns.put("action_details", "{\"lid\":42,\"uid\":7,\"name\":\"Home\",\"address\":\"Abay Avenue 10\"}");
+        columns.put("date", new Timestamp(1_700_000_000_000L));
+        row = FakeResultSet.of(columns);
+    }
+
+    @Benchmark
+    public Location location() throws SQLException {
+
+        return locationRowMapper.mapRow(row, 0);
+    }
+
+    @Benchmark
+    public SharedLocation sharedLocation() throws SQLException {
+
+        return sharedLocationRowMapper.mapRow(row, 0);
+    }
+
+    @Benchmark
+    public Access access() throws SQLException {
+
+        return AccessRepositoryImpl.ACCESS_ROW_MAPPER.mapRow(row, 0);
+    }
+
+    @Benchmark
+    public UserAccessDto userAccess() throws SQLException {
+
+        return AccessRepositoryImpl.USER_ACCESS_ROW_MAPPER.mapRow(row, 0);
+    }
+
+    @Benchmark
+    public User user() throws SQLException {
+
+        return UserRepositoryImpl.USER_ROW_MAPPER.mapRow(row, 0);
+    }
+
+    @Benchmark
+    public History history() throws SQLException {
+
+        return HistoryRepositoryImpl.HISTORY_ROW_MAPPER.mapRow(row, 0);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.location.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Email validation on login: the precompiled pattern against compiling the regex on every call, as it used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EmailValidationBenchmark {
+
+    @Param({"john.smith@example.com", "not-an-email"})
+    public String email;
+
+    @Benchmark
+    public boolean precompiled() {
+
+        return UserServiceImpl.isValidEmail(email);
+    }
+
+    @Benchmark
+    public boolean compiledPerCall() {
+
+        return Pattern.compile(UserServiceImpl.EMAIL_REGEX).matcher(email).matches();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.location.services;
+
+import com.example.location.dto.LocationDTO;
+import com.example.location.entities.Access;
+import com.example.location.entities.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembly of one /user/locations page out of its locations and their access rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationDtoBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int locations;
+
+    @Param({"3"})
+    public int sharesPerLocation;
+
+    private List<Location> locationRows;
+    private List<Access> accessRows;
+
+    @Setup
+    public void setUp() {
+
+        locationRows = new ArrayList<>(locations);
+        accessRows = new ArrayList<>(locations * sharesPerLocation);
+        for (long lid = 1; lid <= locations; lid++) {
+            locationRows.add(new Location(lid, 1L, "Location " + lid, "Address " + lid));
+            for (long uid = 2; uid < 2 + sharesPerLocation; uid++) {
+                accessRows.add(new Access(lid * 100 + uid, uid, lid, "read-only"));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<LocationDTO> toLocationDTOs() {
+
+        return LocationServiceImpl.toLocationDTOs(locationRows, accessRows);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.location.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Util#hideEmail} runs for every log line that mentions a user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HideEmailBenchmark {
+
+    @Param({"jo@example.com", "john.smith.long.address@example.com"})
+    public String email;
+
+    @Benchmark
+    public String hideEmail() {
+
+        return Util.hideEmail(email);
+    }
+}
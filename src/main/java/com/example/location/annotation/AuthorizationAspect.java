@@ -1,10 +1,15 @@
 package com.example.location.annotation;
 
+import com.example.location.component.MetricsContext;
 import com.example.location.dto.AccessDTO;
+import com.example.location.dto.BulkShareDTO;
 import com.example.location.dto.UserLocationDTO;
 import com.example.location.entities.Location;
 import com.example.location.services.UserService;
 import com.example.location.util.BadRequestException;
+import com.example.location.util.UnauthorizedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -12,13 +17,20 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
+import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Aspect
 @Component
@@ -26,51 +38,168 @@ import java.util.concurrent.CompletableFuture;
 @Log4j2
 public class AuthorizationAspect {
 
+    private static final Map<Class<?>, Function<Object, Long>> LID_EXTRACTORS = new LinkedHashMap<>();
+
+    static {
+        LID_EXTRACTORS.put(Location.class, arg -> ((Location) arg).getLid());
+        LID_EXTRACTORS.put(AccessDTO.class, arg -> ((AccessDTO) arg).getLid());
+        LID_EXTRACTORS.put(UserLocationDTO.class, arg -> ((UserLocationDTO) arg).getLid());
+        LID_EXTRACTORS.put(BulkShareDTO.class, arg -> ((BulkShareDTO) arg).getLid());
+    }
+
     private final UserService userService;
-    private final ParameterNameDiscoverer parameterNameDiscoverer = new LocalVariableTableParameterNameDiscoverer();
+    private final MeterRegistry meterRegistry;
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<Method, OwnerArguments> ownerArguments = new ConcurrentHashMap<>();
 
     @Before("@annotation(AuthorizationRequired) && args(uid,..)")
     public void checkAuthorization(Long uid) {
 
-        if (uid == null || uid <= 0) throw new BadRequestException();
+        if (uid == null || uid <= 0) {
+            meterRegistry.counter("authorization.rejected", "endpoint", MetricsContext.endpoint()).increment();
+            if (isTokenRejected()) {
+                throw new UnauthorizedException("Invalid or expired session token");
+            }
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Whether the request came with a session token that {@link SessionTokenFilter} did not accept.
+     */
+    private static boolean isTokenRejected() {
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null
+            && attributes.getAttribute(SessionTokenFilter.REJECTED, RequestAttributes.SCOPE_REQUEST) != null;
     }
 
     @Around("@annotation(AuthorizationOwner)")
-    public Object checkOwner(ProceedingJoinPoint joinPoint) throws Throwable {
+    public Object checkOwner(ProceedingJoinPoint joinPoint) {
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        OwnerArguments arguments = ownerArguments.computeIfAbsent(method, this::resolveOwnerArguments);
 
         Object[] args = joinPoint.getArgs();
+        Long uid = arguments.uid(args);
+        Long lid = arguments.lid(args);
+
+        String endpoint = MetricsContext.endpoint();
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return userService.authorizeOwnerOrAdmin(uid, lid).thenCompose(authorized -> {
+            boolean denied = Boolean.FALSE.equals(authorized);
+            // time of the owner/admin decision only, the endpoint itself is timed by http.server.requests
+            sample.stop(meterRegistry.timer("authorization.owner", "endpoint", endpoint,
+                "outcome", denied ? "denied" : "granted"));
+            if (denied) {
+                return CompletableFuture.<Object>completedFuture(
+                    ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied"));
+            }
+            return proceed(joinPoint, request);
+        });
+    }
+
+    /**
+     * Runs the controller method. Unless the decision was cached, this is the JDBC thread that answered the check,
+     * so the request's context is handed over for the method to find it where it would on the request thread.
+     */
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Object> proceed(ProceedingJoinPoint joinPoint, RequestAttributes request) {
+
+        RequestAttributes previous = RequestContextHolder.getRequestAttributes();
+        boolean handOver = request != null && previous != request;
+        if (handOver) {
+            RequestContextHolder.setRequestAttributes(request);
+        }
+        try {
+            return (CompletableFuture<Object>) joinPoint.proceed();
+        } catch (Throwable ex) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        } finally {
+            if (handOver) {
+                RequestContextHolder.setRequestAttributes(previous);
+            }
+        }
+    }
 
-        Long uid = null;
-        Long lid = null;
+    /**
+     * Works out once per method where the uid and lid come from, so that a request only has to index into its
+     * arguments.
+     */
+    OwnerArguments resolveOwnerArguments(Method method) {
+
+        // the method runs once the check completes, so only a future can stand for its result
+        if (!CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+            throw new IllegalStateException("@AuthorizationOwner method must return a CompletableFuture: " + method);
+        }
+
+        String[] parameterNames = parameterNameDiscoverer.getParameterNames(method);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        int uidIndex = -1;
+        int lidIndex = -1;
+        Function<Object, Long> lidExtractor = null;
 
-        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        String[] parameterNames = parameterNameDiscoverer.getParameterNames(methodSignature.getMethod());
         if (parameterNames != null) {
             for (int i = 0; i < parameterNames.length; i++) {
                 if ("uid".equals(parameterNames[i])) {
-                    uid = (Long) args[i];
+                    uidIndex = i;
                 } else if ("lid".equals(parameterNames[i])) {
-                    lid = (Long) args[i];
-                } else if (args[i] instanceof Location) {
-                    Location location = (Location) args[i];
-                    lid = location.getLid();
-                } else if (args[i] instanceof AccessDTO) {
-                    AccessDTO accessDTO = (AccessDTO) args[i];
-                    lid = accessDTO.getLid();
-                } else if (args[i] instanceof UserLocationDTO) {
-                    UserLocationDTO userLocationDTO = (UserLocationDTO) args[i];
-                    lid = userLocationDTO.getLid();
+                    lidIndex = i;
+                    lidExtractor = arg -> (Long) arg;
+                } else {
+                    Function<Object, Long> extractor = findLidExtractor(parameterTypes[i]);
+                    if (extractor != null) {
+                        lidIndex = i;
+                        lidExtractor = extractor;
+                    }
                 }
             }
         }
 
-        Boolean authorized = userService.authorizeOwnerOrAdmin(uid, lid).join();
+        if (uidIndex < 0 || lidIndex < 0) {
+            log.warn("Could not resolve uid/lid arguments of {}", method);
+        }
+        return new OwnerArguments(uidIndex, lidIndex, lidExtractor);
+    }
+
+    private static Function<Object, Long> findLidExtractor(Class<?> type) {
 
-        if (Boolean.FALSE.equals(authorized)) {
-            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied"));
+        for (Map.Entry<Class<?>, Function<Object, Long>> entry : LID_EXTRACTORS.entrySet()) {
+            if (entry.getKey().isAssignableFrom(type)) {
+                return entry.getValue();
+            }
         }
+        return null;
+    }
+
+    static final class OwnerArguments {
+
+        private final int uidIndex;
+        private final int lidIndex;
+        private final Function<Object, Long> lidExtractor;
+
+        OwnerArguments(int uidIndex, int lidIndex, Function<Object, Long> lidExtractor) {
 
-        return joinPoint.proceed();
+            this.uidIndex = uidIndex;
+            this.lidIndex = lidIndex;
+            this.lidExtractor = lidExtractor;
+        }
+
+        Long uid(Object[] args) {
+
+            return uidIndex < 0 ? null : (Long) args[uidIndex];
+        }
+
+        Long lid(Object[] args) {
+
+            if (lidIndex < 0 || args[lidIndex] == null) {
+                return null;
+            }
+            return lidExtractor.apply(args[lidIndex]);
+        }
     }
 }
-
@@ -5,6 +5,11 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Runs the method only if the uid is the owner or an admin of the location. The method must return a
+ * {@link java.util.concurrent.CompletableFuture}, as it may run after the check on another thread; the request
+ * context is available to it there.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface AuthorizationOwner {
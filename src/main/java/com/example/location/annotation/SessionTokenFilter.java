@@ -0,0 +1,77 @@
+package com.example.location.annotation;
+
+import com.example.location.component.SessionTokens;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+
+/**
+ * Verifies the session token of the Authorization header and hands the controllers the uid it was issued to, so
+ * that they keep binding a {@code Long uid} from the header. A missing or invalid token reaches them as a missing
+ * header; an invalid one is also marked on the request for {@link AuthorizationAspect} to answer 401.
+ */
+@Component
+@AllArgsConstructor
+public class SessionTokenFilter extends OncePerRequestFilter {
+
+    public static final String TOKEN = SessionTokenFilter.class.getName() + ".token";
+    public static final String REJECTED = SessionTokenFilter.class.getName() + ".rejected";
+
+    private final SessionTokens sessionTokens;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws ServletException, IOException {
+
+        String token = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (token == null || token.isEmpty()) {
+            chain.doFilter(new AuthorizedRequest(request, null), response);
+            return;
+        }
+        long uid = sessionTokens.verify(token);
+        if (uid <= 0) {
+            request.setAttribute(REJECTED, Boolean.TRUE);
+            chain.doFilter(new AuthorizedRequest(request, null), response);
+            return;
+        }
+        request.setAttribute(TOKEN, token);
+        chain.doFilter(new AuthorizedRequest(request, Long.toString(uid)), response);
+    }
+
+    private static final class AuthorizedRequest extends HttpServletRequestWrapper {
+
+        private final String uid;
+
+        AuthorizedRequest(HttpServletRequest request, String uid) {
+
+            super(request);
+            this.uid = uid;
+        }
+
+        @Override
+        public String getHeader(String name) {
+
+            return HttpHeaders.AUTHORIZATION.equalsIgnoreCase(name) ? uid : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+
+            if (!HttpHeaders.AUTHORIZATION.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+            return uid == null ? Collections.emptyEnumeration() : Collections.enumeration(
+                Collections.singletonList(uid));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.location.component;
+
+import com.example.location.configuration.CacheProperties;
+import com.example.location.util.LruCache;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers what a user may do on a location, so that {@code @AuthorizationOwner} endpoints do not query the
+ * location and access tables on every request. Services that change ownership or sharing must invalidate it.
+ * Decisions are tagged with their lid.
+ */
+@Component
+public class AccessDecisionCache {
+
+    private final LruCache<Key, Decision> cache;
+
+    public AccessDecisionCache(CacheProperties properties) {
+
+        CacheProperties.Spec spec = properties.getAccess();
+        this.cache = new LruCache<>(spec.getMaxSize(), spec.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public Decision get(Long uid, Long lid) {
+
+        if (uid == null || lid == null) {
+            return null;
+        }
+        return cache.get(new Key(uid, lid));
+    }
+
+    public long generation() {
+
+        return cache.generation();
+    }
+
+    public void put(Long uid, Long lid, Decision decision, long generation) {
+
+        if (uid == null || lid == null) {
+            return;
+        }
+        cache.put(new Key(uid, lid), decision, Collections.singleton(lid), generation);
+    }
+
+    public void invalidate(Long uid, Long lid) {
+
+        if (uid == null || lid == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidate(new Key(uid, lid));
+    }
+
+    public void invalidateLocation(Long lid) {
+
+        if (lid == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidateTag(lid);
+    }
+
+    public void invalidateAll() {
+
+        cache.invalidateAll();
+    }
+
+    public double hitRatio() {
+
+        return cache.hitRatio();
+    }
+
+    public long getHitCount() {
+
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+
+        return cache.getMissCount();
+    }
+
+    public int size() {
+
+        return cache.size();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public enum Decision {
+        OWNER(true),
+        ADMIN(true),
+        READ(false),
+        NONE(false);
+
+        private final boolean ownerOrAdmin;
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+
+        private final long uid;
+        private final long lid;
+
+        Key(long uid, long lid) {
+
+            this.uid = uid;
+            this.lid = lid;
+        }
+    }
+}
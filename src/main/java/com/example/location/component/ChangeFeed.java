@@ -0,0 +1,418 @@
+package com.example.location.component;
+
+import com.example.location.configuration.FeedProperties;
+import com.example.location.dto.LocationChange;
+import com.example.location.entities.Access;
+import com.example.location.entities.Location;
+import com.example.location.repositories.AccessRepository;
+import com.example.location.util.BoundedExecutor;
+import com.example.location.util.Util;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes location and sharing changes to the affected users over server-sent events: the owner of the location and
+ * everyone it is shared with. An idle subscription is an async request holding no thread, a small buffer and an
+ * entry in a map. Each connection buffers at most {@code bufferSize} distinct changes keyed by location, so a burst
+ * on one location collapses into one entry; the buffer is written by a small pool, one task per connection at a
+ * time, and changes arriving meanwhile go out together in the next event. A connection that cannot keep up gets a
+ * single {@code resync} event instead of its overflowing buffer.
+ */
+@Component
+@Log4j2
+public class ChangeFeed implements DisposableBean {
+
+    static final String CHANGES = "changes";
+    static final String RESYNC = "resync";
+    static final int HEARTBEAT_BATCH = 500;
+
+    private final AccessRepository accessRepository;
+    private final FeedProperties properties;
+    private final BoundedExecutor executor;
+
+    private final Map<Long, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+
+    public ChangeFeed(AccessRepository accessRepository, FeedProperties properties,
+                      @Value("${server.tomcat.max-connections:8192}") int maxConnections) {
+
+        this.accessRepository = accessRepository;
+        this.properties = properties;
+        this.executor = new BoundedExecutor("change-feed", properties.getThreads(), properties.getQueueCapacity());
+        if (properties.getMaxSubscribers() >= maxConnections) {
+            log.warn("Change feed allows {} subscribers but the connector only accepts {} connections",
+                properties.getMaxSubscribers(), maxConnections);
+        }
+    }
+
+    /**
+     * Opens a subscription of the user. Closes the user's oldest one past {@code maxSubscribersPerUser}.
+     */
+    public SseEmitter subscribe(Long uid) {
+
+        if (count.incrementAndGet() > properties.getMaxSubscribers()) {
+            count.decrementAndGet();
+            throw new RejectedExecutionException("Too many change feed subscribers");
+        }
+
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        Subscription subscription = new Subscription(uid, emitter);
+        emitter.onCompletion(() -> remove(subscription));
+        emitter.onTimeout(() -> close(subscription));
+        emitter.onError(ex -> remove(subscription));
+
+        List<Subscription> evicted = new ArrayList<>(1);
+        subscriptions.compute(uid, (key, list) -> {
+            List<Subscription> current = list == null ? new CopyOnWriteArrayList<>() : list;
+            current.add(subscription);
+            if (current.size() > properties.getMaxSubscribersPerUser()) {
+                evicted.add(current.remove(0));
+            }
+            return current;
+        });
+        evicted.forEach(this::close);
+
+        try {
+            emitter.send(SseEmitter.event().comment("subscribed"));
+        } catch (Exception ex) {
+            close(subscription);
+        }
+        return emitter;
+    }
+
+    public boolean hasSubscribers() {
+
+        return count.get() > 0;
+    }
+
+    public int getSubscriberCount() {
+
+        return count.get();
+    }
+
+    public long getSentCount() {
+
+        return sent.sum();
+    }
+
+    public long getResyncCount() {
+
+        return resyncs.sum();
+    }
+
+    public long getHeartbeatCount() {
+
+        return heartbeats.sum();
+    }
+
+    public BoundedExecutor getExecutor() {
+
+        return executor;
+    }
+
+    @EventListener
+    public void handleObjectEvent(HistoryEvent event) {
+
+        publish(Collections.singletonList(event));
+    }
+
+    @EventListener
+    public void handleObjectEvents(HistoryEventBatch batch) {
+
+        publish(batch.getEvents());
+    }
+
+    /**
+     * Queues the changes for every subscription of the users. Never blocks, so it may run on a JDBC thread.
+     */
+    public void publish(Collection<Long> uids, List<LocationChange> changes) {
+
+        for (Long uid : uids) {
+            List<Subscription> list = subscriptions.get(uid);
+            if (list == null) {
+                continue;
+            }
+            for (Subscription subscription : list) {
+                if (subscription.offer(changes, properties.getBufferSize())) {
+                    schedule(subscription);
+                }
+            }
+        }
+    }
+
+    public static LocationChange change(Util.ObjectType type, Util.ActionType action, Long lid) {
+
+        return new LocationChange(type.name().toLowerCase(Locale.ROOT), action.name().toLowerCase(Locale.ROOT), lid,
+            System.currentTimeMillis());
+    }
+
+    /**
+     * A new location can only be seen by its owner, and the grants of a deleted one are gone with it, so those two
+     * go to the owner alone; the deleting service tells the former grantees itself. Any other change is sent to the
+     * current audience of the location, looked up once per location of the batch.
+     */
+    private void publish(List<HistoryEvent> events) {
+
+        if (!hasSubscribers()) {
+            return;
+        }
+
+        Map<Long, List<LocationChange>> byLid = new LinkedHashMap<>();
+        Map<Long, Set<Long>> recipients = new LinkedHashMap<>();
+        for (HistoryEvent event : events) {
+            Object after = event.getAfter();
+            if (after instanceof Location) {
+                Location location = (Location) after;
+                LocationChange change = change(event.getObjectType(), event.getAction(), location.getLid());
+                if (event.getAction() != Util.ActionType.UPDATED) {
+                    publish(Collections.singleton(location.getUid()), Collections.singletonList(change));
+                    continue;
+                }
+                byLid.computeIfAbsent(location.getLid(), key -> new ArrayList<>()).add(change);
+                recipients.computeIfAbsent(location.getLid(), key -> new HashSet<>()).add(location.getUid());
+            } else if (after instanceof Access) {
+                Access access = (Access) after;
+                byLid.computeIfAbsent(access.getLid(), key -> new ArrayList<>())
+                    .add(change(event.getObjectType(), event.getAction(), access.getLid()));
+                // a revoked grantee is no longer in the audience but must hear about it
+                recipients.computeIfAbsent(access.getLid(), key -> new HashSet<>()).add(access.getUid());
+            }
+        }
+
+        byLid.forEach((lid, changes) -> {
+            Set<Long> uids = recipients.get(lid);
+            try {
+                accessRepository.findAudienceByLid(lid).whenComplete((audience, ex) -> {
+                    if (ex != null) {
+                        log.warn("Audience of location {} not found, only the grantee is told: {}", lid,
+                            ex.getMessage());
+                    } else {
+                        uids.addAll(audience);
+                    }
+                    publish(uids, changes);
+                });
+            } catch (RejectedExecutionException ex) {
+                log.warn("Audience of location {} not looked up, only the grantee is told", lid);
+                publish(uids, changes);
+            }
+        });
+    }
+
+    /**
+     * Drains the idle connections in batches of {@code HEARTBEAT_BATCH}, one task per batch, so that a sweep over
+     * every subscriber takes a few slots of the queue rather than one per connection and leaves it to the changes.
+     */
+    @Scheduled(fixedDelayString = "${location.feed.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+
+        long idleSince = System.nanoTime() - properties.getHeartbeatInterval().toNanos() / 2;
+        List<Subscription> batch = new ArrayList<>(HEARTBEAT_BATCH);
+        for (List<Subscription> list : subscriptions.values()) {
+            for (Subscription subscription : list) {
+                if (subscription.heartbeat(idleSince)) {
+                    batch.add(subscription);
+                }
+                if (batch.size() == HEARTBEAT_BATCH) {
+                    schedule(batch);
+                    batch = new ArrayList<>(HEARTBEAT_BATCH);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            schedule(batch);
+        }
+    }
+
+    private void schedule(Subscription subscription) {
+
+        try {
+            executor.execute(() -> drain(subscription));
+        } catch (RejectedExecutionException ex) {
+            // the buffer is kept, the next change or heartbeat tries again
+            subscription.unschedule();
+        }
+    }
+
+    private void schedule(List<Subscription> batch) {
+
+        try {
+            executor.execute(() -> batch.forEach(this::drain));
+        } catch (RejectedExecutionException ex) {
+            batch.forEach(Subscription::unschedule);
+        }
+    }
+
+    private void drain(Subscription subscription) {
+
+        Subscription.Pending pending;
+        while ((pending = subscription.take()) != null) {
+            try {
+                if (pending.resync) {
+                    resyncs.increment();
+                    subscription.emitter.send(SseEmitter.event().name(RESYNC).data(RESYNC));
+                } else if (!pending.changes.isEmpty()) {
+                    subscription.emitter.send(SseEmitter.event().name(CHANGES).data(pending.changes,
+                        MediaType.APPLICATION_JSON));
+                    sent.add(pending.changes.size());
+                } else {
+                    subscription.emitter.send(SseEmitter.event().comment("heartbeat"));
+                    heartbeats.increment();
+                }
+            } catch (Exception ex) {
+                log.debug("Change feed subscription of UID {} closed: {}", subscription.uid, ex.getMessage());
+                close(subscription);
+                return;
+            }
+        }
+    }
+
+    private void close(Subscription subscription) {
+
+        remove(subscription);
+        try {
+            subscription.emitter.complete();
+        } catch (Exception ex) {
+            log.debug("Change feed subscription of UID {} already closed", subscription.uid);
+        }
+    }
+
+    private void remove(Subscription subscription) {
+
+        if (!subscription.closed.compareAndSet(false, true)) {
+            return;
+        }
+        count.decrementAndGet();
+        subscriptions.computeIfPresent(subscription.uid, (key, list) -> {
+            list.remove(subscription);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        for (List<Subscription> list : subscriptions.values()) {
+            list.forEach(this::close);
+        }
+        executor.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    static final class Subscription {
+
+        private final Long uid;
+        private final SseEmitter emitter;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final Map<String, LocationChange> buffer = new LinkedHashMap<>();
+        private boolean resync;
+        private boolean heartbeat;
+        private boolean scheduled;
+        private long lastSent = System.nanoTime();
+
+        Subscription(Long uid, SseEmitter emitter) {
+
+            this.uid = uid;
+            this.emitter = emitter;
+        }
+
+        /**
+         * Buffers the changes, the latest one per location and type winning. Returns true if a drain must be
+         * scheduled.
+         */
+        synchronized boolean offer(List<LocationChange> changes, int bufferSize) {
+
+            if (closed.get()) {
+                return false;
+            }
+            if (!resync) {
+                for (LocationChange change : changes) {
+                    String key = change.getType() + ':' + change.getLid();
+                    buffer.remove(key);
+                    buffer.put(key, change);
+                }
+                if (buffer.size() > bufferSize) {
+                    buffer.clear();
+                    resync = true;
+                }
+            }
+            return schedule();
+        }
+
+        synchronized boolean heartbeat(long idleSince) {
+
+            if (closed.get() || lastSent - idleSince > 0) {
+                return false;
+            }
+            heartbeat = true;
+            return schedule();
+        }
+
+        /**
+         * What to send next, or null once there is nothing left, which also ends the drain.
+         */
+        synchronized Pending take() {
+
+            if (closed.get() || !resync && !heartbeat && buffer.isEmpty()) {
+                scheduled = false;
+                return null;
+            }
+            Pending pending = new Pending(resync, resync ? Collections.emptyList() : new ArrayList<>(buffer.values()));
+            buffer.clear();
+            resync = false;
+            heartbeat = false;
+            lastSent = System.nanoTime();
+            return pending;
+        }
+
+        synchronized void unschedule() {
+
+            scheduled = false;
+        }
+
+        private boolean schedule() {
+
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        static final class Pending {
+
+            private final boolean resync;
+            private final List<LocationChange> changes;
+
+            Pending(boolean resync, List<LocationChange> changes) {
+
+                this.resync = resync;
+                this.changes = changes;
+            }
+        }
+    }
+}
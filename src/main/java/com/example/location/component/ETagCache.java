@@ -0,0 +1,295 @@
+package com.example.location.component;
+
+import com.example.location.configuration.CacheProperties;
+import com.example.location.dto.CursorPage;
+import com.example.location.dto.SharedLocation;
+import com.example.location.entities.Location;
+import com.example.location.util.LruCache;
+import lombok.EqualsAndHashCode;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strong ETags of {@code GET /location/{lid}} and of the pages of {@code GET /location/all}, so that a conditional
+ * request for an unchanged resource is answered from memory. A tag is a hash of the content of the response;
+ * services that change locations or grants must invalidate it, and the time to live bounds how long a change made
+ * outside them (or on another node) can go unnoticed.
+ */
+@Component
+public class ETagCache {
+
+    private static final int TAG_BYTES = 16;
+
+    private final LruCache<Key, Entry> cache;
+
+    public ETagCache(CacheProperties properties) {
+
+        CacheProperties.Spec spec = properties.getEtag();
+        this.cache = new LruCache<>(spec.getMaxSize(), spec.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public String getLocation(Long lid) {
+
+        Entry entry = cache.get(Key.location(lid));
+        return entry == null ? null : entry.etag;
+    }
+
+    /**
+     * The page of {@code uid} starting after {@code cursor}, with {@code limit} as requested.
+     */
+    public String getPage(Long uid, String cursor, Integer limit) {
+
+        Entry entry = cache.get(Key.page(uid, cursor, limit));
+        return entry == null ? null : entry.etag;
+    }
+
+    public long generation() {
+
+        return cache.generation();
+    }
+
+    /**
+     * Computes the tag of the location and caches it unless the cache was invalidated since {@code generation}.
+     */
+    public String putLocation(Location location, long generation) {
+
+        String etag = etag(location);
+        cache.put(Key.location(location.getLid()), new Entry(etag), generation);
+        return etag;
+    }
+
+    public String putPage(Long uid, String cursor, Integer limit, CursorPage<SharedLocation> page, long generation) {
+
+        String etag = etag(page);
+        Set<Tag> tags = new HashSet<>();
+        tags.add(Tag.user(uid));
+        page.getItems().forEach(row -> tags.add(Tag.shown(row.getLid())));
+        cache.put(Key.page(uid, cursor, limit), new Entry(etag), tags, generation);
+        return etag;
+    }
+
+    /**
+     * The location changed or is gone: drops its tag and every page showing it.
+     */
+    public void invalidateLocation(Long lid) {
+
+        if (lid == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidate(Key.location(lid));
+        cache.invalidateTag(Tag.shown(lid));
+    }
+
+    /**
+     * The grants of the location changed: drops the pages showing it and the pages of the grantee, who may have
+     * gained it.
+     */
+    public void invalidateAccess(Long uid, Long lid) {
+
+        if (uid == null || lid == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidateTag(Tag.shown(lid));
+        cache.invalidateTag(Tag.user(uid));
+    }
+
+    /**
+     * The user's list gained locations: drops every page of the user.
+     */
+    public void invalidateUser(Long uid) {
+
+        if (uid == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidateTag(Tag.user(uid));
+    }
+
+    public void invalidateAll() {
+
+        cache.invalidateAll();
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header names the tag. Uses the weak comparison the header calls for.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getHitCount() {
+
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+
+        return cache.getMissCount();
+    }
+
+    public int size() {
+
+        return cache.size();
+    }
+
+    static String etag(Location location) {
+
+        Digest digest = new Digest();
+        digest.add(location.getLid()).add(location.getUid()).add(location.getName()).add(location.getAddress())
+            .add(location.getLatitude()).add(location.getLongitude());
+        return digest.etag();
+    }
+
+    static String etag(CursorPage<SharedLocation> page) {
+
+        Digest digest = new Digest();
+        List<SharedLocation> items = page.getItems();
+        digest.add((long) items.size());
+        for (SharedLocation row : items) {
+            digest.add(row.getLid()).add(row.getEmail()).add(row.getName()).add(row.getAddress())
+                .add(row.getAccessType());
+        }
+        // the Link header is part of the response too
+        return digest.add(page.getNext()).etag();
+    }
+
+    /**
+     * SHA-256 over the fields, each prefixed with its length so that no two field lists hash the same bytes.
+     */
+    private static final class Digest {
+
+        private final MessageDigest sha;
+        private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + 1);
+
+        Digest() {
+
+            try {
+                this.sha = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        Digest add(Long value) {
+
+            buffer.clear();
+            if (value == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1).putLong(value);
+            }
+            sha.update(buffer.array(), 0, buffer.position());
+            return this;
+        }
+
+        Digest add(Double value) {
+
+            return add(value == null ? null : Double.doubleToLongBits(value));
+        }
+
+        Digest add(String value) {
+
+            if (value == null) {
+                return add((Long) null);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            add((long) bytes.length);
+            sha.update(bytes);
+            return this;
+        }
+
+        String etag() {
+
+            byte[] hash = Arrays.copyOf(sha.digest(), TAG_BYTES);
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + '"';
+        }
+    }
+
+    private static final class Entry {
+
+        private final String etag;
+
+        Entry(String etag) {
+
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * A page is tagged with its user and with each location it shows.
+     */
+    @EqualsAndHashCode
+    private static final class Tag {
+
+        private final boolean user;
+        private final long id;
+
+        private Tag(boolean user, long id) {
+
+            this.user = user;
+            this.id = id;
+        }
+
+        static Tag user(long uid) {
+
+            return new Tag(true, uid);
+        }
+
+        static Tag shown(long lid) {
+
+            return new Tag(false, lid);
+        }
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+
+        private final boolean page;
+        private final long id;
+        private final String cursor;
+        private final Integer limit;
+
+        private Key(boolean page, long id, String cursor, Integer limit) {
+
+            this.page = page;
+            this.id = id;
+            this.cursor = cursor;
+            this.limit = limit;
+        }
+
+        static Key location(long lid) {
+
+            return new Key(false, lid, null, null);
+        }
+
+        static Key page(long uid, String cursor, Integer limit) {
+
+            return new Key(true, uid, cursor, limit);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.location.component;
+
+import com.example.location.util.Util;
+import lombok.Value;
+
+/**
+ * A change as captured on the request path: copies of the objects involved, not yet serialized. The history
+ * writer turns it into a {@link com.example.location.entities.History} row.
+ */
+@Value
+public class HistoryEvent {
+
+    Long actionBy;
+    Util.ObjectType objectType;
+    Util.ActionType action;
+    /**
+     * State before an update, unused for creations and deletions.
+     */
+    Object before;
+    Object after;
+    long timestamp;
+}
@@ -0,0 +1,14 @@
+package com.example.location.component;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * History events of one bulk operation, published as a single application event.
+ */
+@Value
+public class HistoryEventBatch {
+
+    List<HistoryEvent> events;
+}
@@ -1,14 +1,11 @@
 package com.example.location.component;
 
-import com.example.location.entities.History;
 import com.example.location.util.Util;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
-import lombok.SneakyThrows;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
-import java.sql.Timestamp;
+import java.util.List;
 
 @AllArgsConstructor
 @Component
@@ -16,33 +13,53 @@ public class HistoryEventPublisher {
 
     final ApplicationEventPublisher eventPublisher;
 
-    final ObjectMapper objectMapper;
+    final HistorySerializer historySerializer;
 
-    @SneakyThrows
     public <T> void publishHistoryCreatedEvent(Long actionBy, Util.ObjectType objectType, T object) {
 
-        History event = new History(null, actionBy, objectType.name(), Util.ActionType.CREATED.name(),
-            objectMapper.writeValueAsString(object),
-            new Timestamp(System.currentTimeMillis()));
-        eventPublisher.publishEvent(event);
+        publish(actionBy, objectType, Util.ActionType.CREATED, null, object);
     }
 
-    @SneakyThrows
     public <T> void publishHistoryDeletedEvent(Long actionBy, Util.ObjectType objectType, T object) {
 
-        History event = new History(null, actionBy, objectType.name(), Util.ActionType.DELETED.name(),
-            objectMapper.writeValueAsString(object),
-            new Timestamp(System.currentTimeMillis()));
-        eventPublisher.publishEvent(event);
+        publish(actionBy, objectType, Util.ActionType.DELETED, null, object);
     }
 
-    @SneakyThrows
     public <T> void publishHistoryUpdatedEvent(Long actionBy, Util.ObjectType objectType, T oldObject, T newObject) {
 
-        History event = new History(null, actionBy, objectType.name(), Util.ActionType.UPDATED.name(),
-            objectMapper.writeValueAsString(oldObject) + " -> " + objectMapper.writeValueAsString(newObject),
-            new Timestamp(System.currentTimeMillis()));
-        eventPublisher.publishEvent(event);
+        publish(actionBy, objectType, Util.ActionType.UPDATED, historySerializer.snapshot(oldObject), newObject);
     }
-}
 
+    public <T> HistoryEvent createdEvent(Long actionBy, Util.ObjectType objectType, T object) {
+
+        return event(actionBy, objectType, Util.ActionType.CREATED, null, object);
+    }
+
+    public <T> HistoryEvent updatedEvent(Long actionBy, Util.ObjectType objectType, T oldObject, T newObject) {
+
+        return event(actionBy, objectType, Util.ActionType.UPDATED, historySerializer.snapshot(oldObject), newObject);
+    }
+
+    /**
+     * Publishes the events of a bulk operation with a single dispatch.
+     */
+    public void publishHistoryEvents(List<HistoryEvent> events) {
+
+        if (!events.isEmpty()) {
+            eventPublisher.publishEvent(new HistoryEventBatch(events));
+        }
+    }
+
+    private void publish(Long actionBy, Util.ObjectType objectType, Util.ActionType action, Object before,
+                         Object after) {
+
+        eventPublisher.publishEvent(event(actionBy, objectType, action, before, after));
+    }
+
+    private HistoryEvent event(Long actionBy, Util.ObjectType objectType, Util.ActionType action, Object before,
+                               Object after) {
+
+        return new HistoryEvent(actionBy, objectType, action, before, historySerializer.snapshot(after),
+            System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.location.component;
+
+import com.example.location.configuration.HistoryProperties;
+import com.example.location.dto.HistoryPartition;
+import com.example.location.repositories.HistoryRepository;
+import com.example.location.repositories.HistoryRepositoryImpl;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the monthly partitions of the history table rolling: creates the partitions for the coming months and
+ * drops those that fell out of the retention window, which is much cheaper than deleting old rows.
+ */
+@Component
+@AllArgsConstructor
+@Log4j2(topic = "HISTORY")
+public class HistoryRetentionJob {
+
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final HistoryRepository historyRepository;
+    private final HistoryProperties properties;
+    private final Clock clock;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${location.history.retention-cron:0 15 3 * * *}")
+    public void maintainPartitions() {
+
+        try {
+            List<HistoryPartition> partitions = historyRepository.findPartitions().join();
+            if (partitions.isEmpty()) {
+                log.warn("History table is not partitioned, retention is skipped");
+                return;
+            }
+
+            YearMonth now = YearMonth.now(clock);
+            YearMonth lastAhead = now.plusMonths(properties.getPartitionsAhead());
+            List<HistoryPartition> missing = missingPartitions(partitions, lastAhead);
+            if (!missing.isEmpty()) {
+                historyRepository.addPartitions(missing).join();
+                log.info("Added history partitions {}", missing);
+            }
+
+            List<String> expired = expiredPartitions(partitions, now.minusMonths(properties.getRetentionMonths()));
+            if (!expired.isEmpty()) {
+                historyRepository.dropPartitions(expired).join();
+                log.info("Dropped history partitions {}", expired);
+            }
+        } catch (Exception ex) {
+            log.error("History partition maintenance failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Monthly partitions after the highest existing bound, up to and including {@code until}.
+     */
+    List<HistoryPartition> missingPartitions(List<HistoryPartition> partitions, YearMonth until) {
+
+        long highest = 0;
+        for (HistoryPartition partition : partitions) {
+            if (partition.getLessThan() != null) {
+                highest = Math.max(highest, partition.getLessThan());
+            }
+        }
+
+        // a bound is the first second of a month, everything before it is already covered
+        YearMonth month = YearMonth.now(clock);
+        if (highest > 0) {
+            YearMonth firstUncovered = YearMonth.from(Instant.ofEpochSecond(highest).atZone(clock.getZone()));
+            if (firstUncovered.isAfter(month)) {
+                month = firstUncovered;
+            }
+        }
+
+        List<HistoryPartition> missing = new ArrayList<>();
+        for (; !month.isAfter(until); month = month.plusMonths(1)) {
+            missing.add(new HistoryPartition(month.format(PARTITION_FORMAT), epochSecond(month.plusMonths(1))));
+        }
+        return missing;
+    }
+
+    /**
+     * Bounded partitions whose rows are all older than the first day of {@code oldestKept}.
+     */
+    List<String> expiredPartitions(List<HistoryPartition> partitions, YearMonth oldestKept) {
+
+        long cutoff = epochSecond(oldestKept);
+        List<String> expired = new ArrayList<>();
+        for (HistoryPartition partition : partitions) {
+            if (partition.getLessThan() != null && partition.getLessThan() <= cutoff
+                && !HistoryRepositoryImpl.FUTURE_PARTITION.equals(partition.getName())) {
+                expired.add(partition.getName());
+            }
+        }
+        return expired;
+    }
+
+    private long epochSecond(YearMonth month) {
+
+        return month.atDay(1).atStartOfDay(clock.getZone()).toEpochSecond();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.location.component;
+
+import com.example.location.entities.Access;
+import com.example.location.entities.History;
+import com.example.location.entities.Location;
+import com.example.location.entities.User;
+import com.example.location.util.Util;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies event payloads cheaply on the request path and serializes them later on the history writer thread.
+ */
+@Component
+public class HistorySerializer {
+
+    private static final byte[] UPDATE_SEPARATOR = " -> ".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+
+    public HistorySerializer(ObjectMapper objectMapper) {
+
+        this.objectMapper = objectMapper;
+        for (Class<?> type : new Class<?>[]{Location.class, Access.class, User.class, Long.class}) {
+            writers.put(type, objectMapper.writerFor(type));
+        }
+    }
+
+    /**
+     * Returns an object that later changes to {@code object} cannot affect. Known entities are copied field by
+     * field and immutable values are kept as they are. Anything else is serialized right away.
+     */
+    public Object snapshot(Object object) {
+
+        if (object == null || object instanceof Number || object instanceof String || object instanceof Boolean) {
+            return object;
+        }
+        if (object instanceof Location) {
+            Location l = (Location) object;
+            return new Location(l.getLid(), l.getUid(), l.getName(), l.getAddress(), l.getLatitude(),
+                l.getLongitude());
+        }
+        if (object instanceof Access) {
+            Access a = (Access) object;
+            return new Access(a.getAid(), a.getUid(), a.getLid(), a.getType());
+        }
+        if (object instanceof User) {
+            User u = (User) object;
+            return new User(u.getUid(), u.getFirstName(), u.getLastName(), u.getEmail(), u.getPassword());
+        }
+        try {
+            return new RawValue(objectMapper.writeValueAsString(object));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not serialize history payload", ex);
+        }
+    }
+
+    /**
+     * Serializes the event into a history row. Reuses one buffer, so it must only be called from the writer
+     * thread.
+     */
+    public History toHistory(HistoryEvent event) throws IOException {
+
+        buffer.reset();
+        if (event.getAction() == Util.ActionType.UPDATED) {
+            write(event.getBefore());
+            buffer.write(UPDATE_SEPARATOR);
+        }
+        write(event.getAfter());
+
+        return new History(null, event.getActionBy(), event.getObjectType().name(), event.getAction().name(),
+            buffer.toString(StandardCharsets.UTF_8.name()), new Timestamp(event.getTimestamp()));
+    }
+
+    private void write(Object value) throws IOException {
+
+        if (value == null) {
+            writers.computeIfAbsent(Object.class, objectMapper::writerFor).writeValue(buffer, null);
+            return;
+        }
+        writers.computeIfAbsent(value.getClass(), objectMapper::writerFor).writeValue(buffer, value);
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.location.component;
+
+import com.example.location.configuration.HistoryProperties;
+import com.example.location.entities.History;
+import com.example.location.repositories.HistoryRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers history events in a bounded queue and writes them from a single background thread with one batch INSERT
+ * per {@code batchSize} rows or per {@code flushInterval}, whichever comes first. Stopping the application drains
+ * whatever is still queued.
+ */
+@Component
+@Log4j2(topic = "HISTORY")
+public class HistoryWriter implements SmartLifecycle {
+
+    private final HistoryRepository historyRepository;
+    private final HistorySerializer historySerializer;
+    private final HistoryProperties properties;
+    private final BlockingQueue<HistoryEvent> queue;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private volatile long lastFlushNanos;
+    private long droppedReported;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public HistoryWriter(HistoryRepository historyRepository, HistorySerializer historySerializer,
+                         HistoryProperties properties) {
+
+        this.historyRepository = historyRepository;
+        this.historySerializer = historySerializer;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+    }
+
+    /**
+     * Queues an event without blocking on the database. Returns false if the event was dropped by the overflow
+     * policy.
+     */
+    public boolean enqueue(HistoryEvent history) {
+
+        boolean accepted;
+        switch (properties.getOverflowPolicy()) {
+            case DROP_OLDEST:
+                accepted = queue.offer(history);
+                while (!accepted) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                    accepted = queue.offer(history);
+                }
+                break;
+            case BLOCK:
+                try {
+                    accepted = queue.offer(history, properties.getOfferTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+                break;
+            default:
+                accepted = queue.offer(history);
+        }
+
+        if (accepted) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+        return accepted;
+    }
+
+    /**
+     * Waits up to {@code timeout} for room in the queue whatever the overflow policy. Meant for bulk jobs that
+     * would rather slow down than lose history; never call it from a request or JDBC thread.
+     */
+    public boolean enqueue(HistoryEvent history, Duration timeout) {
+
+        boolean accepted;
+        try {
+            accepted = queue.offer(history, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+
+        if (accepted) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+        return accepted;
+    }
+
+    @Override
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "history-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            worker.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("History writer stopped with {} events still queued", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+
+        // stop after the web server so that in-flight requests can still publish their events
+        return SmartLifecycle.DEFAULT_PHASE - 1024;
+    }
+
+    private void run() {
+
+        int batchSize = properties.getBatchSize();
+        long flushIntervalMillis = properties.getFlushInterval().toMillis();
+        List<HistoryEvent> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                HistoryEvent first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0 || !running) {
+                        break;
+                    }
+                    HistoryEvent next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<HistoryEvent> batch) {
+
+        long start = System.nanoTime();
+        List<History> rows = new ArrayList<>(batch.size());
+        for (HistoryEvent event : batch) {
+            try {
+                rows.add(historySerializer.toHistory(event));
+            } catch (Exception ex) {
+                failed.increment();
+                log.error("Failed to serialize history event {}: {}", event, ex.getMessage());
+            }
+        }
+
+        try {
+            if (!rows.isEmpty()) {
+                historyRepository.saveAll(rows).join();
+                written.add(rows.size());
+                log.debug("History batch of {} events saved", rows.size());
+            }
+        } catch (Exception ex) {
+            failed.add(rows.size());
+            log.error("Failed to save history batch of {} events: {}", rows.size(), ex.getMessage());
+        } finally {
+            lastFlushNanos = System.nanoTime() - start;
+            flushNanos.add(lastFlushNanos);
+            flushes.increment();
+        }
+
+        long droppedTotal = dropped.sum();
+        if (droppedTotal > droppedReported) {
+            log.warn("History queue overflow, {} events dropped so far", droppedTotal);
+            droppedReported = droppedTotal;
+        }
+    }
+
+    public int getQueueDepth() {
+
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+
+        return properties.getQueueCapacity();
+    }
+
+    public long getEnqueuedCount() {
+
+        return enqueued.sum();
+    }
+
+    public long getWrittenCount() {
+
+        return written.sum();
+    }
+
+    public long getDroppedCount() {
+
+        return dropped.sum();
+    }
+
+    public long getFailedCount() {
+
+        return failed.sum();
+    }
+
+    public long getFlushCount() {
+
+        return flushes.sum();
+    }
+
+    public long getLastFlushNanos() {
+
+        return lastFlushNanos;
+    }
+
+    public double getAverageFlushMillis() {
+
+        long count = flushes.sum();
+        return count == 0 ? 0.0 : flushNanos.sum() / 1_000_000.0 / count;
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.location.component;
+
+import com.example.location.configuration.NearbyProperties;
+import com.example.location.entities.Location;
+import com.example.location.repositories.LocationRepository;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * In-memory grid of every location with coordinates, for nearest and radius searches without a table scan. The
+ * world is cut into cells of {@code cellDegrees}; a search visits rings of cells around the point, nearest first,
+ * and stops as soon as no unvisited cell can hold a closer match. Loaded on startup and kept up to date by the
+ * services that save and delete locations.
+ * <p>
+ * A failed load is retried every {@code loadRetryInterval}, and the index reports itself down (and the node not
+ * ready) until a load succeeds, rather than answering searches from an empty grid.
+ */
+@Component
+@Log4j2
+public class LocationIndex implements HealthIndicator {
+
+    static final double EARTH_RADIUS = 6_371_000;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    private final LocationRepository locationRepository;
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+
+    private final Map<Long, List<Location>> cells = new HashMap<>();
+    private final Map<Long, Location> locations = new HashMap<>();
+    private final Map<Long, Set<Long>> owned = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile boolean loaded;
+    // lids and owners written or removed while a load streams, guarded by the write lock; their rows are stale
+    private Set<Long> touched;
+    private Set<Long> removedOwners;
+
+    public LocationIndex(LocationRepository locationRepository, NearbyProperties properties) {
+
+        this.locationRepository = locationRepository;
+        this.cellDegrees = properties.getCellDegrees();
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            touched = new HashSet<>();
+            removedOwners = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            long count = locationRepository.streamWithCoordinates(this::putLoaded).join();
+            loaded = true;
+            log.info("Location index loaded with {} locations", count);
+        } catch (Exception ex) {
+            log.error("Could not load the location index, retrying: {}", ex.getMessage());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                touched = null;
+                removedOwners = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            loading.set(false);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${location.nearby.load-retry-interval:PT30S}",
+        fixedDelayString = "${location.nearby.load-retry-interval:PT30S}")
+    public void retryLoad() {
+
+        if (!loaded) {
+            load();
+        }
+    }
+
+    public boolean isLoaded() {
+
+        return loaded;
+    }
+
+    @Override
+    public Health health() {
+
+        return loaded ? Health.up().withDetail("locations", size()).build()
+            : Health.down().withDetail("reason", "not loaded").build();
+    }
+
+    /**
+     * Adds or replaces the location. A location without coordinates is dropped from the index.
+     */
+    public void put(Location location) {
+
+        if (location.getLid() == null) {
+            return;
+        }
+        if (!location.hasCoordinates()) {
+            remove(location.getLid());
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            touch(location.getLid());
+            putLocked(location);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long lid) {
+
+        lock.writeLock().lock();
+        try {
+            touch(lid);
+            removeLocked(lid);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeOwner(Long uid) {
+
+        lock.writeLock().lock();
+        try {
+            if (removedOwners != null) {
+                removedOwners.add(uid);
+            }
+            Set<Long> lids = owned.get(uid);
+            if (lids != null) {
+                new ArrayList<>(lids).forEach(this::removeLocked);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return locations.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} locations accepted by {@code filter} within {@code radius} meters of the point, nearest
+     * first. The filter runs under the index lock and must not block.
+     */
+    public List<Match> nearest(double latitude, double longitude, double radius, int limit,
+                               Predicate<Location> filter) {
+
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1,
+            Comparator.comparingDouble(Match::getDistance).reversed());
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        int rowReach = (int) Math.ceil(radius / METERS_PER_DEGREE / cellDegrees) + 1;
+        int maxRing = Math.min(Math.max(rowReach, columnReach(latitude, radius)), (columns - 1) / 2);
+
+        lock.readLock().lock();
+        try {
+            for (int ring = 0; ring <= maxRing; ring++) {
+                double closest = ringDistance(ring, latitude);
+                if (closest > radius || best.size() == limit && closest > best.peek().getDistance()) {
+                    break;
+                }
+                for (int dr = -Math.min(ring, rowReach); dr <= Math.min(ring, rowReach); dr++) {
+                    int row = centerRow + dr;
+                    if (row < 0 || row >= rows) {
+                        continue;
+                    }
+                    if (Math.abs(dr) == ring) {
+                        for (int dc = -ring; dc <= ring; dc++) {
+                            visit(row, centerColumn + dc, latitude, longitude, radius, limit, filter, best);
+                        }
+                    } else {
+                        visit(row, centerColumn - ring, latitude, longitude, radius, limit, filter, best);
+                        visit(row, centerColumn + ring, latitude, longitude, radius, limit, filter, best);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(Comparator.comparingDouble(Match::getDistance));
+        return matches;
+    }
+
+    /**
+     * Calls {@code action} for every location of {@code uid} or in {@code lids} inside the box. A box with
+     * {@code west > east} crosses the antimeridian. Walks either those locations or the cells of the box, whichever
+     * is expected to touch fewer; the action runs under the index lock and must not block.
+     */
+    public void forEachVisible(Long uid, Set<Long> lids, double south, double west, double north, double east,
+                               Consumer<Location> action) {
+
+        boolean wraps = west > east;
+        double width = wraps ? east + 360 - west : east - west;
+        int firstRow = row(south);
+        int firstColumn = column(west);
+        int spanRows = row(north) - firstRow + 1;
+        int spanColumns = width >= 360 - cellDegrees ? columns
+            : Math.floorMod(column(east) - firstColumn, columns) + 1;
+        Predicate<Location> inBox = location -> location.getLatitude() >= south && location.getLatitude() <= north
+            && (wraps ? location.getLongitude() >= west || location.getLongitude() <= east
+            : location.getLongitude() >= west && location.getLongitude() <= east);
+
+        lock.readLock().lock();
+        try {
+            Set<Long> ownLids = owned.getOrDefault(uid, Collections.emptySet());
+            long visible = (long) ownLids.size() + lids.size();
+            long boxCells = Math.min((long) spanRows * spanColumns, cells.size());
+            long boxLocations = cells.isEmpty() ? 0 : boxCells * locations.size() / cells.size();
+
+            if (visible <= boxLocations) {
+                for (Long lid : ownLids) {
+                    acceptIf(locations.get(lid), inBox, action);
+                }
+                for (Long lid : lids) {
+                    Location location = locations.get(lid);
+                    if (location != null && !uid.equals(location.getUid())) {
+                        acceptIf(location, inBox, action);
+                    }
+                }
+                return;
+            }
+
+            Predicate<Location> accept = inBox.and(location -> uid.equals(location.getUid())
+                || lids.contains(location.getLid()));
+            if (boxCells == cells.size()) {
+                for (List<Location> members : cells.values()) {
+                    members.forEach(location -> acceptIf(location, accept, action));
+                }
+                return;
+            }
+            for (int row = firstRow; row < firstRow + spanRows; row++) {
+                for (int column = firstColumn; column < firstColumn + spanColumns; column++) {
+                    List<Location> members = cells.get((long) row * columns + Math.floorMod(column, columns));
+                    if (members != null) {
+                        members.forEach(location -> acceptIf(location, accept, action));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A row of the load, skipped if its location or owner changed since the load started.
+     */
+    private void putLoaded(Location location) {
+
+        if (location.getLid() == null || !location.hasCoordinates()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (touched != null && (touched.contains(location.getLid())
+                || removedOwners.contains(location.getUid()))) {
+                return;
+            }
+            putLocked(location);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void touch(Long lid) {
+
+        if (touched != null) {
+            touched.add(lid);
+        }
+    }
+
+    private void putLocked(Location location) {
+
+        Location copy = new Location(location.getLid(), location.getUid(), location.getName(), location.getAddress(),
+            location.getLatitude(), location.getLongitude());
+        removeLocked(copy.getLid());
+        locations.put(copy.getLid(), copy);
+        cells.computeIfAbsent(cell(copy.getLatitude(), copy.getLongitude()), key -> new ArrayList<>(4)).add(copy);
+        owned.computeIfAbsent(copy.getUid(), key -> new HashSet<>()).add(copy.getLid());
+    }
+
+    private static void acceptIf(Location location, Predicate<Location> filter, Consumer<Location> action) {
+
+        if (location != null && filter.test(location)) {
+            action.accept(location);
+        }
+    }
+
+    private void visit(int row, int column, double latitude, double longitude, double radius, int limit,
+                       Predicate<Location> filter, PriorityQueue<Match> best) {
+
+        List<Location> members = cells.get((long) row * columns + Math.floorMod(column, columns));
+        if (members == null) {
+            return;
+        }
+        for (Location location : members) {
+            if (!filter.test(location)) {
+                continue;
+            }
+            double distance = distance(latitude, longitude, location.getLatitude(), location.getLongitude());
+            if (distance > radius) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(new Match(location, distance));
+            } else if (distance < best.peek().getDistance()) {
+                best.poll();
+                best.add(new Match(location, distance));
+            }
+        }
+    }
+
+    private void removeLocked(Long lid) {
+
+        Location removed = locations.remove(lid);
+        if (removed == null) {
+            return;
+        }
+        Set<Long> lids = owned.get(removed.getUid());
+        lids.remove(lid);
+        if (lids.isEmpty()) {
+            owned.remove(removed.getUid());
+        }
+        long cell = cell(removed.getLatitude(), removed.getLongitude());
+        List<Location> members = cells.get(cell);
+        members.removeIf(location -> location.getLid().equals(lid));
+        if (members.isEmpty()) {
+            cells.remove(cell);
+        }
+    }
+
+    /**
+     * A lower bound of the distance from the point to anything in the cells of the ring. The center cell and the
+     * ring around it can be arbitrarily close; beyond that a cell is at least {@code ring - 1} whole cells away
+     * along a meridian or a parallel, and parallels get shorter towards the poles.
+     */
+    private double ringDistance(int ring, double latitude) {
+
+        if (ring <= 1) {
+            return 0;
+        }
+        double gap = (ring - 1) * cellDegrees;
+        double alongMeridian = gap * METERS_PER_DEGREE;
+        double farthestLatitude = Math.min(90, Math.abs(latitude) + (ring + 1) * cellDegrees);
+        double h = Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(farthestLatitude))
+            * haversine(Math.toRadians(Math.min(gap, 180)));
+        double alongParallel = 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+        return Math.min(alongMeridian, alongParallel);
+    }
+
+    /**
+     * Rings needed to cover the radius east and west of the point, at the latitude where degrees of longitude are
+     * shortest.
+     */
+    private int columnReach(double latitude, double radius) {
+
+        double radiusDegrees = radius / METERS_PER_DEGREE;
+        double farthestLatitude = Math.abs(latitude) + radiusDegrees;
+        if (farthestLatitude >= 90) {
+            return columns;
+        }
+        double span = Math.min(180, radiusDegrees / Math.cos(Math.toRadians(farthestLatitude)));
+        return (int) Math.ceil(span / cellDegrees) + 1;
+    }
+
+    private long cell(double latitude, double longitude) {
+
+        return (long) row(latitude) * columns + column(longitude);
+    }
+
+    private int row(double latitude) {
+
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor((latitude + 90) / cellDegrees)));
+    }
+
+    private int column(double longitude) {
+
+        return Math.floorMod((int) Math.floor((longitude + 180) / cellDegrees), columns);
+    }
+
+    /**
+     * Great-circle distance in meters.
+     */
+    static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double h = haversine(phi2 - phi1)
+            + Math.cos(phi1) * Math.cos(phi2) * haversine(Math.toRadians(longitude2 - longitude1));
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+    }
+
+    private static double haversine(double angle) {
+
+        double sin = Math.sin(angle / 2);
+        return sin * sin;
+    }
+
+    @Value
+    public static class Match {
+
+        Location location;
+        double distance;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.location.component;
+
+import com.example.location.configuration.JdbcExecutors;
+import com.example.location.util.BoundedExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gauges of the JDBC bulkheads, the history writer, the access decision cache and the change feed, plus a timer
+ * around every task of a JDBC bulkhead. The timer tells the time a query waited for a pool thread apart from the
+ * time it ran, so a scrape shows whether requests are slow because of the pool or because of the database.
+ */
+@Component
+@AllArgsConstructor
+public class LocationMetrics implements MeterBinder {
+
+    static final String QUEUE_WAIT = "jdbc.queue.wait";
+    static final String EXECUTION = "jdbc.execution";
+
+    private final JdbcExecutors jdbcExecutors;
+    private final HistoryWriter historyWriter;
+    private final AccessDecisionCache accessDecisionCache;
+    private final ETagCache etagCache;
+    private final UserCache userCache;
+    private final ChangeFeed changeFeed;
+    private final PasswordHasher passwordHasher;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+
+        for (BoundedExecutor executor : jdbcExecutors.all()) {
+            bindExecutor(registry, executor);
+            executor.setTaskDecorator(task -> timed(registry, executor.getName(), task));
+        }
+        bindHistoryWriter(registry);
+        bindExecutor(registry, changeFeed.getExecutor());
+        bindExecutor(registry, passwordHasher.getExecutor());
+
+        Gauge.builder("authorization.cache.size", accessDecisionCache, AccessDecisionCache::size)
+            .register(registry);
+        FunctionCounter.builder("authorization.cache.requests", accessDecisionCache, AccessDecisionCache::getHitCount)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("authorization.cache.requests", accessDecisionCache, AccessDecisionCache::getMissCount)
+            .tag("result", "miss")
+            .register(registry);
+
+        Gauge.builder("etag.cache.size", etagCache, ETagCache::size).register(registry);
+        FunctionCounter.builder("etag.cache.requests", etagCache, ETagCache::getHitCount)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("etag.cache.requests", etagCache, ETagCache::getMissCount)
+            .tag("result", "miss")
+            .register(registry);
+
+        Gauge.builder("user.cache.size", userCache, UserCache::size).register(registry);
+        FunctionCounter.builder("user.cache.requests", userCache, UserCache::getHitCount)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("user.cache.requests", userCache, UserCache::getMissCount)
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("user.cache.evictions", userCache, UserCache::getEvictionCount).register(registry);
+
+        Gauge.builder("feed.subscribers", changeFeed, ChangeFeed::getSubscriberCount).register(registry);
+        FunctionCounter.builder("feed.changes.sent", changeFeed, ChangeFeed::getSentCount).register(registry);
+        FunctionCounter.builder("feed.resyncs", changeFeed, ChangeFeed::getResyncCount).register(registry);
+        FunctionCounter.builder("feed.heartbeats", changeFeed, ChangeFeed::getHeartbeatCount).register(registry);
+    }
+
+    private static void bindExecutor(MeterRegistry registry, BoundedExecutor executor) {
+
+        Tags tags = Tags.of("name", executor.getName());
+        Gauge.builder("executor.pool.size", executor, BoundedExecutor::getPoolSize).tags(tags).register(registry);
+        Gauge.builder("executor.active", executor, BoundedExecutor::getActiveCount).tags(tags).register(registry);
+        Gauge.builder("executor.queued", executor, BoundedExecutor::getQueueDepth).tags(tags).register(registry);
+        Gauge.builder("executor.queue.capacity", executor, BoundedExecutor::getQueueCapacity).tags(tags)
+            .register(registry);
+        FunctionCounter.builder("executor.completed", executor, BoundedExecutor::getCompletedCount).tags(tags)
+            .register(registry);
+        FunctionCounter.builder("executor.rejected", executor, BoundedExecutor::getRejectedCount).tags(tags)
+            .register(registry);
+    }
+
+    /**
+     * Captures the caller's endpoint and operation on submission and records the queue wait and the run time of
+     * the task. The run time includes callbacks that complete on the pool thread along with the query.
+     */
+    static Runnable timed(MeterRegistry registry, String executor, Runnable task) {
+
+        String endpoint = MetricsContext.endpoint();
+        String operation = MetricsContext.operation();
+        long submitted = System.nanoTime();
+
+        return () -> {
+            long started = System.nanoTime();
+            try {
+                MetricsContext.run(endpoint, operation, task);
+            } finally {
+                Tags tags = Tags.of("executor", executor, "operation", operation, "endpoint", endpoint);
+                registry.timer(QUEUE_WAIT, tags).record(started - submitted, TimeUnit.NANOSECONDS);
+                registry.timer(EXECUTION, tags).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private void bindHistoryWriter(MeterRegistry registry) {
+
+        Gauge.builder("history.queue.depth", historyWriter, HistoryWriter::getQueueDepth).register(registry);
+        Gauge.builder("history.queue.capacity", historyWriter, HistoryWriter::getQueueCapacity).register(registry);
+        FunctionCounter.builder("history.writer.events", historyWriter, HistoryWriter::getWrittenCount)
+            .tag("outcome", "written")
+            .register(registry);
+        FunctionCounter.builder("history.writer.events", historyWriter, HistoryWriter::getDroppedCount)
+            .tag("outcome", "dropped")
+            .register(registry);
+        FunctionCounter.builder("history.writer.events", historyWriter, HistoryWriter::getFailedCount)
+            .tag("outcome", "failed")
+            .register(registry);
+        FunctionCounter.builder("history.writer.flushes", historyWriter, HistoryWriter::getFlushCount)
+            .register(registry);
+        Gauge.builder("history.writer.flush.last", historyWriter, writer -> writer.getLastFlushNanos() / 1e9)
+            .baseUnit("seconds")
+            .register(registry);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.location.component;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The endpoint and repository operation that the current thread is working for. The request thread knows its
+ * endpoint from Spring MVC; the JDBC executors copy both values over to the pool thread that runs the query, so
+ * metrics recorded there, and in the callbacks chained onto the query, carry the same tags.
+ */
+public final class MetricsContext {
+
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> ENDPOINT = new ThreadLocal<>();
+    private static final ThreadLocal<String> OPERATION = new ThreadLocal<>();
+
+    private MetricsContext() {
+
+    }
+
+    /**
+     * The endpoint as "METHOD /pattern", e.g. "GET /location/{lid}", or {@link #NONE} outside of a request.
+     */
+    public static String endpoint() {
+
+        String endpoint = ENDPOINT.get();
+        if (endpoint != null) {
+            return endpoint;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern != null) {
+                return request.getMethod() + " " + pattern;
+            }
+        }
+        return NONE;
+    }
+
+    public static String operation() {
+
+        String operation = OPERATION.get();
+        return operation == null ? NONE : operation;
+    }
+
+    /**
+     * Sets the operation of the current thread and returns the previous one, to be handed back to
+     * {@link #restoreOperation}.
+     */
+    static String enterOperation(String operation) {
+
+        String previous = OPERATION.get();
+        OPERATION.set(operation);
+        return previous;
+    }
+
+    static void restoreOperation(String previous) {
+
+        if (previous == null) {
+            OPERATION.remove();
+        } else {
+            OPERATION.set(previous);
+        }
+    }
+
+    /**
+     * Runs the task with the given endpoint and operation, on a pool thread that has none of its own.
+     */
+    static void run(String endpoint, String operation, Runnable task) {
+
+        ENDPOINT.set(endpoint);
+        OPERATION.set(operation);
+        try {
+            task.run();
+        } finally {
+            ENDPOINT.remove();
+            OPERATION.remove();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.location.component;
+
+import com.example.location.configuration.PasswordProperties;
+import com.example.location.util.BoundedExecutor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Hashes and checks passwords with BCrypt on a pool of its own. A hash costs tens of milliseconds of CPU by design,
+ * so it must neither run on a JDBC thread nor on the common pool, and a burst of logins is turned away with 503
+ * once the pool's queue is full rather than slowing down every other request.
+ */
+@Component
+public class PasswordHasher implements DisposableBean {
+
+    private static final Pattern BCRYPT = Pattern.compile("\\A\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    private final BCryptPasswordEncoder encoder;
+    private final BoundedExecutor executor;
+    private final String dummyHash;
+
+    public PasswordHasher(PasswordProperties properties) {
+
+        this.encoder = new BCryptPasswordEncoder(properties.getCost());
+        this.executor = new BoundedExecutor("password-hash", properties.getThreads(), properties.getQueueCapacity());
+        this.dummyHash = encoder.encode("dummy password");
+    }
+
+    public CompletableFuture<String> hash(String password) {
+
+        return CompletableFuture.supplyAsync(() -> encoder.encode(password), executor);
+    }
+
+    /**
+     * Checks the password against a stored hash, or against a plaintext password stored before passwords were
+     * hashed. A missing user ({@code stored} null) costs as much as a wrong password, so the time of a failed login
+     * does not tell whether the email is registered.
+     */
+    public CompletableFuture<Boolean> matches(String password, String stored) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (stored == null) {
+                encoder.matches(password, dummyHash);
+                return false;
+            }
+            if (isHashed(stored)) {
+                return encoder.matches(password, stored);
+            }
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                stored.getBytes(StandardCharsets.UTF_8));
+        }, executor);
+    }
+
+    /**
+     * Whether a stored password is plaintext or hashed at a lower cost than configured.
+     */
+    public boolean needsRehash(String stored) {
+
+        return stored != null && (!isHashed(stored) || encoder.upgradeEncoding(stored));
+    }
+
+    static boolean isHashed(String stored) {
+
+        return BCRYPT.matcher(stored).matches();
+    }
+
+    public BoundedExecutor getExecutor() {
+
+        return executor;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        executor.shutdown(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.location.component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Names the repository operation that submits a query to a JDBC executor, e.g. "LocationRepository.findById",
+ * so that {@link LocationMetrics} can tag the query's queue wait and run time with it. Failed operations are
+ * counted by exception type.
+ */
+@Aspect
+@Component
+@AllArgsConstructor
+public class RepositoryMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, String> operations = new ConcurrentHashMap<>();
+
+    @Around("execution(public * com.example.location.repositories.*Repository.*(..))")
+    public Object nameOperation(ProceedingJoinPoint joinPoint) throws Throwable {
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        String operation = operations.computeIfAbsent(method,
+            m -> m.getDeclaringClass().getSimpleName() + "." + m.getName());
+        String endpoint = MetricsContext.endpoint();
+
+        String previous = MetricsContext.enterOperation(operation);
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (RuntimeException ex) {
+            countError(operation, endpoint, ex);
+            throw ex;
+        } finally {
+            MetricsContext.restoreOperation(previous);
+        }
+
+        if (result instanceof CompletableFuture) {
+            ((CompletableFuture<?>) result).whenComplete((value, ex) -> {
+                if (ex != null) {
+                    countError(operation, endpoint, ex);
+                }
+            });
+        }
+        return result;
+    }
+
+    private void countError(String operation, String endpoint, Throwable ex) {
+
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        meterRegistry.counter("jdbc.errors", "operation", operation, "endpoint", endpoint,
+            "exception", cause.getClass().getSimpleName()).increment();
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.location.component;
+
+import com.example.location.configuration.SessionProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stateless session tokens: the uid, issue time, expiry and a random id, signed with HMAC-SHA256, so a request is
+ * authenticated without a database round trip. Verification decodes into per-thread buffers and compares the
+ * signature in constant time. Tokens are revoked through an in-memory denylist that forgets a token once it has
+ * expired anyway; it is local to the node.
+ */
+@Component
+@Log4j2
+public class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+    private static final int PAYLOAD_BYTES = 4 * Long.BYTES;
+    private static final int SIGNATURE_BYTES = 32;
+    private static final int PAYLOAD_CHARS = 43;
+    private static final int SIGNATURE_CHARS = 43;
+    static final int TOKEN_LENGTH = PAYLOAD_CHARS + 1 + SIGNATURE_CHARS;
+    private static final String BEARER = "Bearer ";
+
+    private static final int[] BASE64URL = new int[128];
+
+    static {
+        Arrays.fill(BASE64URL, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final SessionProperties properties;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Verifier> verifiers;
+
+    // token id -> expiry, uid -> time before which the user's tokens were revoked, both in epoch millis
+    private final Map<Long, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final Map<Long, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    public SessionTokens(SessionProperties properties, Clock clock) {
+
+        this.properties = properties;
+        this.clock = clock;
+        this.key = new SecretKeySpec(secret(properties.getSecret()), ALGORITHM);
+        this.verifiers = ThreadLocal.withInitial(() -> new Verifier(key));
+    }
+
+    public String issue(Long uid) {
+
+        long now = clock.millis();
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_BYTES)
+            .putLong(uid)
+            .putLong(now)
+            .putLong(now + properties.getTtl().toMillis())
+            .putLong(random.nextLong());
+        byte[] signature = verifiers.get().sign(payload.array());
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload.array()) + '.' + encoder.encodeToString(signature);
+    }
+
+    /**
+     * The uid of a valid, unexpired and unrevoked token, 0 otherwise. Accepts an optional {@code Bearer} prefix.
+     */
+    public long verify(String token) {
+
+        Verifier verifier = verifiers.get();
+        if (!verifier.check(token)) {
+            return 0;
+        }
+        long now = clock.millis();
+        if (now >= verifier.expiresAt() || isRevoked(verifier)) {
+            return 0;
+        }
+        return verifier.uid();
+    }
+
+    /**
+     * Revokes a token until it expires. An invalid token needs no revocation.
+     */
+    public void revoke(String token) {
+
+        Verifier verifier = verifiers.get();
+        if (verifier.check(token)) {
+            revokedTokens.put(verifier.tokenId(), verifier.expiresAt());
+        }
+    }
+
+    /**
+     * Revokes every token issued to the user so far.
+     */
+    public void revokeUser(Long uid) {
+
+        revokedUsers.put(uid, clock.millis());
+    }
+
+    public int getRevokedCount() {
+
+        return revokedTokens.size() + revokedUsers.size();
+    }
+
+    @Scheduled(fixedDelayString = "${location.session.purge-interval:PT1M}")
+    public void purge() {
+
+        long now = clock.millis();
+        long ttl = properties.getTtl().toMillis();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        revokedUsers.values().removeIf(revokedAt -> revokedAt + ttl <= now);
+    }
+
+    private boolean isRevoked(Verifier verifier) {
+
+        if (!revokedTokens.isEmpty() && revokedTokens.containsKey(verifier.tokenId())) {
+            return true;
+        }
+        if (revokedUsers.isEmpty()) {
+            return false;
+        }
+        Long revokedAt = revokedUsers.get(verifier.uid());
+        return revokedAt != null && verifier.issuedAt() <= revokedAt;
+    }
+
+    private static byte[] secret(String configured) {
+
+        if (configured == null || configured.isEmpty()) {
+            log.warn("No location.session.secret set, sessions are signed with a random key");
+            byte[] secret = new byte[MIN_KEY_BYTES];
+            new SecureRandom().nextBytes(secret);
+            return secret;
+        }
+        byte[] secret = Base64.getDecoder().decode(configured);
+        if (secret.length < MIN_KEY_BYTES) {
+            throw new IllegalStateException("location.session.secret must be at least " + MIN_KEY_BYTES + " bytes");
+        }
+        return secret;
+    }
+
+    /**
+     * Per-thread MAC and buffers, so that checking a token allocates nothing.
+     */
+    private static final class Verifier {
+
+        private final Mac mac;
+        private final byte[] payload = new byte[PAYLOAD_BYTES];
+        private final byte[] signature = new byte[SIGNATURE_BYTES];
+        private final byte[] expected = new byte[SIGNATURE_BYTES];
+
+        Verifier(SecretKeySpec key) {
+
+            try {
+                this.mac = Mac.getInstance(ALGORITHM);
+                this.mac.init(key);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        byte[] sign(byte[] data) {
+
+            return mac.doFinal(data);
+        }
+
+        /**
+         * Decodes the token into the buffers and checks its signature.
+         */
+        boolean check(String token) {
+
+            if (token == null) {
+                return false;
+            }
+            int start = token.startsWith(BEARER) ? BEARER.length() : 0;
+            if (token.length() - start != TOKEN_LENGTH || token.charAt(start + PAYLOAD_CHARS) != '.') {
+                return false;
+            }
+            if (!decode(token, start, PAYLOAD_CHARS, payload)
+                || !decode(token, start + PAYLOAD_CHARS + 1, SIGNATURE_CHARS, signature)) {
+                return false;
+            }
+            try {
+                mac.update(payload);
+                mac.doFinal(expected, 0);
+            } catch (ShortBufferException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return MessageDigest.isEqual(expected, signature);
+        }
+
+        long uid() {
+
+            return read(0);
+        }
+
+        long issuedAt() {
+
+            return read(1);
+        }
+
+        long expiresAt() {
+
+            return read(2);
+        }
+
+        long tokenId() {
+
+            return read(3);
+        }
+
+        private long read(int index) {
+
+            long value = 0;
+            for (int i = index * Long.BYTES; i < (index + 1) * Long.BYTES; i++) {
+                value = value << 8 | payload[i] & 0xFF;
+            }
+            return value;
+        }
+
+        /**
+         * Unpadded base64url into {@code out}. Rejects other characters and non-zero trailing bits, so a token has
+         * exactly one spelling.
+         */
+        private static boolean decode(String source, int offset, int chars, byte[] out) {
+
+            int buffer = 0;
+            int bits = 0;
+            int written = 0;
+            for (int i = offset; i < offset + chars; i++) {
+                char c = source.charAt(i);
+                int value = c < BASE64URL.length ? BASE64URL[c] : -1;
+                if (value < 0) {
+                    return false;
+                }
+                buffer = buffer << 6 | value;
+                bits += 6;
+                if (bits >= 8) {
+                    bits -= 8;
+                    out[written++] = (byte) (buffer >> bits);
+                }
+            }
+            return written == out.length && (buffer & (1 << bits) - 1) == 0;
+        }
+    }
+}
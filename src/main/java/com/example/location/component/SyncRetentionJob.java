@@ -0,0 +1,37 @@
+package com.example.location.component;
+
+import com.example.location.configuration.SyncProperties;
+import com.example.location.repositories.SyncRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes change log rows past the sync retention in small batches, so that no statement holds many row locks.
+ */
+@Component
+@AllArgsConstructor
+@Log4j2
+public class SyncRetentionJob {
+
+    private final SyncRepository syncRepository;
+    private final SyncProperties properties;
+
+    @Scheduled(cron = "${location.sync.prune-cron:0 45 3 * * *}")
+    public void prune() {
+
+        try {
+            long total = 0;
+            int deleted;
+            do {
+                deleted = syncRepository.deleteOlderThan(properties.getRetention(), properties.getPruneBatchSize())
+                    .join();
+                total += deleted;
+            } while (deleted == properties.getPruneBatchSize());
+            log.info("Pruned {} location change log rows", total);
+        } catch (Exception ex) {
+            log.error("Location change log pruning failed: {}", ex.getMessage());
+        }
+    }
+}
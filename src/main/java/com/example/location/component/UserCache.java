@@ -0,0 +1,155 @@
+package com.example.location.component;
+
+import com.example.location.configuration.CacheProperties;
+import com.example.location.entities.User;
+import com.example.location.util.LruCache;
+import lombok.EqualsAndHashCode;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Users by uid and by email, so that shares and location writes do not look up the user table on every request.
+ * A lookup that found nobody is remembered too, for {@code userMissTtl}. Entries hold no password and every read
+ * hands out a copy, so no caller sees a change another made. Writes through the repository invalidate it; a user
+ * changed directly in the database is seen once the entry expires. Entries are tagged with the uid they hold.
+ */
+@Component
+public class UserCache {
+
+    private final LruCache<Key, Optional<User>> cache;
+    private final long missTtlMillis;
+
+    public UserCache(CacheProperties properties) {
+
+        CacheProperties.Spec spec = properties.getUser();
+        this.cache = new LruCache<>(spec.getMaxSize(), spec.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+        this.missTtlMillis = properties.getUserMissTtl().toMillis();
+    }
+
+    /**
+     * The cached lookup of the uid: null if not cached, empty if cached as missing.
+     */
+    public Optional<User> getById(Long uid) {
+
+        return uid == null ? null : copy(cache.get(Key.uid(uid)));
+    }
+
+    public Optional<User> getByEmail(String email) {
+
+        return email == null ? null : copy(cache.get(Key.email(email)));
+    }
+
+    public long generation() {
+
+        return cache.generation();
+    }
+
+    /**
+     * Caches the user under its uid and email unless the cache was invalidated since {@code generation}.
+     */
+    public void put(User user, long generation) {
+
+        User stored = new User(user.getUid(), user.getFirstName(), user.getLastName(), user.getEmail(), null);
+        Set<Long> tags = Collections.singleton(user.getUid());
+        if (cache.put(Key.uid(user.getUid()), Optional.of(stored), tags, generation) && user.getEmail() != null) {
+            cache.put(Key.email(user.getEmail()), Optional.of(stored), tags, generation);
+        }
+    }
+
+    public void putMissingId(Long uid, long generation) {
+
+        cache.put(Key.uid(uid), Optional.empty(), Collections.singleton(uid), missTtlMillis, TimeUnit.MILLISECONDS,
+            generation);
+    }
+
+    public void putMissingEmail(String email, long generation) {
+
+        cache.put(Key.email(email), Optional.empty(), Collections.emptySet(), missTtlMillis, TimeUnit.MILLISECONDS,
+            generation);
+    }
+
+    /**
+     * A user registered with the email: drops it if it was cached as missing.
+     */
+    public void invalidateEmail(String email) {
+
+        if (email == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidate(Key.email(email));
+    }
+
+    /**
+     * The user is gone: drops it under both keys.
+     */
+    public void invalidateUser(Long uid) {
+
+        if (uid == null) {
+            invalidateAll();
+            return;
+        }
+        cache.invalidateTag(uid);
+    }
+
+    public void invalidateAll() {
+
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+
+        return cache.getEvictionCount();
+    }
+
+    public int size() {
+
+        return cache.size();
+    }
+
+    private static Optional<User> copy(Optional<User> cached) {
+
+        if (cached == null || !cached.isPresent()) {
+            return cached;
+        }
+        User user = cached.get();
+        return Optional.of(new User(user.getUid(), user.getFirstName(), user.getLastName(), user.getEmail(), null));
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+
+        private final long uid;
+        private final String email;
+
+        private Key(long uid, String email) {
+
+            this.uid = uid;
+            this.email = email;
+        }
+
+        static Key uid(long uid) {
+
+            return new Key(uid, null);
+        }
+
+        static Key email(String email) {
+
+            return new Key(0, email);
+        }
+    }
+}
@@ -1,44 +1,60 @@
 package com.example.location.configuration;
 
+import com.example.location.component.UserCache;
 import com.example.location.repositories.AccessRepository;
 import com.example.location.repositories.AccessRepositoryImpl;
+import com.example.location.repositories.CachingUserRepository;
 import com.example.location.repositories.HistoryRepository;
 import com.example.location.repositories.HistoryRepositoryImpl;
 import com.example.location.repositories.LocationRepository;
 import com.example.location.repositories.LocationRepositoryImpl;
 import com.example.location.repositories.UserRepository;
 import com.example.location.repositories.UserRepositoryImpl;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.sql.DataSource;
+import java.time.Clock;
 
 @Configuration
+@EnableScheduling
+@EnableConfigurationProperties({ExecutorProperties.class, CacheProperties.class, HistoryProperties.class,
+    ImportProperties.class, NearbyProperties.class, ClusterProperties.class, FeedProperties.class,
+    SyncProperties.class, PasswordProperties.class, SessionProperties.class, ReplicaProperties.class})
+@Log4j2
 public class AppConfig {
 
     @Bean
-    public UserRepository userRepository(JdbcTemplate jdbcTemplate) {
+    public UserRepository userRepository(JdbcTemplate jdbcTemplate, JdbcExecutors jdbcExecutors,
+                                         UserCache userCache) {
 
-        return new UserRepositoryImpl(jdbcTemplate);
+        return new CachingUserRepository(new UserRepositoryImpl(jdbcTemplate, jdbcExecutors), userCache);
     }
 
     @Bean
-    public LocationRepository locationRepository(JdbcTemplate jdbcTemplate) {
+    public LocationRepository locationRepository(JdbcTemplate jdbcTemplate, ReadReplica readReplica,
+                                                 JdbcExecutors jdbcExecutors) {
 
-        return new LocationRepositoryImpl(jdbcTemplate);
+        return new LocationRepositoryImpl(jdbcTemplate, readReplica, jdbcExecutors);
     }
 
     @Bean
-    public AccessRepository accessRepository(JdbcTemplate jdbcTemplate) {
+    public AccessRepository accessRepository(JdbcTemplate jdbcTemplate, ReadReplica readReplica,
+                                             JdbcExecutors jdbcExecutors) {
 
-        return new AccessRepositoryImpl(jdbcTemplate);
+        return new AccessRepositoryImpl(jdbcTemplate, readReplica, jdbcExecutors);
     }
 
     @Bean
-    public HistoryRepository historyRepository(JdbcTemplate jdbcTemplate) {
+    public HistoryRepository historyRepository(JdbcTemplate jdbcTemplate, ReadReplica readReplica,
+                                               JdbcExecutors jdbcExecutors) {
 
-        return new HistoryRepositoryImpl(jdbcTemplate);
+        return new HistoryRepositoryImpl(jdbcTemplate, readReplica, jdbcExecutors);
     }
 
     @Bean
@@ -46,4 +62,28 @@ public class AppConfig {
 
         return new JdbcTemplate(dataSource);
     }
+
+    @Bean
+    public ReadReplica readReplica(ReplicaProperties properties, JdbcTemplate jdbcTemplate) {
+
+        return ReadReplica.create(properties, jdbcTemplate);
+    }
+
+    @Bean
+    public Clock clock() {
+
+        return Clock.systemDefaultZone();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public JdbcExecutors jdbcExecutors(ExecutorProperties properties,
+                                       @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+
+        JdbcExecutors executors = new JdbcExecutors(properties);
+        if (executors.totalThreads() > connectionPoolSize) {
+            log.warn("JDBC executors have {} threads but the connection pool only has {} connections",
+                executors.totalThreads(), connectionPoolSize);
+        }
+        return executors;
+    }
 }
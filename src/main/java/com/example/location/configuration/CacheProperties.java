@@ -0,0 +1,43 @@
+package com.example.location.configuration;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.cache")
+public class CacheProperties {
+
+    /**
+     * Owner/admin decisions per (uid, lid) used by {@code @AuthorizationOwner} endpoints.
+     */
+    private Spec access = new Spec(10_000, Duration.ofMinutes(5));
+
+    /**
+     * ETags of single locations and of pages of {@code /location/all}, per lid and per (uid, cursor, limit).
+     */
+    private Spec etag = new Spec(10_000, Duration.ofMinutes(1));
+
+    /**
+     * Users by uid and by email, for shares and location writes. Logins always read the database.
+     */
+    private Spec user = new Spec(50_000, Duration.ofMinutes(10));
+
+    /**
+     * How long a lookup that found no user is remembered, shorter than {@code user.ttl} since a user may register
+     * on another node in the meantime.
+     */
+    private Duration userMissTtl = Duration.ofSeconds(30);
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Spec {
+
+        private int maxSize;
+        private Duration ttl;
+    }
+}
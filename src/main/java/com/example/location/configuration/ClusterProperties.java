@@ -0,0 +1,24 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "location.cluster")
+public class ClusterProperties {
+
+    /**
+     * Clusters across one 256 px map tile. At zoom {@code z} a cluster covers {@code 360 / (cellsPerTile * 2^z)}
+     * degrees, so the cells of each zoom level split evenly into those of the next.
+     */
+    private int cellsPerTile = 4;
+    /**
+     * From this zoom on locations are returned one by one.
+     */
+    private int pointZoom = 16;
+    private int maxZoom = 22;
+    /**
+     * Most cluster cells a viewport may span at its zoom, which bounds the size of the response.
+     */
+    private int maxCells = 10_000;
+}
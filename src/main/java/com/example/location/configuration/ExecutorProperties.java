@@ -0,0 +1,56 @@
+package com.example.location.configuration;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.executor")
+public class ExecutorProperties {
+
+    /**
+     * Ownership/admin checks run before every protected endpoint.
+     */
+    private Pool auth = new Pool(3, 200);
+
+    /**
+     * User-facing lookups and listings.
+     */
+    private Pool read = new Pool(4, 500);
+
+    /**
+     * Inserts, updates and deletes of users, locations and access rows.
+     */
+    private Pool write = new Pool(2, 500);
+
+    /**
+     * Audit trail writes, kept apart so that they never delay a response. The history writer keeps a single batch
+     * in flight, so one thread is enough.
+     */
+    private Pool history = new Pool(1, 100);
+
+    /**
+     * Streaming exports of a user's locations. Each holds a thread and a connection for as long as the client takes
+     * to read the body, so they get a few threads of their own rather than the read ones, and one more is rejected.
+     */
+    private Pool export = new Pool(2, 2);
+
+    /**
+     * How long an export may run. Past that the client gets a cut-off body and the query is cancelled.
+     */
+    private Duration exportTimeout = Duration.ofMinutes(10);
+
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Pool {
+
+        private int threads;
+        private int queueCapacity;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.feed")
+public class FeedProperties {
+
+    /**
+     * Open subscriptions on this node. Beyond that a new one is rejected with 503. Each holds a connection, so
+     * {@code server.tomcat.max-connections} must be above this with room for the other requests, or the connector
+     * stops accepting before the cap is reached.
+     */
+    private int maxSubscribers = 50_000;
+
+    /**
+     * Open subscriptions of one user. A new one beyond that closes the user's oldest.
+     */
+    private int maxSubscribersPerUser = 5;
+
+    /**
+     * Distinct changes waiting to be sent on one connection. On overflow they are replaced by a single resync.
+     */
+    private int bufferSize = 100;
+
+    /**
+     * Threads writing to the connections and changes waiting for them.
+     */
+    private int threads = 4;
+    private int queueCapacity = 10_000;
+
+    /**
+     * Lifetime of a subscription, after which the client reconnects.
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+
+    /**
+     * Interval of the comment sent on idle connections, which keeps proxies from closing them and finds dead ones.
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(30);
+}
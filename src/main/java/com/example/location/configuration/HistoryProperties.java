@@ -0,0 +1,52 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.history")
+public class HistoryProperties {
+
+    /**
+     * Events waiting to be written. Once full, {@link #overflowPolicy} decides what happens to a new event.
+     */
+    private int queueCapacity = 10_000;
+
+    /**
+     * Rows per batch INSERT.
+     */
+    private int batchSize = 200;
+
+    /**
+     * Longest time an event waits for its batch to fill up.
+     */
+    private Duration flushInterval = Duration.ofMillis(500);
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    /**
+     * How long a publisher may wait for room in the queue under {@link OverflowPolicy#BLOCK}.
+     */
+    private Duration offerTimeout = Duration.ofMillis(50);
+
+    /**
+     * How long shutdown waits for the queue to drain.
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Whole months of history kept online. Older monthly partitions are dropped by the retention job.
+     */
+    private int retentionMonths = 12;
+
+    /**
+     * Empty monthly partitions kept ready ahead of the current month.
+     */
+    private int partitionsAhead = 3;
+
+    public enum OverflowPolicy {
+        DROP_NEWEST, DROP_OLDEST, BLOCK
+    }
+}
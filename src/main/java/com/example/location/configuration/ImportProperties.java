@@ -0,0 +1,42 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.import")
+public class ImportProperties {
+
+    /**
+     * Rows per batch INSERT. One batch is written while the next one is parsed.
+     */
+    private int batchSize = 500;
+
+    /**
+     * Row errors listed in the report. Further errors are only counted.
+     */
+    private int maxReportedErrors = 100;
+
+    /**
+     * Imports running at the same time, each one holds a thread while it reads its upload.
+     */
+    private int threads = 2;
+
+    /**
+     * Imports waiting for a thread. Beyond that an import is rejected with 503.
+     */
+    private int queueCapacity = 4;
+
+    /**
+     * How long an import waits for room in the history queue before it drops an event.
+     */
+    private Duration historyTimeout = Duration.ofSeconds(30);
+
+    /**
+     * How long an import request may take, reading its upload included. Past that the client gets 503 and the
+     * import stops before its next row; the batches already saved are kept.
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+}
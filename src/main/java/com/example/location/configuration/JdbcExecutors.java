@@ -0,0 +1,60 @@
+package com.example.location.configuration;
+
+import com.example.location.util.BoundedExecutor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkheads for blocking JDBC calls. Every repository method runs on one of these instead of the common
+ * ForkJoinPool, so a slow class of queries can only exhaust its own threads and queue.
+ */
+@Getter
+@Log4j2
+public class JdbcExecutors {
+
+    private final BoundedExecutor auth;
+    private final BoundedExecutor read;
+    private final BoundedExecutor write;
+    private final BoundedExecutor history;
+    private final BoundedExecutor export;
+    private final Duration shutdownTimeout;
+
+    public JdbcExecutors(ExecutorProperties properties) {
+
+        this.auth = create("jdbc-auth", properties.getAuth());
+        this.read = create("jdbc-read", properties.getRead());
+        this.write = create("jdbc-write", properties.getWrite());
+        this.history = create("jdbc-history", properties.getHistory());
+        this.export = create("jdbc-export", properties.getExport());
+        this.shutdownTimeout = properties.getShutdownTimeout();
+    }
+
+    public List<BoundedExecutor> all() {
+
+        return Arrays.asList(auth, read, write, history, export);
+    }
+
+    public int totalThreads() {
+
+        return all().stream().mapToInt(BoundedExecutor::getPoolSize).sum();
+    }
+
+    public void shutdown() throws InterruptedException {
+
+        for (BoundedExecutor executor : all()) {
+            if (!executor.shutdown(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Executor did not terminate in time: {}", executor);
+            }
+        }
+    }
+
+    private static BoundedExecutor create(String name, ExecutorProperties.Pool pool) {
+
+        return new BoundedExecutor(name, pool.getThreads(), pool.getQueueCapacity());
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.nearby")
+public class NearbyProperties {
+
+    /**
+     * Side of a cell of the in-memory grid index, in degrees. About 5.5 km of latitude at the default.
+     */
+    private double cellDegrees = 0.05;
+    /**
+     * Radius of a search without one, in meters.
+     */
+    private double defaultRadius = 5_000;
+    private double maxRadius = 100_000;
+    private int defaultLimit = 20;
+    private int maxLimit = 100;
+    /**
+     * Delay before a failed load of the index on startup is tried again. Until a load succeeds the index reports
+     * itself down.
+     */
+    private Duration loadRetryInterval = Duration.ofSeconds(30);
+}
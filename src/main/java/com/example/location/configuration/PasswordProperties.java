@@ -0,0 +1,22 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "location.password")
+public class PasswordProperties {
+
+    /**
+     * BCrypt cost, the log2 of its rounds: each step doubles the CPU time of a login and a registration. Stored
+     * hashes of a lower cost are upgraded on the next login.
+     */
+    private int cost = 10;
+
+    /**
+     * Threads hashing passwords, which bounds the CPU logins can take from everything else, and hashes waiting for
+     * them. Beyond that a login or registration is rejected with 503.
+     */
+    private int threads = 2;
+    private int queueCapacity = 50;
+}
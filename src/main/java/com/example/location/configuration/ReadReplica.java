@@ -0,0 +1,67 @@
+package com.example.location.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Where repositories send the read-only queries of the read endpoints. Queries whose result decides a write, and
+ * reads right after one, stay on the primary, as the replica may lag behind it. Without a configured replica this
+ * is the primary itself.
+ */
+@Log4j2
+public class ReadReplica implements DisposableBean {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HikariDataSource dataSource;
+
+    public ReadReplica(JdbcTemplate jdbcTemplate) {
+
+        this(jdbcTemplate, null);
+    }
+
+    private ReadReplica(JdbcTemplate jdbcTemplate, HikariDataSource dataSource) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * A connection pool to the configured replica, or the primary if there is none.
+     */
+    public static ReadReplica create(ReplicaProperties properties, JdbcTemplate primary) {
+
+        if (properties.getUrl() == null || properties.getUrl().isEmpty()) {
+            return new ReadReplica(primary);
+        }
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setJdbcUrl(properties.getUrl());
+        dataSource.setUsername(properties.getUsername());
+        dataSource.setPassword(properties.getPassword());
+        dataSource.setMaximumPoolSize(properties.getMaximumPoolSize());
+        // a write sent here by mistake fails instead of diverging from the primary
+        dataSource.setReadOnly(true);
+        log.info("Read-only queries go to the replica at {}", properties.getUrl());
+        return new ReadReplica(new JdbcTemplate(dataSource), dataSource);
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+
+        return jdbcTemplate;
+    }
+
+    public boolean isConfigured() {
+
+        return dataSource != null;
+    }
+
+    @Override
+    public void destroy() {
+
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "location.datasource.replica")
+public class ReplicaProperties {
+
+    /**
+     * JDBC URL of a read-only replica of the primary database. Without one every query goes to the primary.
+     */
+    private String url;
+    private String username;
+    private String password;
+
+    /**
+     * Connections to the replica, used by the read and export executors only, so as many as they have threads.
+     */
+    private int maximumPoolSize = 6;
+}
@@ -0,0 +1,27 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.session")
+public class SessionProperties {
+
+    /**
+     * Base64 HMAC key of at least 32 bytes, the same on every node. Without one a random key is generated, and
+     * sessions end with a restart and only work on the node that issued them.
+     */
+    private String secret;
+
+    /**
+     * Lifetime of a session token issued by {@code /login}.
+     */
+    private Duration ttl = Duration.ofHours(12);
+
+    /**
+     * Interval at which revocations of tokens that have expired anyway are forgotten.
+     */
+    private Duration purgeInterval = Duration.ofMinutes(1);
+}
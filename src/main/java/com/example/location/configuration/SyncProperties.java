@@ -0,0 +1,28 @@
+package com.example.location.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "location.sync")
+public class SyncProperties {
+
+    /**
+     * How long the change log is kept. A sync token older than that, less {@link #settle}, has expired and the
+     * client reloads the full list.
+     */
+    private Duration retention = Duration.ofDays(30);
+
+    /**
+     * Age after which a change log row is taken as committed along with every row before it. A token only moves
+     * past settled rows, so a write that commits out of order is sent on the next sync instead of being skipped.
+     */
+    private Duration settle = Duration.ofSeconds(5);
+
+    /**
+     * Rows deleted per statement by the pruning job.
+     */
+    private int pruneBatchSize = 10_000;
+}
@@ -2,15 +2,18 @@ package com.example.location.controllers;
 
 import com.example.location.util.BadRequestException;
 import com.example.location.util.ForbidException;
+import com.example.location.util.GoneException;
 import com.example.location.util.NotFoundException;
 import com.example.location.util.UnauthorizedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 import java.util.NoSuchElementException;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
 public class ExceptionHandlerAdvice {
@@ -26,7 +29,11 @@ public class ExceptionHandlerAdvice {
         if (ex instanceof UnauthorizedException) status = HttpStatus.UNAUTHORIZED;
         if (ex instanceof NoSuchElementException) status = HttpStatus.NOT_FOUND;
         if (ex instanceof NotFoundException) status = HttpStatus.NOT_FOUND;
+        if (ex instanceof GoneException) status = HttpStatus.GONE;
         if (ex instanceof CompletionException && ex.getCause() instanceof ForbidException) status = HttpStatus.FORBIDDEN;
+        if (ex instanceof RejectedExecutionException) status = HttpStatus.SERVICE_UNAVAILABLE;
+        if (ex instanceof CompletionException && ex.getCause() instanceof RejectedExecutionException) status = HttpStatus.SERVICE_UNAVAILABLE;
+        if (ex instanceof AsyncRequestTimeoutException) status = HttpStatus.SERVICE_UNAVAILABLE;
         return ResponseEntity.status(status).body(ex.getMessage());
     }
 }
@@ -0,0 +1,58 @@
+package com.example.location.controllers;
+
+import com.example.location.annotation.AuthorizationRequired;
+import com.example.location.entities.History;
+import com.example.location.services.HistoryService;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@AllArgsConstructor
+@RestController
+@Log4j2
+@RequestMapping("/history")
+public class HistoryController {
+
+    private static final String EMPTY = "0";
+    private final HistoryService historyService;
+
+    /**
+     * The caller's own audit trail, newest first. {@code from} and {@code to} are inclusive days in UTC, so a query
+     * returns the same rows whatever the server's time zone.
+     */
+    @GetMapping("")
+    @AuthorizationRequired
+    public CompletableFuture<ResponseEntity<List<History>>> history(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        @RequestParam(value = "objectType", required = false) String objectType,
+        @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(value = Pagination.CURSOR, required = false) String cursor,
+        @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+
+        UriComponentsBuilder request = Pagination.currentRequest();
+        return historyService.findHistory(uid, objectType, startOfDay(from),
+                to == null ? null : startOfDay(to.plusDays(1)), cursor, limit)
+            .thenApply(page -> Pagination.toResponse(page, request));
+    }
+
+    private static Timestamp startOfDay(LocalDate day) {
+
+        return day == null ? null : Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+}
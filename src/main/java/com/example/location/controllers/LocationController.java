@@ -2,18 +2,32 @@ package com.example.location.controllers;
 
 import com.example.location.annotation.AuthorizationOwner;
 import com.example.location.annotation.AuthorizationRequired;
+import com.example.location.component.ChangeFeed;
+import com.example.location.component.ETagCache;
+import com.example.location.configuration.ExecutorProperties;
+import com.example.location.configuration.ImportProperties;
 import com.example.location.dto.AccessDTO;
+import com.example.location.dto.BulkShareDTO;
+import com.example.location.dto.ImportReport;
+import com.example.location.dto.MapCluster;
+import com.example.location.dto.NearbyLocation;
+import com.example.location.dto.ShareResult;
 import com.example.location.dto.SharedLocation;
 import com.example.location.dto.UserLocationDTO;
 import com.example.location.entities.Access;
 import com.example.location.entities.Location;
 import com.example.location.services.AccessService;
+import com.example.location.services.LocationImportService;
 import com.example.location.services.LocationService;
+import com.example.location.services.SyncService;
 import com.example.location.services.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -22,11 +36,22 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @AllArgsConstructor
 @RestController
@@ -35,19 +60,43 @@ import java.util.concurrent.CompletableFuture;
 public class LocationController {
 
     private static final String EMPTY = "0";
+    static final String SYNC_TOKEN = "Sync-Token";
+    private static final int STREAM_FLUSH_ROWS = 500;
     private final LocationService locationService;
     private final AccessService accessService;
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final LocationImportService locationImportService;
+    private final ChangeFeed changeFeed;
+    private final SyncService syncService;
+    private final ETagCache etagCache;
+    private final ImportProperties importProperties;
+    private final ExecutorProperties executorProperties;
 
+    /**
+     * Answers 304 without reading the location when {@code If-None-Match} names its current ETag.
+     */
     @GetMapping("/{lid}")
     @AuthorizationRequired
     @AuthorizationOwner
     public CompletableFuture<ResponseEntity<Optional<Location>>> getLocation(
         @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
-        @PathVariable("lid") Long lid
+        @PathVariable("lid") Long lid,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
 
-        return locationService.findById(lid).thenApply(ResponseEntity::ok);
+        String cached = etagCache.getLocation(lid);
+        if (ETagCache.matches(ifNoneMatch, cached)) {
+            return CompletableFuture.completedFuture(notModified(cached));
+        }
+        long generation = etagCache.generation();
+        return locationService.findById(lid).thenApply(location -> {
+            String etag = etagCache.putLocation(location.get(), generation);
+            if (ETagCache.matches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(location);
+        });
     }
 
     @PostMapping("")
@@ -61,6 +110,35 @@ public class LocationController {
         return locationService.saveLocation(location).thenApply(saved -> ResponseEntity.status(HttpStatus.CREATED).body(saved));
     }
 
+    /**
+     * Creates the caller's locations from a CSV file with a name,address header or from NDJSON, one
+     * {"name": ..., "address": ...} object per line. Latitude and longitude columns or fields are optional.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    @AuthorizationRequired
+    public DeferredResult<ResponseEntity<ImportReport>> importLocations(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+        InputStream body
+    ) {
+
+        CompletableFuture<ImportReport> report = locationImportService.importLocations(uid, body,
+            MediaType.parseMediaType(contentType));
+        // a large upload outlasts the default async timeout, so the import has one of its own
+        DeferredResult<ResponseEntity<ImportReport>> result = new DeferredResult<>(
+            importProperties.getTimeout().toMillis(),
+            () -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        result.onTimeout(() -> report.cancel(false));
+        report.whenComplete((done, ex) -> {
+            if (ex == null) {
+                result.setResult(ResponseEntity.ok(done));
+            } else {
+                result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+        return result;
+    }
+
     @DeleteMapping("/{lid}")
     @AuthorizationRequired
     @AuthorizationOwner
@@ -73,13 +151,139 @@ public class LocationController {
             .thenApply(result -> ResponseEntity.ok().build());
     }
 
+    /**
+     * The first page carries a {@code Sync-Token} header. Passed back as {@code since}, it returns only the rows of
+     * the locations changed since then, plus a {@code revoked} row per location the caller can no longer see, and
+     * the next token; 410 once the token has expired. Without {@code since}, every page has an ETag and a page whose
+     * current ETag is named by {@code If-None-Match} gets a 304 without a query.
+     */
     @GetMapping("/all")
     @AuthorizationRequired
     public CompletableFuture<ResponseEntity<List<SharedLocation>>> allLocations(
-        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        @RequestParam(value = Pagination.CURSOR, required = false) String cursor,
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestParam(value = "since", required = false) String since,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+
+        if (since != null) {
+            return syncService.findChanges(uid, since)
+                .thenApply(delta -> ResponseEntity.ok().header(SYNC_TOKEN, delta.getToken()).body(delta.getItems()));
+        }
+
+        String cached = etagCache.getPage(uid, cursor, limit);
+        if (ETagCache.matches(ifNoneMatch, cached)) {
+            return CompletableFuture.completedFuture(notModified(cached));
+        }
+        long generation = etagCache.generation();
+        UriComponentsBuilder request = Pagination.currentRequest();
+        // only the first page hands out a sync token
+        CompletableFuture<String> syncToken = cursor == null ? syncService.currentToken()
+            : CompletableFuture.completedFuture(null);
+        return syncToken.thenCompose(token -> locationService.findAllLocations(uid, cursor, limit)
+            .thenApply(page -> {
+                String etag = etagCache.putPage(uid, cursor, limit, page, generation);
+                if (ETagCache.matches(ifNoneMatch, etag)) {
+                    return notModified(etag);
+                }
+                ResponseEntity<List<SharedLocation>> response = Pagination.toResponse(page, request);
+                ResponseEntity.BodyBuilder builder = ResponseEntity.ok().headers(response.getHeaders()).eTag(etag);
+                if (token != null) {
+                    builder.header(SYNC_TOKEN, token);
+                }
+                return builder.body(response.getBody());
+            }));
+    }
+
+    /**
+     * Server-sent events telling the caller which of their own or shared locations and grants changed: a
+     * {@code changes} event with a list of changes, or a {@code resync} event when they should reload everything.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @AuthorizationRequired
+    public SseEmitter changes(@RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid) {
+
+        return changeFeed.subscribe(uid);
+    }
+
+    /**
+     * Same rows as {@link #allLocations}, unpaged, written to the client while they are read from the database. The
+     * export thread that reads the rows writes them too, so no request thread waits on it. Exports have a pool of
+     * their own, 503 when it is busy, and are cut off after {@code location.executor.export-timeout}; a client that
+     * goes away or times out cancels the query before its next row.
+     */
+    @GetMapping(value = "/all/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @AuthorizationRequired
+    public DeferredResult<Void> streamAllLocations(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        HttpServletResponse response
+    ) throws IOException {
+
+        DeferredResult<Void> result = new DeferredResult<>(executorProperties.getExportTimeout().toMillis());
+        AtomicBoolean abandoned = new AtomicBoolean();
+        result.onTimeout(() -> abandoned.set(true));
+        result.onError(ex -> abandoned.set(true));
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        // the generator buffers until the first row, so a rejected export can still answer 503
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+        generator.writeStartArray();
+        locationService.streamAllLocations(uid, location -> {
+            if (abandoned.get()) {
+                throw new CancellationException("Export of UID " + uid + " abandoned by its request");
+            }
+            writeRow(generator, location);
+        }).whenComplete((rows, ex) -> {
+            try {
+                if (ex == null) {
+                    generator.writeEndArray();
+                }
+                generator.close();
+            } catch (IOException closeEx) {
+                log.debug("Export of UID {} not finished: {}", uid, closeEx.getMessage());
+            }
+            if (ex == null) {
+                result.setResult(null);
+            } else {
+                result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Locations the caller owns or has access to within {@code radius} meters of the point, nearest first.
+     */
+    @GetMapping("/nearby")
+    @AuthorizationRequired
+    public CompletableFuture<ResponseEntity<List<NearbyLocation>>> nearbyLocations(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        @RequestParam(value = "lat", required = false) Double latitude,
+        @RequestParam(value = "lon", required = false) Double longitude,
+        @RequestParam(value = "radius", required = false) Double radius,
+        @RequestParam(value = "limit", required = false) Integer limit
     ) {
 
-        return locationService.findAllLocations(uid).thenApply(ResponseEntity::ok);
+        return locationService.findNearby(uid, latitude, longitude, radius, limit).thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Clusters of the caller's owned and shared locations inside the box for a map at {@code zoom}, or single
+     * locations when zoomed in. A box with {@code west > east} crosses the antimeridian.
+     */
+    @GetMapping("/clusters")
+    @AuthorizationRequired
+    public CompletableFuture<ResponseEntity<List<MapCluster>>> locationClusters(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        @RequestParam(value = "south", required = false) Double south,
+        @RequestParam(value = "west", required = false) Double west,
+        @RequestParam(value = "north", required = false) Double north,
+        @RequestParam(value = "east", required = false) Double east,
+        @RequestParam(value = "zoom", required = false) Integer zoom
+    ) {
+
+        return locationService.findClusters(uid, south, west, north, east, zoom).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/share")
@@ -91,8 +295,21 @@ public class LocationController {
     ) {
 
         accessService.validateShareMode(access.getShareMode());
-        return accessService.saveAccess(access)
-            .thenApply(ResponseEntity.status(HttpStatus.CREATED)::body);
+        // sharing again with the same mode creates nothing
+        return accessService.saveAccess(access).thenApply(saved -> ResponseEntity
+            .status(saved.getStatus() == ShareResult.Status.UNCHANGED ? HttpStatus.OK : HttpStatus.CREATED)
+            .body(saved.getAccess()));
+    }
+
+    @PostMapping("/share/bulk")
+    @AuthorizationRequired
+    @AuthorizationOwner
+    public CompletableFuture<ResponseEntity<List<ShareResult>>> saveShares(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = EMPTY) Long uid,
+        @RequestBody BulkShareDTO share
+    ) {
+
+        return accessService.saveAccesses(share.getLid(), share.getShares()).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/unfriend")
@@ -119,4 +336,22 @@ public class LocationController {
         return accessService.change(uid, userLocation.getLid(), userLocation.getEmail())
             .thenApply(result -> ResponseEntity.ok().build());
     }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private static void writeRow(JsonGenerator generator, SharedLocation location) {
+
+        try {
+            generator.writeObject(location);
+            // push the first rows out early, after that let the buffers fill up
+            if (generator.getOutputContext().getEntryCount() % STREAM_FLUSH_ROWS == 1) {
+                generator.flush();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package com.example.location.controllers;
 
 import com.example.location.annotation.AuthorizationRequired;
+import com.example.location.annotation.SessionTokenFilter;
+import com.example.location.component.SessionTokens;
 import com.example.location.dto.LocationDTO;
 import com.example.location.dto.LoginDTO;
 import com.example.location.entities.User;
@@ -16,9 +18,12 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.servlet.http.HttpServletResponse;
 import java.util.List;
@@ -31,15 +36,19 @@ public class MainController {
 
     private final UserService userService;
     private final LocationService locationService;
+    private final SessionTokens sessionTokens;
 
     @GetMapping("/user/locations")
     @AuthorizationRequired
     public CompletableFuture<ResponseEntity<List<LocationDTO>>> userLocations(
-        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = "0") Long uid
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = "0") Long uid,
+        @RequestParam(value = Pagination.CURSOR, required = false) String cursor,
+        @RequestParam(value = "limit", required = false) Integer limit
     ) {
 
-        return locationService.findUserLocations(uid)
-            .thenApply(ResponseEntity::ok);
+        UriComponentsBuilder request = Pagination.currentRequest();
+        return locationService.findUserLocations(uid, cursor, limit)
+            .thenApply(page -> Pagination.toResponse(page, request));
     }
 
     @PostMapping("/login")
@@ -49,11 +58,22 @@ public class MainController {
 
         return userService.authorize(login.getEmail(), login.getPassword()).thenApply(user -> {
             if (!user.isPresent()) throw new UnauthorizedException();
-            response.addHeader(HttpHeaders.AUTHORIZATION, user.get().getUid().toString());
+            response.addHeader(HttpHeaders.AUTHORIZATION, sessionTokens.issue(user.get().getUid()));
             return new ResponseEntity<>(HttpStatus.OK);
         });
     }
 
+    @PostMapping("/logout")
+    @AuthorizationRequired
+    public ResponseEntity<Void> logoutUser(
+        @RequestHeader(value = HttpHeaders.AUTHORIZATION, defaultValue = "0") Long uid,
+        @RequestAttribute(SessionTokenFilter.TOKEN) String token
+    ) {
+
+        sessionTokens.revoke(token);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/register")
     public CompletableFuture<ResponseEntity<User>> registerUser(@RequestBody User user) {
 
@@ -64,7 +84,9 @@ public class MainController {
     @DeleteMapping("/user/{uid}")
     public CompletableFuture<ResponseEntity<Void>> deleteUser(@PathVariable("uid") Long uid) {
 
-        return userService.deleteUser(uid)
-            .thenApply(result -> ResponseEntity.ok().build());
+        return userService.deleteUser(uid).thenApply(result -> {
+            sessionTokens.revokeUser(uid);
+            return ResponseEntity.ok().build();
+        });
     }
 }
@@ -0,0 +1,39 @@
+package com.example.location.controllers;
+
+import com.example.location.dto.CursorPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+
+/**
+ * Keeps paginated endpoints' bodies plain JSON arrays and announces the following page in a {@code Link} header.
+ */
+final class Pagination {
+
+    static final String CURSOR = "cursor";
+
+    private Pagination() {
+
+    }
+
+    /**
+     * Must be called on the request thread, before the response future hops to another thread.
+     */
+    static UriComponentsBuilder currentRequest() {
+
+        return ServletUriComponentsBuilder.fromCurrentRequest();
+    }
+
+    static <T> ResponseEntity<List<T>> toResponse(CursorPage<T> page, UriComponentsBuilder request) {
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNext() != null) {
+            String next = request.cloneBuilder().replaceQueryParam(CURSOR, page.getNext()).toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page.getItems());
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkShareDTO {
+
+    private Long lid;
+    private List<ShareDTO> shares;
+}
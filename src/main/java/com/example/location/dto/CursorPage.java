@@ -0,0 +1,18 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> items;
+
+    /**
+     * Cursor of the following page, {@code null} on the last page.
+     */
+    private String next;
+}
@@ -0,0 +1,15 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class HistoryPartition {
+
+    private String name;
+    /**
+     * Exclusive upper bound in epoch seconds, {@code null} for the MAXVALUE partition.
+     */
+    private Long lessThan;
+}
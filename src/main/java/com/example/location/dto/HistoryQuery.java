@@ -0,0 +1,30 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HistoryQuery {
+
+    private Long actionBy;
+    private String objectType;
+    /**
+     * Inclusive lower bound of the date range.
+     */
+    private Timestamp from;
+    /**
+     * Exclusive upper bound of the date range.
+     */
+    private Timestamp to;
+    /**
+     * Sort key of the last row already returned, both {@code null} for the first page.
+     */
+    private Timestamp afterDate;
+    private Long afterHid;
+    private int limit;
+}
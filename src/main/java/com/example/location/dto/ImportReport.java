@@ -0,0 +1,33 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ImportReport {
+
+    private long imported;
+    private long failed;
+    /**
+     * False when the upload could not be read to the end, rows after that point were not looked at.
+     */
+    private boolean complete = true;
+    private List<RowError> errors = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RowError {
+
+        /**
+         * 1-based number of the data row, not counting a CSV header.
+         */
+        private long row;
+        private String message;
+    }
+}
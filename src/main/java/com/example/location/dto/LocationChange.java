@@ -0,0 +1,26 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What the change feed tells a subscriber: which location or grant changed, not the new state, which the client
+ * fetches if it cares.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocationChange {
+
+    /**
+     * {@code location} or {@code access}.
+     */
+    private String type;
+    /**
+     * {@code created}, {@code updated} or {@code deleted}.
+     */
+    private String action;
+    private Long lid;
+    private long timestamp;
+}
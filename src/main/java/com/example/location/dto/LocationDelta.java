@@ -0,0 +1,18 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class LocationDelta {
+
+    /**
+     * Current rows of every changed location the user can see, then a {@code revoked} row for each one they no
+     * longer can.
+     */
+    private List<SharedLocation> items;
+    private String token;
+}
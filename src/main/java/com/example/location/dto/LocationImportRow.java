@@ -0,0 +1,21 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocationImportRow {
+
+    private String name;
+    private String address;
+    private Double latitude;
+    private Double longitude;
+
+    public LocationImportRow(String name, String address) {
+
+        this(name, address, null, null);
+    }
+}
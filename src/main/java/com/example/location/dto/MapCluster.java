@@ -0,0 +1,25 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MapCluster {
+
+    private long count;
+    /**
+     * Centroid of the locations in the cluster, or the location itself when {@code count} is 1.
+     */
+    private double latitude;
+    private double longitude;
+    /**
+     * Set for a single location only.
+     */
+    private Long lid;
+    private String name;
+    private String address;
+    private String accessType;
+}
@@ -0,0 +1,22 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearbyLocation {
+
+    private Long lid;
+    private String name;
+    private String address;
+    private Double latitude;
+    private Double longitude;
+    private String accessType;
+    /**
+     * Great-circle distance from the searched point, in meters.
+     */
+    private long distance;
+}
@@ -0,0 +1,18 @@
+package com.example.location.dto;
+
+import com.example.location.entities.Access;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A grant as saved, with whether it was created, changed or already there as requested.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SavedAccess {
+
+    private Access access;
+    private ShareResult.Status status;
+}
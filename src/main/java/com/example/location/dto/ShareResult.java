@@ -0,0 +1,24 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ShareResult {
+
+    private String email;
+    private Status status;
+    private String error;
+
+    public static ShareResult failed(String email, String error) {
+
+        return new ShareResult(email, Status.FAILED, error);
+    }
+
+    public enum Status {
+        CREATED, UPDATED, UNCHANGED, FAILED
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.location.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+@Data
+@AllArgsConstructor
+public class SyncChanges {
+
+    /**
+     * Changed locations in the order of their first change.
+     */
+    private Set<Long> lids;
+    private long version;
+}
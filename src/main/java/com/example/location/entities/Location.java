@@ -13,6 +13,8 @@ public class Location {
     private Long uid;
     private String name;
     private String address;
+    private Double latitude;
+    private Double longitude;
 
     public Location(long uidL, String name, String address) {
 
@@ -20,4 +22,14 @@ public class Location {
         this.name = name;
         this.address = address;
     }
-}
\ No newline at end of file
+
+    public Location(Long lid, Long uid, String name, String address) {
+
+        this(lid, uid, name, address, null, null);
+    }
+
+    public boolean hasCoordinates() {
+
+        return latitude != null && longitude != null;
+    }
+}
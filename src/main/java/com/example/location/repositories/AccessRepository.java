@@ -11,6 +11,20 @@ public interface AccessRepository {
 
     CompletableFuture<List<Access>> findAllByLid(Long lid);
 
+    CompletableFuture<List<Access>> findAllByLids(List<Long> lids);
+
+    /**
+     * Grants of the user, one per location shared with them.
+     */
+    CompletableFuture<List<Access>> findAllByUid(Long uid);
+
+    /**
+     * The owner of the location and every user it is shared with.
+     */
+    CompletableFuture<List<Long>> findAudienceByLid(Long lid);
+
+    CompletableFuture<List<Access>> findAllByLidAndUids(Long lid, List<Long> uids);
+
     CompletableFuture<List<UserAccessDto>> getUserAccessByLocationId(Long lid);
 
     CompletableFuture<Integer> deleteByUidAndLid(Long uid, Long lid);
@@ -19,5 +33,16 @@ public interface AccessRepository {
 
     CompletableFuture<Access> save(Access a);
 
+    /**
+     * Creates the grant or changes the type of the existing one in a single statement. Sets the aid of {@code a},
+     * reading it back when the grant was already there with the same type.
+     */
+    CompletableFuture<UpsertResult> upsert(Access a);
+
+    /**
+     * Creates the grants or changes the type of existing ones, in one batch.
+     */
+    CompletableFuture<Void> upsertAll(List<Access> accesses);
+
     CompletableFuture<Boolean> update(Access a);
 }
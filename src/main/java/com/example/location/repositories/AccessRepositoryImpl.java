@@ -1,9 +1,12 @@
 package com.example.location.repositories;
 
+import com.example.location.configuration.JdbcExecutors;
+import com.example.location.configuration.ReadReplica;
 import com.example.location.dto.UserAccessDto;
 import com.example.location.entities.Access;
 import com.example.location.util.DbException;
 import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
@@ -14,6 +17,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -22,8 +26,7 @@ import java.util.concurrent.CompletableFuture;
 @AllArgsConstructor
 public class AccessRepositoryImpl implements AccessRepository {
 
-    private final JdbcTemplate jdbcTemplate;
-    private final RowMapper<Access> accessRowMapper = (rs, rowNum) -> {
+    static final RowMapper<Access> ACCESS_ROW_MAPPER = (rs, rowNum) -> {
         Access access = new Access();
         access.setAid(rs.getLong("aid"));
         access.setUid(rs.getLong("uid"));
@@ -31,7 +34,7 @@ public class AccessRepositoryImpl implements AccessRepository {
         access.setType(rs.getString("type"));
         return access;
     };
-    private final RowMapper<UserAccessDto> userDtoRowMapper = (rs, rowNum) -> {
+    static final RowMapper<UserAccessDto> USER_ACCESS_ROW_MAPPER = (rs, rowNum) -> {
         UserAccessDto dto = new UserAccessDto();
         dto.setAccessType(rs.getString("type"));
         dto.setEmail(rs.getString("email"));
@@ -40,13 +43,67 @@ public class AccessRepositoryImpl implements AccessRepository {
         return dto;
     };
 
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadReplica readReplica;
+    private final JdbcExecutors executors;
+
     @Override
     public CompletableFuture<List<Access>> findAllByLid(Long lid) {
 
         return CompletableFuture.supplyAsync(() -> {
             String sql = "SELECT * FROM access WHERE lid = ?";
-            return jdbcTemplate.query(sql, accessRowMapper, lid);
-        });
+            return replica().query(sql, ACCESS_ROW_MAPPER, lid);
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> findAudienceByLid(Long lid) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            String sql = "SELECT uid FROM location WHERE lid = ? UNION SELECT uid FROM access WHERE lid = ?";
+            return jdbcTemplate.queryForList(sql, Long.class, lid, lid);
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<List<Access>> findAllByLids(List<Long> lids) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            List<Access> accesses = new ArrayList<>();
+            for (int from = 0; from < lids.size(); from += SqlUtils.MAX_IN_PARAMS) {
+                List<Long> chunk = lids.subList(from, Math.min(from + SqlUtils.MAX_IN_PARAMS, lids.size()));
+                String sql = "SELECT * FROM access WHERE lid IN (" + SqlUtils.placeholders(chunk.size()) + ")";
+                accesses.addAll(replica().query(sql, ACCESS_ROW_MAPPER, chunk.toArray()));
+            }
+            return accesses;
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<List<Access>> findAllByUid(Long uid) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            String sql = "SELECT * FROM access WHERE uid = ?";
+            return replica().query(sql, ACCESS_ROW_MAPPER, uid);
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<List<Access>> findAllByLidAndUids(Long lid, List<Long> uids) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            List<Access> accesses = new ArrayList<>();
+            for (int from = 0; from < uids.size(); from += SqlUtils.MAX_IN_PARAMS) {
+                List<Long> chunk = uids.subList(from, Math.min(from + SqlUtils.MAX_IN_PARAMS, uids.size()));
+                String sql = "SELECT * FROM access WHERE lid = ? AND uid IN (" + SqlUtils.placeholders(chunk.size())
+                    + ")";
+                List<Object> args = new ArrayList<>(chunk.size() + 1);
+                args.add(lid);
+                args.addAll(chunk);
+                accesses.addAll(jdbcTemplate.query(sql, ACCESS_ROW_MAPPER, args.toArray()));
+            }
+            return accesses;
+        }, executors.getRead());
     }
 
     @Override
@@ -56,8 +113,8 @@ public class AccessRepositoryImpl implements AccessRepository {
             String sql =
                 "SELECT a.aid, u.firstname, u.lastname, a.type, u.email FROM access a " + "JOIN users u ON " + "a" +
                     ".uid = u.uid " + "WHERE a.lid = ?";
-            return jdbcTemplate.query(sql, userDtoRowMapper, lid);
-        });
+            return replica().query(sql, USER_ACCESS_ROW_MAPPER, lid);
+        }, executors.getRead());
     }
 
     @Override
@@ -66,7 +123,7 @@ public class AccessRepositoryImpl implements AccessRepository {
         return CompletableFuture.supplyAsync(() -> {
             String sql = "DELETE FROM access WHERE uid = ? AND lid = ?";
             return jdbcTemplate.update(sql, uid, lid);
-        });
+        }, executors.getWrite());
     }
 
     @Override
@@ -74,9 +131,9 @@ public class AccessRepositoryImpl implements AccessRepository {
 
         return CompletableFuture.supplyAsync(() -> {
             String sql = "SELECT * FROM access WHERE uid = ? AND lid = ?";
-            List<Access> accesses = jdbcTemplate.query(sql, accessRowMapper, uid, lid);
+            List<Access> accesses = jdbcTemplate.query(sql, ACCESS_ROW_MAPPER, uid, lid);
             return accesses.isEmpty() ? Optional.empty() : Optional.of(accesses.get(0));
-        });
+        }, executors.getAuth());
     }
 
     @Override
@@ -108,16 +165,88 @@ public class AccessRepositoryImpl implements AccessRepository {
             });
 
             return a;
-        });
+        }, executors.getWrite());
+    }
+
+    @Override
+    public CompletableFuture<UpsertResult> upsert(Access a) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            // LAST_INSERT_ID(aid) makes the generated key the existing aid when the row is updated
+            String sql = "INSERT INTO access (uid, lid, type) VALUES (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE aid = LAST_INSERT_ID(aid), type = VALUES(type)";
+
+            PreparedStatementCreator psc = connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                ps.setLong(1, a.getUid());
+                ps.setLong(2, a.getLid());
+                ps.setString(3, a.getType());
+                return ps;
+            };
+
+            return jdbcTemplate.execute(psc, (PreparedStatementCallback<UpsertResult>) ps -> {
+                int rows = ps.executeUpdate();
+                // an unchanged row generates no key, so its aid is read back on the same connection
+                try (ResultSet rs = rows > 0 ? ps.getGeneratedKeys() : selectAid(ps, a)) {
+                    if (rs.next()) {
+                        a.setAid(rs.getLong(1));
+                    }
+                } catch (SQLException ex) {
+                    throw new DbException("Could not save access");
+                }
+                return UpsertResult.fromAffectedRows(rows);
+            });
+        }, executors.getWrite());
+    }
+
+    private static ResultSet selectAid(PreparedStatement upsert, Access a) throws SQLException {
+
+        PreparedStatement ps = upsert.getConnection()
+            .prepareStatement("SELECT aid FROM access WHERE uid = ? AND lid = ?");
+        ps.closeOnCompletion();
+        ps.setLong(1, a.getUid());
+        ps.setLong(2, a.getLid());
+        return ps.executeQuery();
+    }
+
+    @Override
+    public CompletableFuture<Void> upsertAll(List<Access> accesses) {
+
+        return CompletableFuture.runAsync(() -> {
+            String sql = "INSERT INTO access (uid, lid, type) VALUES (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE type = VALUES(type)";
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+
+                    Access access = accesses.get(i);
+                    ps.setLong(1, access.getUid());
+                    ps.setLong(2, access.getLid());
+                    ps.setString(3, access.getType());
+                }
+
+                @Override
+                public int getBatchSize() {
+
+                    return accesses.size();
+                }
+            });
+        }, executors.getWrite());
     }
 
     @Override
     public CompletableFuture<Boolean> update(Access a) {
 
         return CompletableFuture.supplyAsync(() -> {
-            String sql = "UPDATE access a set a.type=?";
-            int update = jdbcTemplate.update(sql, a.getType());
+            String sql = "UPDATE access SET type = ? WHERE aid = ?";
+            int update = jdbcTemplate.update(sql, a.getType(), a.getAid());
             return update != 0;
-        });
+        }, executors.getWrite());
+    }
+
+    private JdbcTemplate replica() {
+
+        return readReplica.getJdbcTemplate();
     }
 }
@@ -0,0 +1,125 @@
+package com.example.location.repositories;
+
+import com.example.location.component.UserCache;
+import com.example.location.entities.User;
+import lombok.AllArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link UserRepository} answering lookups by uid and email from a {@link UserCache}, found or not. Logins and
+ * password updates go straight to the database, the cache never holding passwords.
+ */
+@AllArgsConstructor
+public class CachingUserRepository implements UserRepository {
+
+    private final UserRepository delegate;
+    private final UserCache userCache;
+
+    @Override
+    public CompletableFuture<Optional<User>> findByEmailForLogin(String email) {
+
+        return delegate.findByEmailForLogin(email);
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> findByEmail(String email) {
+
+        Optional<User> cached = userCache.getByEmail(email);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = userCache.generation();
+        return delegate.findByEmail(email).thenApply(user -> {
+            if (user.isPresent()) {
+                userCache.put(user.get(), generation);
+            } else {
+                userCache.putMissingEmail(email, generation);
+            }
+            return user;
+        });
+    }
+
+    /**
+     * Queries only the emails not cached, and remembers which of those belong to nobody.
+     */
+    @Override
+    public CompletableFuture<List<User>> findAllByEmails(List<String> emails) {
+
+        List<User> users = new ArrayList<>(emails.size());
+        List<String> uncached = new ArrayList<>();
+        for (String email : new LinkedHashSet<>(emails)) {
+            Optional<User> cached = userCache.getByEmail(email);
+            if (cached == null) {
+                uncached.add(email);
+            } else {
+                cached.ifPresent(users::add);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return CompletableFuture.completedFuture(users);
+        }
+
+        long generation = userCache.generation();
+        return delegate.findAllByEmails(uncached).thenApply(found -> {
+            // the database may match an email in another case
+            Set<String> missing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            missing.addAll(uncached);
+            for (User user : found) {
+                userCache.put(user, generation);
+                missing.remove(user.getEmail());
+                users.add(user);
+            }
+            missing.forEach(email -> userCache.putMissingEmail(email, generation));
+            return users;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> findById(Long uid) {
+
+        Optional<User> cached = userCache.getById(uid);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = userCache.generation();
+        return delegate.findById(uid).thenApply(user -> {
+            if (user.isPresent()) {
+                userCache.put(user.get(), generation);
+            } else {
+                userCache.putMissingId(uid, generation);
+            }
+            return user;
+        });
+    }
+
+    @Override
+    public CompletableFuture<User> save(User user) {
+
+        return delegate.save(user).thenApply(saved -> {
+            userCache.invalidateEmail(saved.getEmail());
+            return saved;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteById(Long uid) {
+
+        return delegate.deleteById(uid).thenApply(deleted -> {
+            userCache.invalidateUser(uid);
+            return deleted;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updatePassword(Long uid, String expected, String password) {
+
+        return delegate.updatePassword(uid, expected, password);
+    }
+}
@@ -1,10 +1,29 @@
 package com.example.location.repositories;
 
+import com.example.location.dto.HistoryPartition;
+import com.example.location.dto.HistoryQuery;
 import com.example.location.entities.History;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface HistoryRepository {
 
     CompletableFuture<History> save(History history);
+
+    CompletableFuture<Integer> saveAll(List<History> histories);
+
+    /**
+     * Returns up to {@code query.limit} rows newest first, strictly after the query's (afterDate, afterHid) key.
+     */
+    CompletableFuture<List<History>> findPage(HistoryQuery query);
+
+    CompletableFuture<List<HistoryPartition>> findPartitions();
+
+    /**
+     * Splits the MAXVALUE partition so that the given bounded partitions precede it.
+     */
+    CompletableFuture<Void> addPartitions(List<HistoryPartition> partitions);
+
+    CompletableFuture<Void> dropPartitions(List<String> names);
 }
@@ -1,22 +1,48 @@
 package com.example.location.repositories;
 
+import com.example.location.configuration.JdbcExecutors;
+import com.example.location.configuration.ReadReplica;
+import com.example.location.dto.HistoryPartition;
+import com.example.location.dto.HistoryQuery;
 import com.example.location.entities.History;
 import com.example.location.util.DbException;
 import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @AllArgsConstructor
 public class HistoryRepositoryImpl implements HistoryRepository {
 
+    public static final String FUTURE_PARTITION = "p_future";
+    private static final String MAXVALUE = "MAXVALUE";
+    private static final Pattern PARTITION_NAME = Pattern.compile("p_?[a-z0-9]+");
+    static final RowMapper<History> HISTORY_ROW_MAPPER = (rs, rowNum) -> {
+        History history = new History();
+        history.setHid(rs.getLong("hid"));
+        history.setActionBy(rs.getObject("action_by", Long.class));
+        history.setObjectType(rs.getString("object_type"));
+        history.setAction(rs.getString("action"));
+        history.setActionDetails(rs.getString("action_details"));
+        history.setDate(rs.getTimestamp("date"));
+        return history;
+    };
+
     private final JdbcTemplate jdbcTemplate;
+    private final ReadReplica readReplica;
+    private final JdbcExecutors executors;
 
     @Override
     public CompletableFuture<History> save(History history) {
@@ -51,6 +77,127 @@ public class HistoryRepositoryImpl implements HistoryRepository {
             });
 
             return history;
-        });
+        }, executors.getHistory());
+    }
+
+    @Override
+    public CompletableFuture<Integer> saveAll(List<History> histories) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            String sql = "INSERT INTO history (action_by, object_type, action, action_details, date) VALUES (?, ?, ?,"
+                + " ?, ?)";
+
+            int[] rows = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+
+                    History history = histories.get(i);
+                    ps.setObject(1, history.getActionBy());
+                    ps.setString(2, history.getObjectType());
+                    ps.setString(3, history.getAction());
+                    ps.setString(4, history.getActionDetails());
+                    ps.setTimestamp(5, history.getDate());
+                }
+
+                @Override
+                public int getBatchSize() {
+
+                    return histories.size();
+                }
+            });
+
+            return rows.length;
+        }, executors.getHistory());
+    }
+
+    @Override
+    public CompletableFuture<List<History>> findPage(HistoryQuery query) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            StringBuilder sql = new StringBuilder("SELECT * FROM history WHERE action_by = ?");
+            List<Object> args = new ArrayList<>();
+            args.add(query.getActionBy());
+
+            if (query.getObjectType() != null) {
+                sql.append(" AND object_type = ?");
+                args.add(query.getObjectType());
+            }
+            if (query.getFrom() != null) {
+                sql.append(" AND date >= ?");
+                args.add(query.getFrom());
+            }
+            if (query.getTo() != null) {
+                sql.append(" AND date < ?");
+                args.add(query.getTo());
+            }
+            if (query.getAfterDate() != null && query.getAfterHid() != null) {
+                sql.append(" AND (date < ? OR (date = ? AND hid < ?))");
+                args.add(query.getAfterDate());
+                args.add(query.getAfterDate());
+                args.add(query.getAfterHid());
+            }
+            sql.append(" ORDER BY date DESC, hid DESC LIMIT ?");
+            args.add(query.getLimit());
+
+            return replica().query(sql.toString(), HISTORY_ROW_MAPPER, args.toArray());
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<List<HistoryPartition>> findPartitions() {
+
+        return CompletableFuture.supplyAsync(() -> {
+            String sql = "SELECT partition_name, partition_description FROM information_schema.partitions "
+                + "WHERE table_schema = DATABASE() AND table_name = 'history' AND partition_name IS NOT NULL "
+                + "ORDER BY partition_ordinal_position";
+            return jdbcTemplate.query(sql, (rs, rowNum) -> {
+                String bound = rs.getString("partition_description");
+                return new HistoryPartition(rs.getString("partition_name"),
+                    MAXVALUE.equalsIgnoreCase(bound) ? null : Long.valueOf(bound));
+            });
+        }, executors.getHistory());
+    }
+
+    @Override
+    public CompletableFuture<Void> addPartitions(List<HistoryPartition> partitions) {
+
+        return CompletableFuture.runAsync(() -> {
+            StringBuilder sql = new StringBuilder("ALTER TABLE history REORGANIZE PARTITION ")
+                .append(FUTURE_PARTITION).append(" INTO (");
+            for (HistoryPartition partition : partitions) {
+                sql.append("PARTITION ").append(partitionName(partition.getName()))
+                    .append(" VALUES LESS THAN (").append(partition.getLessThan()).append("), ");
+            }
+            sql.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN MAXVALUE)");
+            jdbcTemplate.execute(sql.toString());
+        }, executors.getHistory());
+    }
+
+    @Override
+    public CompletableFuture<Void> dropPartitions(List<String> names) {
+
+        return CompletableFuture.runAsync(() -> {
+            String sql = "ALTER TABLE history DROP PARTITION " + names.stream()
+                .map(HistoryRepositoryImpl::partitionName)
+                .collect(Collectors.joining(", "));
+            jdbcTemplate.execute(sql);
+        }, executors.getHistory());
+    }
+
+    private JdbcTemplate replica() {
+
+        return readReplica.getJdbcTemplate();
+    }
+
+    /**
+     * Partition names end up in DDL, which cannot take bind parameters.
+     */
+    private static String partitionName(String name) {
+
+        if (!PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid partition name: " + name);
+        }
+        return name;
     }
 }
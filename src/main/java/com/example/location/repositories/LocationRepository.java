@@ -3,20 +3,50 @@ package com.example.location.repositories;
 import com.example.location.dto.SharedLocation;
 import com.example.location.entities.Location;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface LocationRepository {
 
-    CompletableFuture<List<Location>> findAllByUid(Long uid);
+    /**
+     * Up to {@code limit} locations of the owner with a lid greater than {@code afterLid}, in lid order.
+     */
+    CompletableFuture<List<Location>> findAllByUid(Long uid, long afterLid, int limit);
 
     CompletableFuture<Optional<Location>> findByUidAndLid(Long uid, Long lid);
 
-    CompletableFuture<List<SharedLocation>> findAllLocations(Long uid);
+    /**
+     * Rows of up to {@code limit} owned or shared locations with a lid greater than {@code afterLid}, in lid order.
+     * A shared location has one row per user it is shared with.
+     */
+    CompletableFuture<List<SharedLocation>> findAllLocations(Long uid, long afterLid, int limit);
+
+    /**
+     * Rows of {@link #findAllLocations} for the given lids, in lid order. A lid the user cannot see has no rows.
+     */
+    CompletableFuture<List<SharedLocation>> findSharedLocations(Long uid, Collection<Long> lids);
+
+    /**
+     * Hands every row of {@link #findAllLocations} to {@code consumer} as it is read, without paging. Completes
+     * with the number of rows.
+     */
+    CompletableFuture<Long> streamAllLocations(Long uid, Consumer<SharedLocation> consumer);
+
+    /**
+     * Hands every location with coordinates to {@code consumer} as it is read. Completes with the number of rows.
+     */
+    CompletableFuture<Long> streamWithCoordinates(Consumer<Location> consumer);
 
     CompletableFuture<Location> save(Location l);
 
+    /**
+     * Inserts the locations with one batch and sets their generated lids.
+     */
+    CompletableFuture<List<Location>> saveAll(List<Location> locations);
+
     CompletableFuture<Optional<Location>> findById(Long uid);
 
     CompletableFuture<Boolean> deleteById(Long lid);
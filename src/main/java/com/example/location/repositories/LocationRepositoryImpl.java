@@ -1,5 +1,7 @@
 package com.example.location.repositories;
 
+import com.example.location.configuration.JdbcExecutors;
+import com.example.location.configuration.ReadReplica;
 import com.example.location.dto.SharedLocation;
 import com.example.location.entities.Location;
 import com.example.location.util.DbException;
@@ -7,6 +9,7 @@ import lombok.AllArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
@@ -14,23 +17,75 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Repository
 @AllArgsConstructor
 public class LocationRepositoryImpl implements LocationRepository {
 
+    /**
+     * The lids of one page of {@link #FIND_ALL_LOCATIONS_SQL}: owned and shared lids after the cursor. Each branch is
+     * a bounded range scan of location(uid, lid) or access(uid, lid).
+     */
+    static final String FIND_ALL_LOCATIONS_PAGE_SQL =
+        "(SELECT lid FROM location WHERE uid = ? AND lid > ? ORDER BY lid LIMIT ?)\n" +
+        "UNION\n" +
+        "(SELECT lid FROM access WHERE uid = ? AND lid > ? ORDER BY lid LIMIT ?)\n" +
+        "ORDER BY lid LIMIT ?";
+
+    /**
+     * The caller's own locations, then every grant of the locations shared with the caller, for lids in
+     * {@code (after, last]}. Both branches are disjoint, so UNION ALL skips the temporary table a plain UNION needs
+     * for de-duplication, and every join is an index lookup: location(uid, lid), access(uid, lid),
+     * access(lid, uid, type) and the primary keys.
+     */
+    static final String SHARED_LOCATIONS_SQL = "SELECT l.lid, u.email, l.name, l.address, 'owner' AS accessType\n" +
+        "FROM location l\n" +
+        "    INNER JOIN users u ON u.uid = l.uid\n" +
+        "WHERE l.uid = ? AND l.lid > ? AND l.lid <= ?\n" +
+        "UNION ALL\n" +
+        "SELECT l.lid, u.email, l.name, l.address, a.type\n" +
+        "FROM access mine\n" +
+        "    INNER JOIN location l ON l.lid = mine.lid\n" +
+        "    INNER JOIN access a ON a.lid = mine.lid\n" +
+        "    INNER JOIN users u ON u.uid = a.uid\n" +
+        "WHERE mine.uid = ? AND mine.lid > ? AND mine.lid <= ?";
+
+    static final String FIND_ALL_LOCATIONS_SQL = SHARED_LOCATIONS_SQL + "\nORDER BY lid";
+
+    /**
+     * {@link #SHARED_LOCATIONS_SQL} for a list of lids instead of a range.
+     */
+    static String sharedLocationsSql(int lids) {
+
+        String in = "IN (" + SqlUtils.placeholders(lids) + ")";
+        return SHARED_LOCATIONS_SQL
+            .replace("l.lid > ? AND l.lid <= ?", "l.lid " + in)
+            .replace("mine.lid > ? AND mine.lid <= ?", "mine.lid " + in)
+            + "\nORDER BY lid";
+    }
+
+    private static final String INSERT_SQL =
+        "INSERT INTO location (uid, name, address, latitude, longitude) VALUES (?, ?, ?, ?, ?)";
+
     private final JdbcTemplate jdbcTemplate;
+    private final ReadReplica readReplica;
+    private final JdbcExecutors executors;
 
     @Override
-    public CompletableFuture<List<Location>> findAllByUid(Long uid) {
+    public CompletableFuture<List<Location>> findAllByUid(Long uid, long afterLid, int limit) {
 
         return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT * FROM location WHERE uid = ?";
-            return jdbcTemplate.query(sql, new LocationRowMapper(), uid);
-        });
+            String sql = "SELECT * FROM location WHERE uid = ? AND lid > ? ORDER BY lid LIMIT ?";
+            return replica().query(sql, new LocationRowMapper(), uid, afterLid, limit);
+        }, executors.getRead());
     }
 
     @Override
@@ -40,39 +95,116 @@ public class LocationRepositoryImpl implements LocationRepository {
             String sql = "SELECT * FROM location WHERE uid = ? AND lid = ?";
             List<Location> locations = jdbcTemplate.query(sql, new LocationRowMapper(), uid, lid);
             return locations.isEmpty() ? Optional.empty() : Optional.of(locations.get(0));
-        });
+        }, executors.getAuth());
     }
 
     @Override
-    public CompletableFuture<List<SharedLocation>> findAllLocations(Long uid) {
+    public CompletableFuture<List<SharedLocation>> findAllLocations(Long uid, long afterLid, int limit) {
 
         return CompletableFuture.supplyAsync(() -> {
-            String sql = "select l.lid, u.email, l.name, l.address, 'owner' as accessType\n" +
-                "from location l\n" +
-                "         inner join users u on u.uid = l.uid\n" +
-                "where l.uid = ?\n" +
-                "UNION\n" +
-                "select l.lid, u.email, l.name, l.address, a.type\n" +
-                "from location l\n" +
-                "    inner join access a on l.lid = a.lid\n" +
-                "    inner join users u on a.uid = u.uid\n" +
-                "where l.lid in (select lid from access where uid = ?);\n";
-            return jdbcTemplate.query(sql, new SharedLocationRowMapper(), uid, uid);
-        });
+            List<Long> lids = replica().queryForList(FIND_ALL_LOCATIONS_PAGE_SQL, Long.class,
+                uid, afterLid, limit, uid, afterLid, limit, limit);
+            if (lids.isEmpty()) {
+                return Collections.emptyList();
+            }
+            long lastLid = lids.get(lids.size() - 1);
+            return replica().query(FIND_ALL_LOCATIONS_SQL, new SharedLocationRowMapper(),
+                uid, afterLid, lastLid, uid, afterLid, lastLid);
+        }, executors.getRead());
     }
 
     @Override
-    public CompletableFuture<Location> save(Location l) {
+    public CompletableFuture<List<SharedLocation>> findSharedLocations(Long uid, Collection<Long> lids) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            List<Long> sorted = new ArrayList<>(lids);
+            Collections.sort(sorted);
+            // every lid is bound twice, once per branch
+            int chunkSize = SqlUtils.MAX_IN_PARAMS / 2;
+            List<SharedLocation> rows = new ArrayList<>();
+            for (int from = 0; from < sorted.size(); from += chunkSize) {
+                List<Long> chunk = sorted.subList(from, Math.min(from + chunkSize, sorted.size()));
+                List<Object> args = new ArrayList<>(chunk.size() * 2 + 2);
+                args.add(uid);
+                args.addAll(chunk);
+                args.add(uid);
+                args.addAll(chunk);
+                rows.addAll(replica().query(sharedLocationsSql(chunk.size()), new SharedLocationRowMapper(),
+                    args.toArray()));
+            }
+            return rows;
+        }, executors.getRead());
+    }
+
+    /**
+     * Reads the rows with a streaming result set: MySQL Connector/J then hands out one row at a time instead of
+     * buffering the whole result, so memory stays flat however many rows there are. The connection and an export
+     * thread stay busy until the last row is consumed, which is as long as the consumer takes to write it out. A
+     * consumer that throws cancels the query, as closing a streaming result set would otherwise read the rest of it.
+     */
+    @Override
+    public CompletableFuture<Long> streamAllLocations(Long uid, Consumer<SharedLocation> consumer) {
 
         return CompletableFuture.supplyAsync(() -> {
-            String sql = "INSERT INTO location (uid, name, address) VALUES (?, ?, ?)";
+            PreparedStatementCreator psc = con -> {
+                PreparedStatement ps = con.prepareStatement(SHARED_LOCATIONS_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(Integer.MIN_VALUE);
+                ps.setLong(1, uid);
+                ps.setLong(2, 0);
+                ps.setLong(3, Long.MAX_VALUE);
+                ps.setLong(4, uid);
+                ps.setLong(5, 0);
+                ps.setLong(6, Long.MAX_VALUE);
+                return ps;
+            };
+
+            SharedLocationRowMapper rowMapper = new SharedLocationRowMapper();
+            return replica().execute(psc, (PreparedStatementCallback<Long>) ps -> {
+                long rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    try {
+                        while (rs.next()) {
+                            consumer.accept(rowMapper.mapRow(rs, (int) rows++));
+                        }
+                    } catch (RuntimeException ex) {
+                        // before the result set is closed, which would read the rest of it
+                        ps.cancel();
+                        throw ex;
+                    }
+                }
+                return rows;
+            });
+        }, executors.getExport());
+    }
+
+    @Override
+    public CompletableFuture<Long> streamWithCoordinates(Consumer<Location> consumer) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            String sql = "SELECT * FROM location WHERE latitude IS NOT NULL AND longitude IS NOT NULL";
+            PreparedStatementCreator psc = con -> {
+                PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(Integer.MIN_VALUE);
+                return ps;
+            };
+
+            LocationRowMapper rowMapper = new LocationRowMapper();
+            long[] rows = new long[1];
+            replica().query(psc, (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, (int) rows[0]++)));
+            return rows[0];
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<Location> save(Location l) {
 
+        return CompletableFuture.supplyAsync(() -> {
             // Prepare the PreparedStatementCreator with RETURN_GENERATED_KEYS option
             PreparedStatementCreator psc = con -> {
-                PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-                ps.setLong(1, l.getUid());
-                ps.setString(2, l.getName());
-                ps.setString(3, l.getAddress());
+                PreparedStatement ps = con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                setInsertParameters(ps, l);
                 return ps;
             };
 
@@ -94,17 +226,52 @@ public class LocationRepositoryImpl implements LocationRepository {
             });
 
             return l;
-        });
+        }, executors.getWrite());
+    }
+
+    @Override
+    public CompletableFuture<List<Location>> saveAll(List<Location> locations) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            // with rewriteBatchedStatements the batch goes out as one multi-row INSERT and Connector/J still
+            // returns one generated key per row
+            PreparedStatementCreator psc = con -> con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            return jdbcTemplate.execute(psc, (PreparedStatementCallback<List<Location>>) ps -> {
+                for (Location l : locations) {
+                    setInsertParameters(ps, l);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                int i = 0;
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next() && i < locations.size()) {
+                        locations.get(i++).setLid(rs.getLong(1));
+                    }
+                }
+                if (i != locations.size()) {
+                    throw new DbException("Could not save locations");
+                }
+                return locations;
+            });
+        }, executors.getWrite());
     }
 
+    /**
+     * Reads the replica, and the primary if the replica does not have the location yet, so that one just created is
+     * found.
+     */
     @Override
     public CompletableFuture<Optional<Location>> findById(Long lid) {
 
         return CompletableFuture.supplyAsync(() -> {
             String sql = "SELECT * FROM location WHERE lid = ?";
-            List<Location> locations = jdbcTemplate.query(sql, new LocationRowMapper(), lid);
+            List<Location> locations = replica().query(sql, new LocationRowMapper(), lid);
+            if (locations.isEmpty() && readReplica.isConfigured()) {
+                locations = jdbcTemplate.query(sql, new LocationRowMapper(), lid);
+            }
             return locations.isEmpty() ? Optional.empty() : Optional.of(locations.get(0));
-        });
+        }, executors.getRead());
     }
 
     @Override
@@ -113,10 +280,24 @@ public class LocationRepositoryImpl implements LocationRepository {
         return CompletableFuture.supplyAsync(() -> {
             String sql = "DELETE FROM location WHERE lid = ?";
             return jdbcTemplate.update(sql, lid) > 0;
-        });
+        }, executors.getWrite());
+    }
+
+    private JdbcTemplate replica() {
+
+        return readReplica.getJdbcTemplate();
+    }
+
+    private static void setInsertParameters(PreparedStatement ps, Location l) throws SQLException {
+
+        ps.setLong(1, l.getUid());
+        ps.setString(2, l.getName());
+        ps.setString(3, l.getAddress());
+        ps.setObject(4, l.getLatitude(), Types.DOUBLE);
+        ps.setObject(5, l.getLongitude(), Types.DOUBLE);
     }
 
-    private static class LocationRowMapper implements RowMapper<Location> {
+    static class LocationRowMapper implements RowMapper<Location> {
 
         @Override
         public Location mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -126,11 +307,13 @@ public class LocationRepositoryImpl implements LocationRepository {
             location.setUid(rs.getLong("uid"));
             location.setName(rs.getString("name"));
             location.setAddress(rs.getString("address"));
+            location.setLatitude(rs.getObject("latitude", Double.class));
+            location.setLongitude(rs.getObject("longitude", Double.class));
             return location;
         }
     }
 
-    private static class SharedLocationRowMapper implements RowMapper<SharedLocation> {
+    static class SharedLocationRowMapper implements RowMapper<SharedLocation> {
 
         @Override
         public SharedLocation mapRow(ResultSet rs, int rowNum) throws SQLException {
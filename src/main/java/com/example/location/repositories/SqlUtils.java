@@ -0,0 +1,20 @@
+package com.example.location.repositories;
+
+import java.util.Collections;
+
+final class SqlUtils {
+
+    /**
+     * MySQL caps the number of placeholders per statement, so very long IN lists go out in chunks of this size.
+     */
+    static final int MAX_IN_PARAMS = 1000;
+
+    private SqlUtils() {
+
+    }
+
+    static String placeholders(int count) {
+
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
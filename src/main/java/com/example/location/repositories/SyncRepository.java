@@ -0,0 +1,28 @@
+package com.example.location.repositories;
+
+import com.example.location.dto.SyncChanges;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The location change log, filled by triggers on the location, access and users tables.
+ */
+public interface SyncRepository {
+
+    /**
+     * Version of the newest change older than {@code settle}, 0 if there is none.
+     */
+    CompletableFuture<Long> findSettledVersion(Duration settle);
+
+    /**
+     * Locations of the user changed after {@code afterVersion}, and the version a sync may move on to: the newest of
+     * them older than {@code settle}, or {@code afterVersion} if none is.
+     */
+    CompletableFuture<SyncChanges> findChanges(Long uid, long afterVersion, Duration settle);
+
+    /**
+     * Deletes up to {@code limit} rows older than {@code age}, returns how many were deleted.
+     */
+    CompletableFuture<Integer> deleteOlderThan(Duration age, int limit);
+}
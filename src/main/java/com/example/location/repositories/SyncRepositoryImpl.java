@@ -0,0 +1,94 @@
+package com.example.location.repositories;
+
+import com.example.location.configuration.JdbcExecutors;
+import com.example.location.configuration.ReadReplica;
+import com.example.location.dto.SyncChanges;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+@Repository
+@AllArgsConstructor
+public class SyncRepositoryImpl implements SyncRepository {
+
+    /**
+     * Walks the log backwards on its primary key and stops at the first settled change of any user.
+     */
+    static final String SETTLED_VERSION_SQL = "SELECT version FROM location_change\n" +
+        "WHERE changed_at < NOW(3) - INTERVAL ? MICROSECOND\n" +
+        "ORDER BY version DESC LIMIT 1";
+
+    /**
+     * Changes logged for the user, and changes of the locations the user owns or is shared. Each branch takes
+     * (settle, uid, version): a range scan of (uid, version), then one of (lid, version) for every location found on
+     * location(uid, lid) and access(uid, lid). A location the user lost is only found by the row logged for the user.
+     */
+    static final String CHANGES_SQL =
+        "SELECT version, lid, changed_at < NOW(3) - INTERVAL ? MICROSECOND AS settled FROM location_change\n" +
+        "WHERE uid = ? AND version > ?\n" +
+        "UNION\n" +
+        "SELECT c.version, c.lid, c.changed_at < NOW(3) - INTERVAL ? MICROSECOND FROM location l\n" +
+        "    INNER JOIN location_change c ON c.lid = l.lid\n" +
+        "WHERE l.uid = ? AND c.version > ?\n" +
+        "UNION\n" +
+        "SELECT c.version, c.lid, c.changed_at < NOW(3) - INTERVAL ? MICROSECOND FROM access a\n" +
+        "    INNER JOIN location_change c ON c.lid = a.lid\n" +
+        "WHERE a.uid = ? AND c.version > ?\n" +
+        "ORDER BY version";
+
+    static final String DELETE_OLDER_THAN_SQL =
+        "DELETE FROM location_change WHERE changed_at < NOW(3) - INTERVAL ? MICROSECOND LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadReplica readReplica;
+    private final JdbcExecutors executors;
+
+    @Override
+    public CompletableFuture<Long> findSettledVersion(Duration settle) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            List<Long> versions = replica().queryForList(SETTLED_VERSION_SQL, Long.class, micros(settle));
+            return versions.isEmpty() ? 0L : versions.get(0);
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<SyncChanges> findChanges(Long uid, long afterVersion, Duration settle) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            Set<Long> lids = new LinkedHashSet<>();
+            long[] version = {afterVersion};
+            replica().query(CHANGES_SQL, (RowCallbackHandler) rs -> {
+                lids.add(rs.getLong("lid"));
+                if (rs.getBoolean("settled")) {
+                    version[0] = rs.getLong("version");
+                }
+            }, micros(settle), uid, afterVersion, micros(settle), uid, afterVersion, micros(settle), uid, afterVersion);
+            return new SyncChanges(lids, version[0]);
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteOlderThan(Duration age, int limit) {
+
+        return CompletableFuture.supplyAsync(() -> jdbcTemplate.update(DELETE_OLDER_THAN_SQL, micros(age), limit),
+            executors.getWrite());
+    }
+
+    private JdbcTemplate replica() {
+
+        return readReplica.getJdbcTemplate();
+    }
+
+    private static long micros(Duration duration) {
+
+        return duration.toNanos() / 1000;
+    }
+}
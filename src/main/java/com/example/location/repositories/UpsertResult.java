@@ -0,0 +1,22 @@
+package com.example.location.repositories;
+
+/**
+ * Outcome of an {@code INSERT ... ON DUPLICATE KEY UPDATE}, read from its affected-rows count. That needs
+ * {@code useAffectedRows=true} on the JDBC URL: otherwise Connector/J reports found rows and an unchanged row
+ * looks like an insert.
+ */
+public enum UpsertResult {
+    CREATED, UPDATED, UNCHANGED;
+
+    static UpsertResult fromAffectedRows(int rows) {
+
+        switch (rows) {
+            case 0:
+                return UNCHANGED;
+            case 1:
+                return CREATED;
+            default:
+                return UPDATED;
+        }
+    }
+}
@@ -2,18 +2,29 @@ package com.example.location.repositories;
 
 import com.example.location.entities.User;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 public interface UserRepository {
 
-    CompletableFuture<Optional<User>> findByEmailAndPassword(String email, String password);
+    /**
+     * The user with the stored password, for a login. Runs on the auth executor.
+     */
+    CompletableFuture<Optional<User>> findByEmailForLogin(String email);
 
     CompletableFuture<Optional<User>> findByEmail(String email);
 
+    CompletableFuture<List<User>> findAllByEmails(List<String> emails);
+
     CompletableFuture<Optional<User>> findById(Long uid);
 
     CompletableFuture<User> save(User l);
 
     CompletableFuture<Boolean> deleteById(Long uid);
+
+    /**
+     * Replaces the stored password if it still is {@code expected}, so a concurrent change is never overwritten.
+     */
+    CompletableFuture<Boolean> updatePassword(Long uid, String expected, String password);
 }
@@ -1,5 +1,6 @@
 package com.example.location.repositories;
 
+import com.example.location.configuration.JdbcExecutors;
 import com.example.location.entities.User;
 import com.example.location.util.DbException;
 import lombok.AllArgsConstructor;
@@ -13,6 +14,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -21,8 +23,7 @@ import java.util.concurrent.CompletableFuture;
 @AllArgsConstructor
 public class UserRepositoryImpl implements UserRepository {
 
-    private final JdbcTemplate jdbcTemplate;
-    private final RowMapper<User> userRowMapper = (rs, rowNum) -> {
+    static final RowMapper<User> USER_ROW_MAPPER = (rs, rowNum) -> {
         User user = new User();
         user.setUid(rs.getLong("uid"));
         user.setFirstName(rs.getString("firstname"));
@@ -32,14 +33,17 @@ public class UserRepositoryImpl implements UserRepository {
         return user;
     };
 
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcExecutors executors;
+
     @Override
-    public CompletableFuture<Optional<User>> findByEmailAndPassword(String email, String password) {
+    public CompletableFuture<Optional<User>> findByEmailForLogin(String email) {
 
         return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT * FROM users WHERE email = ? AND password = ?";
-            List<User> users = jdbcTemplate.query(sql, userRowMapper, email, password);
+            String sql = "SELECT * FROM users WHERE email = ?";
+            List<User> users = jdbcTemplate.query(sql, USER_ROW_MAPPER, email);
             return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
-        });
+        }, executors.getAuth());
     }
 
     @Override
@@ -47,9 +51,23 @@ public class UserRepositoryImpl implements UserRepository {
 
         return CompletableFuture.supplyAsync(() -> {
             String sql = "SELECT * FROM users WHERE email = ?";
-            List<User> users = jdbcTemplate.query(sql, userRowMapper, email);
+            List<User> users = jdbcTemplate.query(sql, USER_ROW_MAPPER, email);
             return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
-        });
+        }, executors.getRead());
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findAllByEmails(List<String> emails) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            List<User> users = new ArrayList<>();
+            for (int from = 0; from < emails.size(); from += SqlUtils.MAX_IN_PARAMS) {
+                List<String> chunk = emails.subList(from, Math.min(from + SqlUtils.MAX_IN_PARAMS, emails.size()));
+                String sql = "SELECT * FROM users WHERE email IN (" + SqlUtils.placeholders(chunk.size()) + ")";
+                users.addAll(jdbcTemplate.query(sql, USER_ROW_MAPPER, chunk.toArray()));
+            }
+            return users;
+        }, executors.getRead());
     }
 
     @Override
@@ -57,9 +75,9 @@ public class UserRepositoryImpl implements UserRepository {
 
         return CompletableFuture.supplyAsync(() -> {
             String sql = "SELECT * FROM users WHERE uid = ?";
-            List<User> users = jdbcTemplate.query(sql, userRowMapper, uid);
+            List<User> users = jdbcTemplate.query(sql, USER_ROW_MAPPER, uid);
             return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
-        });
+        }, executors.getRead());
     }
 
     @Override
@@ -93,7 +111,7 @@ public class UserRepositoryImpl implements UserRepository {
             });
 
             return user;
-        });
+        }, executors.getWrite());
     }
 
     @Override
@@ -102,7 +120,16 @@ public class UserRepositoryImpl implements UserRepository {
         return CompletableFuture.supplyAsync(() -> {
             String sql = "DELETE FROM users WHERE uid = ?";
             return jdbcTemplate.update(sql, uid) != 0;
-        });
+        }, executors.getWrite());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updatePassword(Long uid, String expected, String password) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            String sql = "UPDATE users SET password = ? WHERE uid = ? AND password = ?";
+            return jdbcTemplate.update(sql, password, uid, expected) != 0;
+        }, executors.getWrite());
     }
 }
 
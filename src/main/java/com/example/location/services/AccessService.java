@@ -1,14 +1,24 @@
 package com.example.location.services;
 
 import com.example.location.dto.AccessDTO;
+import com.example.location.dto.SavedAccess;
+import com.example.location.dto.ShareDTO;
+import com.example.location.dto.ShareResult;
 import com.example.location.dto.UserAccessDto;
-import com.example.location.entities.Access;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface AccessService {
 
-    CompletableFuture<Access> saveAccess(AccessDTO access);
+    /**
+     * Creates or changes the grant. Completes with the grant, populated even when it was already there as asked.
+     */
+    CompletableFuture<SavedAccess> saveAccess(AccessDTO access);
+
+    /**
+     * Shares one location with many users. Completes with one result per distinct email, in request order.
+     */
+    CompletableFuture<List<ShareResult>> saveAccesses(Long lid, List<ShareDTO> shares);
 
     CompletableFuture<List<UserAccessDto>> getUsersOnLocation(Long lid);
 
@@ -1,9 +1,16 @@
 package com.example.location.services;
 
+import com.example.location.component.AccessDecisionCache;
+import com.example.location.component.ETagCache;
+import com.example.location.component.HistoryEvent;
 import com.example.location.component.HistoryEventPublisher;
 import com.example.location.dto.AccessDTO;
+import com.example.location.dto.SavedAccess;
+import com.example.location.dto.ShareDTO;
+import com.example.location.dto.ShareResult;
 import com.example.location.dto.UserAccessDto;
 import com.example.location.entities.Access;
+import com.example.location.entities.User;
 import com.example.location.repositories.AccessRepository;
 import com.example.location.repositories.UserRepository;
 import com.example.location.util.BadRequestException;
@@ -14,8 +21,17 @@ import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
@@ -24,36 +40,134 @@ public class AccessServiceImpl implements AccessService {
 
     static final String ACCESS_ADMIN = "admin";
     static final String ACCESS_READ = "read-only";
+    static final int MAX_BULK_SHARES = 1000;
     private final AccessRepository accessRepository;
     private final UserRepository userRepository;
     private final HistoryEventPublisher historyEventPublisher;
+    private final AccessDecisionCache accessDecisionCache;
+    private final ETagCache etagCache;
 
-    public CompletableFuture<Access> saveAccess(AccessDTO accessDTO) {
+    public CompletableFuture<SavedAccess> saveAccess(AccessDTO accessDTO) {
 
         return userRepository.findByEmail(accessDTO.getEmail()).thenCompose(user -> {
             if (!user.isPresent()) {
                 log.warn("User not found: {}", Util.hideEmail(accessDTO.getEmail()));
                 throw new NotFoundException("User");
             }
-            return accessRepository.findByUidAndLid(user.get().getUid(), accessDTO.getLid()).thenCompose(access -> {
-                Access saving;
-                if (access.isPresent()) {
-                    saving = access.get();
-                    saving.setType(accessDTO.getShareMode());
-                    historyEventPublisher.publishHistoryUpdatedEvent(user.get().getUid(), Util.ObjectType.ACCESS,
-                        access.get(), saving);
-                } else {
-                    saving = new Access(null, user.get().getUid(), accessDTO.getLid(), accessDTO.getShareMode());
-                    historyEventPublisher.publishHistoryCreatedEvent(user.get().getUid(), Util.ObjectType.ACCESS,
-                        saving);
+            Long grantee = user.get().getUid();
+            Access saving = new Access(null, grantee, accessDTO.getLid(), accessDTO.getShareMode());
+
+            return accessRepository.upsert(saving).thenApply(result -> {
+                switch (result) {
+                    case CREATED:
+                        historyEventPublisher.publishHistoryCreatedEvent(grantee, Util.ObjectType.ACCESS, saving);
+                        break;
+                    case UPDATED:
+                        // a changed grant can only have had the other share mode
+                        Access before = changeAccess(new Access(saving.getAid(), grantee, saving.getLid(),
+                            saving.getType()));
+                        historyEventPublisher.publishHistoryUpdatedEvent(grantee, Util.ObjectType.ACCESS, before,
+                            saving);
+                        break;
+                    default:
+                        log.info("Access of user {} on location {} unchanged", Util.hideEmail(accessDTO.getEmail()),
+                            accessDTO.getLid());
+                        return new SavedAccess(saving, ShareResult.Status.UNCHANGED);
                 }
+                accessDecisionCache.invalidate(grantee, saving.getLid());
+                etagCache.invalidateAccess(grantee, saving.getLid());
+                log.info("Access {} for user {} on location {}", result.name().toLowerCase(Locale.ROOT),
+                    Util.hideEmail(accessDTO.getEmail()), accessDTO.getLid());
+                return new SavedAccess(saving, ShareResult.Status.valueOf(result.name()));
+            });
+        });
+    }
 
-                return accessRepository.save(saving).thenApply(saved -> {
-                    log.info("New access created for user {} on location {}", Util.hideEmail(accessDTO.getEmail()),
-                        accessDTO.getLid());
-                    return saved;
-                });
+    public CompletableFuture<List<ShareResult>> saveAccesses(Long lid, List<ShareDTO> shares) {
+
+        if (shares == null || shares.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        if (shares.size() > MAX_BULK_SHARES) {
+            throw new BadRequestException("At most " + MAX_BULK_SHARES + " shares per request");
+        }
+
+        // one result per email, a later entry for the same email replaces an earlier one
+        Map<String, ShareResult> results = new LinkedHashMap<>();
+        Map<String, ShareDTO> valid = new LinkedHashMap<>();
+        for (ShareDTO share : shares) {
+            String key = emailKey(share.getEmail());
+            valid.remove(key);
+            if (key.isEmpty()) {
+                results.put(key, ShareResult.failed(share.getEmail(), "Email is missing"));
+            } else if (!isValidShareMode(share.getShareMode())) {
+                results.put(key, ShareResult.failed(share.getEmail(), "Invalid share mode"));
+            } else {
+                results.put(key, null);
+                valid.put(key, share);
+            }
+        }
+        if (valid.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>(results.values()));
+        }
+
+        return userRepository.findAllByEmails(new ArrayList<>(valid.keySet())).thenCompose(users -> {
+            Map<Long, ShareDTO> shareByUid = new LinkedHashMap<>();
+            Set<String> found = new HashSet<>();
+            for (User user : users) {
+                String key = emailKey(user.getEmail());
+                shareByUid.put(user.getUid(), valid.get(key));
+                found.add(key);
+            }
+            valid.forEach((key, share) -> {
+                if (!found.contains(key)) {
+                    results.put(key, ShareResult.failed(share.getEmail(), "User not found"));
+                }
             });
+            if (shareByUid.isEmpty()) {
+                return CompletableFuture.completedFuture(new ArrayList<>(results.values()));
+            }
+
+            return accessRepository.findAllByLidAndUids(lid, new ArrayList<>(shareByUid.keySet()))
+                .thenCompose(existing -> {
+                    Map<Long, Access> existingByUid = existing.stream()
+                        .collect(Collectors.toMap(Access::getUid, Function.identity(), (a, b) -> a));
+                    List<Access> upserts = new ArrayList<>();
+                    List<HistoryEvent> events = new ArrayList<>();
+                    shareByUid.forEach((grantee, share) -> {
+                        Access before = existingByUid.get(grantee);
+                        Access after = new Access(before == null ? null : before.getAid(), grantee, lid,
+                            share.getShareMode());
+                        ShareResult.Status status;
+                        if (before == null) {
+                            status = ShareResult.Status.CREATED;
+                            events.add(historyEventPublisher.createdEvent(grantee, Util.ObjectType.ACCESS, after));
+                        } else if (!share.getShareMode().equals(before.getType())) {
+                            status = ShareResult.Status.UPDATED;
+                            events.add(historyEventPublisher.updatedEvent(grantee, Util.ObjectType.ACCESS, before,
+                                after));
+                        } else {
+                            status = ShareResult.Status.UNCHANGED;
+                        }
+                        if (status != ShareResult.Status.UNCHANGED) {
+                            upserts.add(after);
+                        }
+                        results.put(emailKey(share.getEmail()), new ShareResult(share.getEmail(), status, null));
+                    });
+                    if (upserts.isEmpty()) {
+                        return CompletableFuture.completedFuture(new ArrayList<>(results.values()));
+                    }
+
+                    return accessRepository.upsertAll(upserts).thenApply(ignored -> {
+                        upserts.forEach(access -> {
+                            accessDecisionCache.invalidate(access.getUid(), lid);
+                            etagCache.invalidateAccess(access.getUid(), lid);
+                        });
+                        historyEventPublisher.publishHistoryEvents(events);
+                        log.info("Location {} shared with {} users", lid, upserts.size());
+                        return new ArrayList<>(results.values());
+                    });
+                });
         });
     }
 
@@ -67,19 +181,23 @@ public class AccessServiceImpl implements AccessService {
         return userRepository.findByEmail(email).thenCompose(user -> {
             if (!user.isPresent()) {
                 log.warn("User not found: {}", Util.hideEmail(email));
-                return CompletableFuture.completedFuture(0);
-            }
-            return accessRepository.deleteByUidAndLid(user.get().getUid(), lid);
-        }).thenApply(rows -> {
-            boolean deleted = rows != 0;
-            if (deleted) {
-                log.info("Access deleted for user {} on location {}", Util.hideEmail(email), lid);
-                historyEventPublisher.publishHistoryDeletedEvent(uid, Util.ObjectType.ACCESS, new Access(null, uid,
-                    lid, null));
-            } else {
-                log.info("No access found for user {} on location {}", Util.hideEmail(email), lid);
+                return CompletableFuture.completedFuture(false);
             }
-            return deleted;
+            Long grantee = user.get().getUid();
+            return accessRepository.deleteByUidAndLid(grantee, lid).thenApply(rows -> {
+                accessDecisionCache.invalidate(grantee, lid);
+                etagCache.invalidateAccess(grantee, lid);
+                boolean deleted = rows != 0;
+                if (deleted) {
+                    log.info("Access deleted for user {} on location {}", Util.hideEmail(email), lid);
+                    // the grantee, like the created and updated events, so the change feed can tell them
+                    historyEventPublisher.publishHistoryDeletedEvent(uid, Util.ObjectType.ACCESS, new Access(null,
+                        grantee, lid, null));
+                } else {
+                    log.info("No access found for user {} on location {}", Util.hideEmail(email), lid);
+                }
+                return deleted;
+            });
         });
     }
 
@@ -100,6 +218,8 @@ public class AccessServiceImpl implements AccessService {
                 Access changedAccess = changeAccess(access.get());
                 return accessRepository.update(changedAccess).thenApply(
                     accessUpdated -> {
+                        accessDecisionCache.invalidate(changedAccess.getUid(), lid);
+                        etagCache.invalidateAccess(changedAccess.getUid(), lid);
                         if (accessUpdated) {
                             log.info("Access mode changed for user {} on location {}", Util.hideEmail(email), lid);
                             historyEventPublisher.publishHistoryUpdatedEvent(uid, Util.ObjectType.ACCESS,
@@ -118,12 +238,25 @@ public class AccessServiceImpl implements AccessService {
     @Override
     public void validateShareMode(String shareMode) {
 
-        if (shareMode.equals(ACCESS_ADMIN) || shareMode.equals(ACCESS_READ)) {
+        if (isValidShareMode(shareMode)) {
             return;
         }
         throw new BadRequestException("Invalid share mode");
     }
 
+    private static boolean isValidShareMode(String shareMode) {
+
+        return ACCESS_ADMIN.equals(shareMode) || ACCESS_READ.equals(shareMode);
+    }
+
+    /**
+     * Emails are compared the way the users table compares them, ignoring case.
+     */
+    private static String emailKey(String email) {
+
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
     public Access changeAccess(Access a) {
 
         if (a.getType().equals(ACCESS_ADMIN)) {
@@ -1,28 +1,94 @@
 package com.example.location.services;
 
+import com.example.location.component.HistoryEvent;
+import com.example.location.component.HistoryEventBatch;
+import com.example.location.component.HistoryWriter;
+import com.example.location.dto.CursorPage;
+import com.example.location.dto.HistoryQuery;
 import com.example.location.entities.History;
 import com.example.location.repositories.HistoryRepository;
+import com.example.location.util.Cursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 @AllArgsConstructor
 @Log4j2(topic = "HISTORY")
 public class HistoryService {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+
+    public final HistoryWriter historyWriter;
     public final HistoryRepository historyRepository;
+    public final MeterRegistry meterRegistry;
 
     @EventListener
-    public void handleObjectEvent(History history) {
+    public void handleObjectEvent(HistoryEvent history) {
+
+        boolean queued = historyWriter.enqueue(history);
+        count(history, queued);
+        if (!queued) {
+            log.debug("History event dropped {}", history);
+        }
+    }
+
+    @EventListener
+    public void handleObjectEvents(HistoryEventBatch batch) {
+
+        int dropped = 0;
+        for (HistoryEvent history : batch.getEvents()) {
+            boolean queued = historyWriter.enqueue(history);
+            count(history, queued);
+            if (!queued) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            log.debug("{} of {} batched history events dropped", dropped, batch.getEvents().size());
+        }
+    }
+
+    /**
+     * Reads one page of the user's audit trail, newest first. {@code from} and {@code to} bound the date range
+     * (inclusive and exclusive), {@code cursor} is the {@code next} value of the previous page.
+     */
+    public CompletableFuture<CursorPage<History>> findHistory(Long actionBy, String objectType, Timestamp from,
+                                                              Timestamp to, String cursor, Integer limit) {
+
+        int pageSize = Cursor.pageSize(limit, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        HistoryQuery query = new HistoryQuery(actionBy, objectType, from, to, null, null, pageSize + 1);
+        if (cursor != null) {
+            long[] key = Cursor.decode(cursor, 2);
+            query.setAfterDate(new Timestamp(key[0]));
+            query.setAfterHid(key[1]);
+        }
 
-        historyRepository.save(history).thenAccept(x -> {
-            if (x.getHid() == null) {
-                log.error("Failed to save history event {}", history);
-            } else {
-                log.info("History event saved {}", history);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return historyRepository.findPage(query).whenComplete((rows, ex) -> sample.stop(
+            meterRegistry.timer("history.query", "outcome", ex == null ? "success" : "error"))
+        ).thenApply(rows -> {
+            if (rows.size() <= pageSize) {
+                return new CursorPage<>(rows, null);
             }
+            List<History> page = rows.subList(0, pageSize);
+            History last = page.get(pageSize - 1);
+            return new CursorPage<>(new ArrayList<>(page), Cursor.encode(last.getDate().getTime(), last.getHid()));
         });
     }
+
+    private void count(HistoryEvent history, boolean queued) {
+
+        meterRegistry.counter("history.events", "type", history.getObjectType().name(),
+            "action", history.getAction().name(), "outcome", queued ? "queued" : "dropped").increment();
+    }
 }
@@ -0,0 +1,316 @@
+package com.example.location.services;
+
+import com.example.location.component.AccessDecisionCache;
+import com.example.location.component.ChangeFeed;
+import com.example.location.component.ETagCache;
+import com.example.location.component.HistoryEventPublisher;
+import com.example.location.component.HistoryWriter;
+import com.example.location.component.LocationIndex;
+import com.example.location.configuration.ImportProperties;
+import com.example.location.dto.ImportReport;
+import com.example.location.dto.LocationChange;
+import com.example.location.dto.LocationImportRow;
+import com.example.location.entities.Location;
+import com.example.location.repositories.LocationRepository;
+import com.example.location.repositories.UserRepository;
+import com.example.location.util.BadRequestException;
+import com.example.location.util.BoundedExecutor;
+import com.example.location.util.NotFoundException;
+import com.example.location.util.Util;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Imports locations from a CSV (with a name,address header and optional latitude,longitude columns) or NDJSON
+ * upload. The upload is parsed as a stream and written in batches with one batch in flight, so memory stays
+ * bounded whatever the size of the file.
+ */
+@Service
+@Log4j2
+public class LocationImportService implements DisposableBean {
+
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv");
+    static final int MAX_FIELD_LENGTH = 255;
+
+    private final LocationRepository locationRepository;
+    private final UserRepository userRepository;
+    private final HistoryEventPublisher historyEventPublisher;
+    private final HistoryWriter historyWriter;
+    private final AccessDecisionCache accessDecisionCache;
+    private final ETagCache etagCache;
+    private final LocationIndex locationIndex;
+    private final ChangeFeed changeFeed;
+    private final ImportProperties properties;
+    private final ObjectReader jsonReader;
+    private final ObjectReader csvReader;
+    private final BoundedExecutor executor;
+
+    public LocationImportService(LocationRepository locationRepository, UserRepository userRepository,
+                                 HistoryEventPublisher historyEventPublisher, HistoryWriter historyWriter,
+                                 AccessDecisionCache accessDecisionCache, ETagCache etagCache,
+                                 LocationIndex locationIndex, ChangeFeed changeFeed, ImportProperties properties,
+                                 ObjectMapper objectMapper) {
+
+        this.locationRepository = locationRepository;
+        this.userRepository = userRepository;
+        this.historyEventPublisher = historyEventPublisher;
+        this.historyWriter = historyWriter;
+        this.accessDecisionCache = accessDecisionCache;
+        this.etagCache = etagCache;
+        this.locationIndex = locationIndex;
+        this.changeFeed = changeFeed;
+        this.properties = properties;
+        this.jsonReader = objectMapper.readerFor(LocationImportRow.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.csvReader = new CsvMapper()
+            .enable(CsvParser.Feature.TRIM_SPACES)
+            .enable(CsvParser.Feature.SKIP_EMPTY_LINES)
+            .readerFor(LocationImportRow.class)
+            .with(CsvSchema.emptySchema().withHeader())
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.executor = new BoundedExecutor("location-import", properties.getThreads(),
+            properties.getQueueCapacity());
+    }
+
+    /**
+     * Cancelling the returned future, as the controller does when the request times out, stops the import before its
+     * next row, so that it no longer reads the body of a request that has been completed.
+     */
+    public CompletableFuture<ImportReport> importLocations(Long uid, InputStream body, MediaType contentType) {
+
+        ObjectReader reader = readerFor(contentType);
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CompletableFuture<ImportReport> report = userRepository.findById(uid).thenCompose(user -> {
+            if (!user.isPresent()) {
+                log.warn("User not found for ID: {}", uid);
+                throw new NotFoundException("User");
+            }
+            return submit(() -> {
+                try (MappingIterator<LocationImportRow> rows = reader.readValues(body)) {
+                    return importRows(uid, rows, abandoned::get);
+                } catch (IOException ex) {
+                    throw new BadRequestException("Could not read upload: " + ex.getMessage());
+                }
+            });
+        });
+        report.whenComplete((done, ex) -> abandoned.set(true));
+        return report;
+    }
+
+    /**
+     * Runs the import on the import executor. Submitted by hand rather than with thenApplyAsync: a rejection thrown
+     * there, on the thread completing the user lookup, never reaches the returned future, which would then hang
+     * instead of failing with 503.
+     */
+    private CompletableFuture<ImportReport> submit(Supplier<ImportReport> task) {
+
+        CompletableFuture<ImportReport> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(task.get());
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    ImportReport importRows(Long uid, MappingIterator<LocationImportRow> rows, BooleanSupplier abandoned) {
+
+        ImportReport report = new ImportReport();
+        List<Location> batch = new ArrayList<>(properties.getBatchSize());
+        PendingBatch inFlight = null;
+        long row = 0;
+
+        try {
+            while (rows.hasNextValue()) {
+                if (abandoned.getAsBoolean()) {
+                    log.warn("Import for UID {} abandoned by its request after row {}", uid, row);
+                    report.setComplete(false);
+                    break;
+                }
+                row++;
+                LocationImportRow value;
+                try {
+                    value = rows.nextValue();
+                } catch (JsonMappingException ex) {
+                    // a value of the wrong shape, the iterator skips to the next row
+                    reject(report, row, "Invalid row: " + ex.getOriginalMessage());
+                    continue;
+                }
+
+                String error = validate(value);
+                if (error != null) {
+                    reject(report, row, error);
+                    continue;
+                }
+                batch.add(new Location(null, uid, value.getName().trim(), value.getAddress().trim(),
+                    value.getLatitude(), value.getLongitude()));
+
+                if (batch.size() >= properties.getBatchSize()) {
+                    settle(uid, inFlight, report);
+                    inFlight = save(batch, row);
+                    batch = new ArrayList<>(properties.getBatchSize());
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            report.setComplete(false);
+            reject(report, row, "Malformed input, import stopped: " + ex.getOriginalMessage());
+        } catch (IOException ex) {
+            report.setComplete(false);
+            reject(report, row, "Upload interrupted, import stopped: " + ex.getMessage());
+        }
+
+        settle(uid, inFlight, report);
+        if (!batch.isEmpty()) {
+            settle(uid, save(batch, row), report);
+        }
+
+        log.info("Imported {} locations for UID {}, {} rows failed", report.getImported(), uid, report.getFailed());
+        return report;
+    }
+
+    private PendingBatch save(List<Location> batch, long lastRow) {
+
+        CompletableFuture<List<Location>> saved;
+        try {
+            saved = locationRepository.saveAll(batch);
+        } catch (RuntimeException ex) {
+            // a saturated write executor fails this batch only, the import goes on
+            saved = new CompletableFuture<>();
+            saved.completeExceptionally(ex);
+        }
+        return new PendingBatch(batch, lastRow, saved);
+    }
+
+    /**
+     * Waits for the batch in flight and accounts for it. Runs on the import thread, so it may block on the
+     * history queue without holding up a JDBC thread.
+     */
+    private void settle(Long uid, PendingBatch pending, ImportReport report) {
+
+        if (pending == null) {
+            return;
+        }
+
+        List<Location> saved;
+        try {
+            saved = pending.saved.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+            log.error("Import batch ending at row {} failed: {}", pending.lastRow, cause.getMessage());
+            report.setFailed(report.getFailed() + pending.locations.size());
+            addError(report, pending.lastRow, "Batch of " + pending.locations.size() + " rows ending here not saved: "
+                + cause.getMessage());
+            return;
+        }
+
+        report.setImported(report.getImported() + saved.size());
+        List<LocationChange> changes = new ArrayList<>(saved.size());
+        for (Location location : saved) {
+            // drops a NONE decision cached by a lookup of this lid before it existed
+            accessDecisionCache.invalidate(uid, location.getLid());
+            locationIndex.put(location);
+            changes.add(ChangeFeed.change(Util.ObjectType.LOCATION, Util.ActionType.CREATED, location.getLid()));
+            if (!historyWriter.enqueue(historyEventPublisher.createdEvent(uid, Util.ObjectType.LOCATION, location),
+                properties.getHistoryTimeout())) {
+                log.warn("History of imported location {} dropped", location.getLid());
+            }
+        }
+        etagCache.invalidateUser(uid);
+        // history goes straight to the writer, so the feed is told here
+        changeFeed.publish(Collections.singletonList(uid), changes);
+    }
+
+    private void reject(ImportReport report, long row, String message) {
+
+        report.setFailed(report.getFailed() + 1);
+        addError(report, row, message);
+    }
+
+    private void addError(ImportReport report, long row, String message) {
+
+        if (report.getErrors().size() < properties.getMaxReportedErrors()) {
+            report.getErrors().add(new ImportReport.RowError(row, message));
+        }
+    }
+
+    static String validate(LocationImportRow row) {
+
+        if (row == null) {
+            return "Empty row";
+        }
+        if (isBlank(row.getName()) || isBlank(row.getAddress())) {
+            return "Name and address are required";
+        }
+        if (row.getName().trim().length() > MAX_FIELD_LENGTH || row.getAddress().trim().length() > MAX_FIELD_LENGTH) {
+            return "Name and address must be at most " + MAX_FIELD_LENGTH + " characters";
+        }
+        return LocationServiceImpl.coordinatesError(row.getLatitude(), row.getLongitude());
+    }
+
+    private static boolean isBlank(String value) {
+
+        return value == null || value.trim().isEmpty();
+    }
+
+    private ObjectReader readerFor(MediaType contentType) {
+
+        if (contentType != null && TEXT_CSV.includes(contentType)) {
+            return csvReader;
+        }
+        if (contentType != null && (MediaType.APPLICATION_NDJSON.includes(contentType)
+            || MediaType.APPLICATION_JSON.includes(contentType))) {
+            return jsonReader;
+        }
+        throw new BadRequestException("Unsupported import format, use text/csv or application/x-ndjson");
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        executor.shutdown(properties.getHistoryTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static final class PendingBatch {
+
+        private final List<Location> locations;
+        private final long lastRow;
+        private final CompletableFuture<List<Location>> saved;
+
+        PendingBatch(List<Location> locations, long lastRow, CompletableFuture<List<Location>> saved) {
+
+            this.locations = locations;
+            this.lastRow = lastRow;
+            this.saved = saved;
+        }
+    }
+}
@@ -1,22 +1,40 @@
 package com.example.location.services;
 
+import com.example.location.dto.CursorPage;
 import com.example.location.dto.LocationDTO;
+import com.example.location.dto.MapCluster;
+import com.example.location.dto.NearbyLocation;
 import com.example.location.dto.SharedLocation;
 import com.example.location.entities.Location;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface LocationService {
 
-    CompletableFuture<List<LocationDTO>> findUserLocations(Long uid);
+    CompletableFuture<CursorPage<LocationDTO>> findUserLocations(Long uid, String cursor, Integer limit);
 
     CompletableFuture<Location> saveLocation(Location location);
 
     CompletableFuture<Optional<Location>> findById(Long lid);
 
-    CompletableFuture<List<SharedLocation>> findAllLocations(Long uid);
+    CompletableFuture<CursorPage<SharedLocation>> findAllLocations(Long uid, String cursor, Integer limit);
+
+    CompletableFuture<Long> streamAllLocations(Long uid, Consumer<SharedLocation> consumer);
+
+    /**
+     * Owned or shared locations within {@code radius} meters of the point, nearest first.
+     */
+    CompletableFuture<List<NearbyLocation>> findNearby(Long uid, Double latitude, Double longitude, Double radius,
+                                                       Integer limit);
+
+    /**
+     * Owned or shared locations inside the box, grouped into clusters for the zoom level.
+     */
+    CompletableFuture<List<MapCluster>> findClusters(Long uid, Double south, Double west, Double north, Double east,
+                                                     Integer zoom);
 
     CompletableFuture<Boolean> deleteById(Long lid);
 }
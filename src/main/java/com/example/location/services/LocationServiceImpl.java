@@ -1,12 +1,24 @@
 package com.example.location.services;
 
+import com.example.location.component.AccessDecisionCache;
+import com.example.location.component.ChangeFeed;
+import com.example.location.component.ETagCache;
 import com.example.location.component.HistoryEventPublisher;
+import com.example.location.component.LocationIndex;
+import com.example.location.configuration.ClusterProperties;
+import com.example.location.configuration.NearbyProperties;
+import com.example.location.dto.CursorPage;
 import com.example.location.dto.LocationDTO;
+import com.example.location.dto.MapCluster;
+import com.example.location.dto.NearbyLocation;
 import com.example.location.dto.SharedLocation;
+import com.example.location.entities.Access;
 import com.example.location.entities.Location;
 import com.example.location.repositories.AccessRepository;
 import com.example.location.repositories.LocationRepository;
 import com.example.location.repositories.UserRepository;
+import com.example.location.util.BadRequestException;
+import com.example.location.util.Cursor;
 import com.example.location.util.DbException;
 import com.example.location.util.NotFoundException;
 import com.example.location.util.Util;
@@ -14,9 +26,17 @@ import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,26 +44,49 @@ import java.util.stream.Collectors;
 @Log4j2
 public class LocationServiceImpl implements LocationService {
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
     private final LocationRepository locationRepository;
     private final AccessRepository accessRepository;
     private final UserRepository userRepository;
 
     private final HistoryEventPublisher historyEventPublisher;
 
+    private final AccessDecisionCache accessDecisionCache;
+    private final ETagCache etagCache;
+
+    private final LocationIndex locationIndex;
+    private final NearbyProperties nearbyProperties;
+    private final ClusterProperties clusterProperties;
+
+    private final ChangeFeed changeFeed;
+
     @Override
-    public CompletableFuture<List<LocationDTO>> findUserLocations(Long uid) {
+    public CompletableFuture<CursorPage<LocationDTO>> findUserLocations(Long uid, String cursor, Integer limit) {
 
-        return locationRepository.findAllByUid(uid).thenApply(locations -> locations
-            .stream()
-            .map(location -> accessRepository.findAllByLid(location.getLid()).thenApply(list -> new LocationDTO(location, list)))
-            .map(CompletableFuture::join)
-            .collect(Collectors.toList()));
+        int pageSize = Cursor.pageSize(limit, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        long afterLid = afterLid(cursor);
+        return locationRepository.findAllByUid(uid, afterLid, pageSize + 1).thenCompose(rows -> {
+            if (rows.isEmpty()) {
+                return CompletableFuture.completedFuture(new CursorPage<>(Collections.emptyList(), null));
+            }
+            List<Location> locations = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+            String next = rows.size() > pageSize ? Cursor.encode(locations.get(pageSize - 1).getLid()) : null;
+            List<Long> lids = locations.stream().map(Location::getLid).collect(Collectors.toList());
+            return accessRepository.findAllByLids(lids)
+                .thenApply(accesses -> new CursorPage<>(toLocationDTOs(locations, accesses), next));
+        });
     }
 
     @Override
     public CompletableFuture<Location> saveLocation(Location location) {
 
         log.info("Saving location: {}", location);
+        String coordinatesError = coordinatesError(location.getLatitude(), location.getLongitude());
+        if (coordinatesError != null) {
+            throw new BadRequestException(coordinatesError);
+        }
         return userRepository.findById(location.getUid()).thenCompose(user -> {
             if (!user.isPresent()) {
                 log.warn("User not found for ID: {}", location.getUid());
@@ -54,6 +97,11 @@ public class LocationServiceImpl implements LocationService {
                     log.error("Location not saved {}", location);
                     throw new DbException("Could not save location");
                 }
+                // drops a NONE decision cached by a lookup of this lid before it existed
+                accessDecisionCache.invalidate(saved.getUid(), saved.getLid());
+                etagCache.invalidateLocation(saved.getLid());
+                etagCache.invalidateUser(saved.getUid());
+                locationIndex.put(saved);
                 historyEventPublisher.publishHistoryCreatedEvent(user.get().getUid(), Util.ObjectType.LOCATION, saved);
                 return saved;
             });
@@ -74,30 +122,219 @@ public class LocationServiceImpl implements LocationService {
     }
 
     @Override
-    public CompletableFuture<List<SharedLocation>> findAllLocations(Long uid) throws NumberFormatException {
+    public CompletableFuture<CursorPage<SharedLocation>> findAllLocations(Long uid, String cursor, Integer limit) {
 
         log.info("Retrieving all locations for UID: {}", uid);
-        return locationRepository.findAllLocations(uid);
+        int pageSize = Cursor.pageSize(limit, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        return locationRepository.findAllLocations(uid, afterLid(cursor), pageSize + 1).thenApply(rows -> {
+            // a location spans one row per grant, so the page is cut after the pageSize-th distinct lid
+            int distinct = 0;
+            Long previousLid = null;
+            for (int i = 0; i < rows.size(); i++) {
+                Long lid = rows.get(i).getLid();
+                if (i == 0 || !Objects.equals(lid, previousLid)) {
+                    if (++distinct > pageSize) {
+                        return new CursorPage<>(new ArrayList<>(rows.subList(0, i)), Cursor.encode(previousLid));
+                    }
+                    previousLid = lid;
+                }
+            }
+            return new CursorPage<>(rows, null);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> streamAllLocations(Long uid, Consumer<SharedLocation> consumer) {
+
+        log.info("Streaming all locations for UID: {}", uid);
+        return locationRepository.streamAllLocations(uid, consumer);
     }
 
     @Override
     public CompletableFuture<Boolean> deleteById(Long lid) {
 
         log.info("Deleting location with ID: {}", lid);
-        return locationRepository.findById(lid).thenCompose(location -> {
+        // the grants go with the location, so whoever the change feed must tell is read beforehand
+        CompletableFuture<List<Long>> audience = changeFeed.hasSubscribers() ? accessRepository.findAudienceByLid(lid)
+            : CompletableFuture.completedFuture(Collections.emptyList());
+        return locationRepository.findById(lid).thenCombine(audience, (location, uids) -> {
             if (!location.isPresent()) {
                 log.warn("Location not found for ID: {}", lid);
                 throw new NotFoundException("Location");
             }
             return locationRepository.deleteById(lid).thenApply(isDeleted -> {
+                accessDecisionCache.invalidateLocation(lid);
+                etagCache.invalidateLocation(lid);
+                locationIndex.remove(lid);
                 if (!isDeleted) {
                     log.error("Location not deleted for ID: {}", lid);
                     throw new DbException("Could not delete location");
                 }
                 historyEventPublisher.publishHistoryDeletedEvent(location.get().getUid(), Util.ObjectType.LOCATION,
                     location.get());
+                // the owner hears of it through the history event
+                List<Long> grantees = uids.stream()
+                    .filter(uid -> !uid.equals(location.get().getUid()))
+                    .collect(Collectors.toList());
+                changeFeed.publish(grantees, Collections.singletonList(
+                    ChangeFeed.change(Util.ObjectType.LOCATION, Util.ActionType.DELETED, lid)));
                 return isDeleted;
             });
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Searches the in-memory index; the only query is the caller's grants, which decide what they may see.
+     */
+    @Override
+    public CompletableFuture<List<NearbyLocation>> findNearby(Long uid, Double latitude, Double longitude,
+                                                              Double radius, Integer limit) {
+
+        if (latitude == null || longitude == null) {
+            throw new BadRequestException("lat and lon are required");
+        }
+        String coordinatesError = coordinatesError(latitude, longitude);
+        if (coordinatesError != null) {
+            throw new BadRequestException(coordinatesError);
+        }
+        double searchRadius = radius == null ? nearbyProperties.getDefaultRadius() : radius;
+        if (!(searchRadius > 0 && searchRadius <= nearbyProperties.getMaxRadius())) {
+            throw new BadRequestException("radius must be positive and at most " + nearbyProperties.getMaxRadius()
+                + " meters");
+        }
+        int pageSize = Cursor.pageSize(limit, nearbyProperties.getDefaultLimit(), nearbyProperties.getMaxLimit());
+
+        return grantsOf(uid).thenApply(granted -> locationIndex.nearest(latitude, longitude, searchRadius, pageSize,
+                location -> uid.equals(location.getUid()) || granted.containsKey(location.getLid()))
+            .stream()
+            .map(match -> {
+                Location l = match.getLocation();
+                String accessType = uid.equals(l.getUid()) ? "owner" : granted.get(l.getLid());
+                return new NearbyLocation(l.getLid(), l.getName(), l.getAddress(), l.getLatitude(),
+                    l.getLongitude(), accessType, Math.round(match.getDistance()));
+            })
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Aggregates the visible locations in the box on the cell grid of the zoom level: one cluster with its count and
+     * centroid per non-empty cell, or the location itself when it is alone in its cell or the zoom is past
+     * {@code pointZoom}. Cells are aligned on a fixed grid, so clusters stay put while the map pans.
+     */
+    @Override
+    public CompletableFuture<List<MapCluster>> findClusters(Long uid, Double south, Double west, Double north,
+                                                            Double east, Integer zoom) {
+
+        if (south == null || west == null || north == null || east == null || zoom == null) {
+            throw new BadRequestException("south, west, north, east and zoom are required");
+        }
+        String coordinatesError = coordinatesError(south, west);
+        if (coordinatesError == null) {
+            coordinatesError = coordinatesError(north, east);
+        }
+        if (coordinatesError != null) {
+            throw new BadRequestException(coordinatesError);
+        }
+        if (south > north) {
+            throw new BadRequestException("south must not be above north");
+        }
+        if (zoom < 0 || zoom > clusterProperties.getMaxZoom()) {
+            throw new BadRequestException("zoom must be within [0, " + clusterProperties.getMaxZoom() + "]");
+        }
+        double cellDegrees = 360 / (clusterProperties.getCellsPerTile() * Math.pow(2, zoom));
+        double width = west > east ? east + 360 - west : east - west;
+        double cells = (Math.floor((north + 90) / cellDegrees) - Math.floor((south + 90) / cellDegrees) + 1)
+            * (Math.ceil(width / cellDegrees) + 1);
+        if (cells > clusterProperties.getMaxCells()) {
+            throw new BadRequestException("The box is too large for zoom " + zoom);
+        }
+        boolean points = zoom >= clusterProperties.getPointZoom();
+
+        return grantsOf(uid).thenApply(granted -> {
+            Map<Long, ClusterCell> clusters = new TreeMap<>();
+            List<MapCluster> result = new ArrayList<>();
+            locationIndex.forEachVisible(uid, granted.keySet(), south, west, north, east, location -> {
+                if (points) {
+                    result.add(single(uid, location, granted));
+                    return;
+                }
+                long row = (long) Math.floor((location.getLatitude() + 90) / cellDegrees);
+                long column = (long) Math.floor((location.getLongitude() + 180) / cellDegrees);
+                clusters.computeIfAbsent(row << 32 | column, key -> new ClusterCell()).add(location);
+            });
+            for (ClusterCell cell : clusters.values()) {
+                result.add(cell.count == 1 ? single(uid, cell.first, granted)
+                    : new MapCluster(cell.count, cell.latitudeSum / cell.count, cell.longitudeSum / cell.count,
+                    null, null, null, null));
+            }
+            return result;
         });
     }
+
+    private static MapCluster single(Long uid, Location location, Map<Long, String> granted) {
+
+        String accessType = uid.equals(location.getUid()) ? "owner" : granted.get(location.getLid());
+        return new MapCluster(1, location.getLatitude(), location.getLongitude(), location.getLid(),
+            location.getName(), location.getAddress(), accessType);
+    }
+
+    /**
+     * Access type by lid of everything shared with the user.
+     */
+    private CompletableFuture<Map<Long, String>> grantsOf(Long uid) {
+
+        return accessRepository.findAllByUid(uid).thenApply(accesses -> accesses.stream()
+            .collect(Collectors.toMap(Access::getLid, Access::getType, (first, second) -> first, HashMap::new)));
+    }
+
+    private static final class ClusterCell {
+
+        private long count;
+        private double latitudeSum;
+        private double longitudeSum;
+        private Location first;
+
+        void add(Location location) {
+
+            if (count++ == 0) {
+                first = location;
+            }
+            latitudeSum += location.getLatitude();
+            longitudeSum += location.getLongitude();
+        }
+    }
+
+    /**
+     * Why the coordinates are invalid, or null if they are fine. Both or neither must be given.
+     */
+    static String coordinatesError(Double latitude, Double longitude) {
+
+        if (latitude == null && longitude == null) {
+            return null;
+        }
+        if (latitude == null || longitude == null) {
+            return "Latitude and longitude go together";
+        }
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            return "Latitude must be within [-90, 90] and longitude within [-180, 180]";
+        }
+        return null;
+    }
+
+    /**
+     * Attaches to each location its access rows, in the order of {@code locations}.
+     */
+    static List<LocationDTO> toLocationDTOs(List<Location> locations, List<Access> accesses) {
+
+        Map<Long, List<Access>> accessByLid = accesses.stream().collect(Collectors.groupingBy(Access::getLid));
+        return locations.stream()
+            .map(location -> new LocationDTO(location,
+                accessByLid.getOrDefault(location.getLid(), Collections.emptyList())))
+            .collect(Collectors.toList());
+    }
+
+    private static long afterLid(String cursor) {
+
+        return cursor == null ? 0 : Cursor.decode(cursor, 1)[0];
+    }
 }
@@ -0,0 +1,83 @@
+package com.example.location.services;
+
+import com.example.location.configuration.SyncProperties;
+import com.example.location.dto.LocationDelta;
+import com.example.location.dto.SharedLocation;
+import com.example.location.repositories.LocationRepository;
+import com.example.location.repositories.SyncRepository;
+import com.example.location.util.Cursor;
+import com.example.location.util.GoneException;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delta sync of {@code /location/all}. A sync token is the change log version the client is up to date with and
+ * the time it was issued; it expires once the log rows after it may have been pruned.
+ */
+@Service
+@AllArgsConstructor
+@Log4j2
+public class SyncService {
+
+    static final String REVOKED = "revoked";
+
+    private final SyncRepository syncRepository;
+    private final LocationRepository locationRepository;
+    private final SyncProperties properties;
+    private final Clock clock;
+
+    /**
+     * Token for a full load of a user's locations, the same for every user. Read before the rows, so a change racing
+     * the load is sent again by the next sync rather than lost.
+     */
+    public CompletableFuture<String> currentToken() {
+
+        return syncRepository.findSettledVersion(properties.getSettle()).thenApply(this::token);
+    }
+
+    /**
+     * Locations added, changed or revoked since the token, and the token to use next time. Nothing changed costs
+     * one index range scan of the change log for the user and one index lookup per location the user can see.
+     */
+    public CompletableFuture<LocationDelta> findChanges(Long uid, String token) {
+
+        long[] key = Cursor.decode(token, 2);
+        long validFor = properties.getRetention().minus(properties.getSettle()).toMillis();
+        if (clock.millis() - key[1] > validFor) {
+            log.info("Expired sync token of UID {}", uid);
+            throw new GoneException("Sync token expired, reload the locations without since");
+        }
+
+        return syncRepository.findChanges(uid, key[0], properties.getSettle()).thenCompose(changes -> {
+            String next = token(changes.getVersion());
+            if (changes.getLids().isEmpty()) {
+                return CompletableFuture.completedFuture(new LocationDelta(Collections.emptyList(), next));
+            }
+            return locationRepository.findSharedLocations(uid, changes.getLids()).thenApply(rows -> {
+                List<SharedLocation> items = new ArrayList<>(rows);
+                Set<Long> visible = new HashSet<>();
+                rows.forEach(row -> visible.add(row.getLid()));
+                for (Long lid : changes.getLids()) {
+                    if (!visible.contains(lid)) {
+                        items.add(new SharedLocation(lid, null, null, null, REVOKED));
+                    }
+                }
+                return new LocationDelta(items, next);
+            });
+        });
+    }
+
+    private String token(long version) {
+
+        return Cursor.encode(version, clock.millis());
+    }
+}
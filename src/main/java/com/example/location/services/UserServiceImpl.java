@@ -1,6 +1,10 @@
 package com.example.location.services;
 
+import com.example.location.component.AccessDecisionCache;
+import com.example.location.component.ETagCache;
 import com.example.location.component.HistoryEventPublisher;
+import com.example.location.component.LocationIndex;
+import com.example.location.component.PasswordHasher;
 import com.example.location.entities.Access;
 import com.example.location.entities.Location;
 import com.example.location.entities.User;
@@ -16,7 +20,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.regex.Matcher;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
 @Service
@@ -24,12 +28,22 @@ import java.util.regex.Pattern;
 @Log4j2
 public class UserServiceImpl implements UserService {
 
+    static final String EMAIL_REGEX = "^[a-zA-Z0-9_+&*-]+(?:\\.[a-zA-Z0-9_+&*-]+)*@(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,7}$";
+    private static final Pattern EMAIL_PATTERN = Pattern.compile(EMAIL_REGEX);
+
     private final UserRepository userRepository;
     private final LocationRepository locationRepository;
     private final AccessRepository accessRepository;
 
     private final HistoryEventPublisher historyEventPublisher;
 
+    private final AccessDecisionCache accessDecisionCache;
+    private final ETagCache etagCache;
+
+    private final LocationIndex locationIndex;
+
+    private final PasswordHasher passwordHasher;
+
     @Override
     public CompletableFuture<Optional<User>> authorize(String email, String password) {
 
@@ -46,7 +60,40 @@ public class UserServiceImpl implements UserService {
             throw new BadRequestException("Invalid email format");
         }
 
-        return userRepository.findByEmailAndPassword(email, password);
+        return userRepository.findByEmailForLogin(email).thenCompose(user -> {
+            String stored = user.map(User::getPassword).orElse(null);
+            return passwordHasher.matches(password, stored).thenApply(matches -> {
+                if (!matches) {
+                    log.warn("Login failed for email: {}", Util.hideEmail(email));
+                    return Optional.<User>empty();
+                }
+                if (passwordHasher.needsRehash(stored)) {
+                    rehash(user.get(), password);
+                }
+                return user;
+            });
+        });
+    }
+
+    /**
+     * Replaces a plaintext or outdated password hash in the background; the login does not wait for it, and if it
+     * fails the next login tries again.
+     */
+    private void rehash(User user, String password) {
+
+        try {
+            passwordHasher.hash(password)
+                .thenCompose(hash -> userRepository.updatePassword(user.getUid(), user.getPassword(), hash))
+                .whenComplete((updated, ex) -> {
+                    if (ex != null) {
+                        log.warn("Password of UID {} not rehashed: {}", user.getUid(), ex.getMessage());
+                    } else if (updated) {
+                        log.info("Password of UID {} rehashed", user.getUid());
+                    }
+                });
+        } catch (RejectedExecutionException ex) {
+            log.warn("Password of UID {} not rehashed, the hasher is saturated", user.getUid());
+        }
     }
 
     @Override
@@ -58,11 +105,16 @@ public class UserServiceImpl implements UserService {
             throw new BadRequestException("Fill all fields");
         }
 
-        return userRepository.save(user).thenApply(saved -> {
+        return passwordHasher.hash(user.getPassword()).thenCompose(hash -> {
+            user.setPassword(hash);
+            return userRepository.save(user);
+        }).thenApply(saved -> {
             if (saved.getUid() == null) {
                 log.error("User not saved {}", user);
                 throw new DbException("User not saved");
             }
+            // neither the response nor the history needs the hash
+            saved.setPassword(null);
             historyEventPublisher.publishHistoryCreatedEvent(saved.getUid(), Util.ObjectType.USER, saved);
             return saved;
         });
@@ -77,11 +129,28 @@ public class UserServiceImpl implements UserService {
     @Override
     public CompletableFuture<Boolean> authorizeOwnerOrAdmin(Long uid, Long lid) {
 
+        if (uid == null || lid == null) {
+            log.warn("User not authorized {uid: {}, lid: {}}", uid, lid);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        AccessDecisionCache.Decision cached = accessDecisionCache.get(uid, lid);
+        if (cached != null) {
+            if (!cached.isOwnerOrAdmin()) {
+                log.warn("User not authorized {uid: {}, lid: {}}", uid, lid);
+            }
+            return CompletableFuture.completedFuture(cached.isOwnerOrAdmin());
+        }
+
+        long generation = accessDecisionCache.generation();
         CompletableFuture<Optional<Location>> owner = locationRepository.findByUidAndLid(uid, lid);
         CompletableFuture<Optional<Access>> admin = accessRepository.findByUidAndLid(uid, lid);
 
-        return owner.thenCombine(admin,
-                (o, a) -> o.isPresent() || a.isPresent() && a.get().getType().equals(Util.AccessType.ADMIN.getValue()))
+        return owner.thenCombine(admin, this::decide)
+            .thenApply(decision -> {
+                accessDecisionCache.put(uid, lid, decision, generation);
+                return decision.isOwnerOrAdmin();
+            })
             .thenCompose(
                 authorized -> {
                     if (authorized) {
@@ -107,21 +176,35 @@ public class UserServiceImpl implements UserService {
                 throw new DbException("Could not delete user");
             }
             log.info("User deleted successfully");
+            // the user's locations and shares are removed by cascade, which touches other users' decisions too
+            accessDecisionCache.invalidateAll();
+            etagCache.invalidateAll();
+            locationIndex.removeOwner(uid);
             historyEventPublisher.publishHistoryDeletedEvent(uid, Util.ObjectType.USER, uid);
             return isDeleted;
         });
     }
 
+    private AccessDecisionCache.Decision decide(Optional<Location> owner, Optional<Access> access) {
+
+        if (owner.isPresent()) {
+            return AccessDecisionCache.Decision.OWNER;
+        }
+        if (!access.isPresent()) {
+            return AccessDecisionCache.Decision.NONE;
+        }
+        return Util.AccessType.ADMIN.getValue().equals(access.get().getType())
+            ? AccessDecisionCache.Decision.ADMIN
+            : AccessDecisionCache.Decision.READ;
+    }
+
     private boolean isEmpty(User user) {
 
         return (user.getFirstName() == null || user.getLastName() == null || user.getPassword() == null || user.getEmail() == null);
     }
 
-    private boolean isValidEmail(String email) {
+    static boolean isValidEmail(String email) {
 
-        String regex = "^[a-zA-Z0-9_+&*-]+(?:\\." + "[a-zA-Z0-9_+&*-]+)*@" + "(?:[a-zA-Z0-9-]+\\.)+[a-z" + "A-Z]{2,7}$";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(email);
-        return matcher.matches();
+        return EMAIL_PATTERN.matcher(email).matches();
     }
 }
@@ -0,0 +1,118 @@
+package com.example.location.util;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size thread pool with a bounded queue. When both the threads and the queue are busy the task is rejected
+ * with {@link RejectedExecutionException} instead of piling up, so a saturated bulkhead fails fast.
+ */
+public class BoundedExecutor implements Executor {
+
+    private final String name;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor pool;
+    private final LongAdder rejected = new LongAdder();
+    private volatile TaskDecorator taskDecorator;
+
+    public BoundedExecutor(String name, int threads, int queueCapacity) {
+
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory(name), (task, executor) -> {
+            rejected.increment();
+            throw new RejectedExecutionException("Executor '" + name + "' is saturated");
+        });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+
+        TaskDecorator decorator = taskDecorator;
+        pool.execute(decorator == null ? command : decorator.decorate(command));
+    }
+
+    /**
+     * Wraps every task submitted from now on, e.g. to time it or to carry context over to the pool thread.
+     */
+    public void setTaskDecorator(TaskDecorator taskDecorator) {
+
+        this.taskDecorator = taskDecorator;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public int getPoolSize() {
+
+        return pool.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+
+        return pool.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+
+        return pool.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+
+        return queueCapacity;
+    }
+
+    public long getRejectedCount() {
+
+        return rejected.sum();
+    }
+
+    public long getCompletedCount() {
+
+        return pool.getCompletedTaskCount();
+    }
+
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+
+        pool.shutdown();
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+
+        return name + "{threads=" + getPoolSize() + ", active=" + getActiveCount() + ", queued=" + getQueueDepth()
+            + "/" + getQueueCapacity() + ", rejected=" + getRejectedCount() + "}";
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+
+            this.prefix = name + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
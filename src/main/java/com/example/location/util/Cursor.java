@@ -0,0 +1,56 @@
+package com.example.location.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursors: the sort key of the last row of a page, encoded so that clients do not depend
+ * on its layout.
+ */
+public class Cursor {
+
+    private Cursor() {
+
+    }
+
+    public static String encode(long... parts) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append(parts[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long[] decode(String cursor, int expectedParts) {
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] values = raw.split(":");
+            if (values.length != expectedParts) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            long[] parts = new long[expectedParts];
+            for (int i = 0; i < expectedParts; i++) {
+                parts[i] = Long.parseLong(values[i]);
+            }
+            return parts;
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Clamps a requested page size to {@code [1, max]}, using {@code defaultSize} when none was given.
+     */
+    public static int pageSize(Integer requested, int defaultSize, int max) {
+
+        if (requested == null) {
+            return defaultSize;
+        }
+        return Math.max(1, Math.min(requested, max));
+    }
+}
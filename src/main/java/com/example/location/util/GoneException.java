@@ -0,0 +1,9 @@
+package com.example.location.util;
+
+public class GoneException extends RuntimeException {
+
+    public GoneException(String message) {
+
+        super(message);
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.location.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Small in-process cache with a size bound (least recently used entries are evicted first) and a time to live.
+ * <p>
+ * Keys are spread over segments, each with a lock of its own, so that lookups of different keys rarely contend; a
+ * large cache evicts the least recently used entry of the segment rather than of the whole cache. An entry may carry
+ * tags, such as the ids it was built from, and {@link #invalidateTag(Object)} drops the entries with a tag by
+ * looking them up rather than scanning the cache.
+ * <p>
+ * A caller that loads a value from the database should read {@link #generation()} before the load and store the
+ * result with {@link #put(Object, Object, long)}, so that a value read before a concurrent invalidation of its key or
+ * one of its tags is never cached. Invalidations of other keys and tags do not affect it.
+ */
+public class LruCache<K, V> {
+
+    private static final int MIN_SEGMENT_SIZE = 256;
+    private static final int MAX_SEGMENTS = 64;
+    // when each key and tag was last invalidated, by hash; a collision only turns away a put now and then
+    private static final int VERSION_STRIPES = 4096;
+
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final Segment<K, V>[] segments;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLongArray invalidatedAt = new AtomicLongArray(VERSION_STRIPES);
+    private final AtomicLong allInvalidatedAt = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LruCache(int maxSize, long ttl, TimeUnit unit) {
+
+        this(maxSize, ttl, unit, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, long ttl, TimeUnit unit, LongSupplier ticker) {
+
+        this.ttlNanos = unit.toNanos(ttl);
+        this.ticker = ticker;
+        // a small cache keeps one segment, so that its eviction order is exact
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>((maxSize + count - 1) / count);
+        }
+    }
+
+    public V get(K key) {
+
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<V> node = segment.entries.get(key);
+            if (node != null && node.expiresAt - ticker.getAsLong() > 0) {
+                hits.increment();
+                return node.value;
+            }
+            if (node != null) {
+                segment.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public long generation() {
+
+        return clock.get();
+    }
+
+    /**
+     * Stores the value unless its key was invalidated since {@code generation} was read.
+     */
+    public boolean put(K key, V value, long generation) {
+
+        return put(key, value, Collections.emptySet(), ttlNanos, generation);
+    }
+
+    /**
+     * Stores the value with the tags unless its key or one of the tags was invalidated since {@code generation} was
+     * read.
+     */
+    public boolean put(K key, V value, Collection<?> tags, long generation) {
+
+        return put(key, value, tags, ttlNanos, generation);
+    }
+
+    /**
+     * Like {@link #put(Object, Object, Collection, long)}, with a time to live of its own for this entry.
+     */
+    public boolean put(K key, V value, Collection<?> tags, long ttl, TimeUnit unit, long generation) {
+
+        return put(key, value, tags, unit.toNanos(ttl), generation);
+    }
+
+    public void put(K key, V value) {
+
+        put(key, value, Collections.emptySet(), ttlNanos, Long.MAX_VALUE);
+    }
+
+    private boolean put(K key, V value, Collection<?> tags, long ttlNanos, long generation) {
+
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            // an invalidation records its time before it visits the segments, so one not seen here has yet to
+            // visit this segment and will drop the entry
+            if (invalidatedSince(key, tags, generation)) {
+                return false;
+            }
+            segment.put(key, new Node<>(value, tags, ticker.getAsLong() + ttlNanos));
+            int evicted = segment.evict();
+            if (evicted > 0) {
+                evictions.add(evicted);
+            }
+        }
+        return true;
+    }
+
+    public void invalidate(K key) {
+
+        invalidatedAt.accumulateAndGet(stripe(key), clock.incrementAndGet(), Math::max);
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Drops every entry stored with the tag.
+     */
+    public void invalidateTag(Object tag) {
+
+        invalidatedAt.accumulateAndGet(stripe(tag), clock.incrementAndGet(), Math::max);
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.removeTagged(tag);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+
+        allInvalidatedAt.accumulateAndGet(clock.incrementAndGet(), Math::max);
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+
+        return evictions.sum();
+    }
+
+    public double hitRatio() {
+
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    private boolean invalidatedSince(K key, Collection<?> tags, long generation) {
+
+        if (allInvalidatedAt.get() > generation || invalidatedAt.get(stripe(key)) > generation) {
+            return true;
+        }
+        for (Object tag : tags) {
+            if (invalidatedAt.get(stripe(tag)) > generation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+
+        int hash = key.hashCode();
+        return segments[(hash ^ hash >>> 16) & (segments.length - 1)];
+    }
+
+    private static int stripe(Object keyOrTag) {
+
+        int hash = keyOrTag.hashCode() * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * Entries in access order, and the keys of the entries carrying each tag. Guarded by its own monitor.
+     */
+    private static final class Segment<K, V> {
+
+        private final int maxSize;
+        private final LinkedHashMap<K, Node<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<Object, Set<K>> tagged = new HashMap<>();
+
+        Segment(int maxSize) {
+
+            this.maxSize = maxSize;
+        }
+
+        void put(K key, Node<V> node) {
+
+            Node<V> replaced = entries.put(key, node);
+            if (replaced != null) {
+                untag(key, replaced);
+            }
+            for (Object tag : node.tags) {
+                tagged.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+            }
+        }
+
+        void remove(K key) {
+
+            Node<V> removed = entries.remove(key);
+            if (removed != null) {
+                untag(key, removed);
+            }
+        }
+
+        void removeTagged(Object tag) {
+
+            Set<K> keys = tagged.remove(tag);
+            if (keys != null) {
+                keys.forEach(this::remove);
+            }
+        }
+
+        int evict() {
+
+            int evicted = 0;
+            Iterator<Map.Entry<K, Node<V>>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxSize && eldest.hasNext()) {
+                Map.Entry<K, Node<V>> entry = eldest.next();
+                eldest.remove();
+                untag(entry.getKey(), entry.getValue());
+                evicted++;
+            }
+            return evicted;
+        }
+
+        void clear() {
+
+            entries.clear();
+            tagged.clear();
+        }
+
+        private void untag(K key, Node<V> node) {
+
+            for (Object tag : node.tags) {
+                Set<K> keys = tagged.get(tag);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    tagged.remove(tag);
+                }
+            }
+        }
+    }
+
+    private static final class Node<V> {
+
+        private final V value;
+        private final Collection<?> tags;
+        private final long expiresAt;
+
+        Node(V value, Collection<?> tags, long expiresAt) {
+
+            this.value = value;
+            this.tags = tags;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -2,6 +2,10 @@ package com.example.location.util;
 
 public class UnauthorizedException extends RuntimeException {
 
+    public UnauthorizedException(String message) {
+
+        super(message);
+    }
 
     public UnauthorizedException() {
 
@@ -0,0 +1,18 @@
+-- Every history row needs a date: it is the partitioning and pagination key
+UPDATE history SET date = CURRENT_TIMESTAMP WHERE date IS NULL;
+ALTER TABLE history MODIFY date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+-- The partitioning column has to be part of every unique key
+ALTER TABLE history
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (hid, date);
+
+-- Keyset pagination on (date, hid) for one user, optionally narrowed to one object type
+CREATE INDEX idx_history_action_by_date ON history (action_by, date, hid);
+CREATE INDEX idx_history_action_by_type_date ON history (action_by, object_type, date, hid);
+
+-- Monthly partitions are split off p_future by the retention job, old months are dropped instead of deleted
+ALTER TABLE history PARTITION BY RANGE (UNIX_TIMESTAMP(date)) (
+    PARTITION p_start VALUES LESS THAN (UNIX_TIMESTAMP('2023-01-01 00:00:00')),
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+);
@@ -0,0 +1,12 @@
+-- Keep the newest row of every duplicated (uid, lid) grant before making the pair unique
+DELETE older FROM access older
+    INNER JOIN access newer ON newer.uid = older.uid AND newer.lid = older.lid AND newer.aid > older.aid;
+
+-- One grant per user and location; also serves "locations shared with me" lookups by uid
+ALTER TABLE access ADD CONSTRAINT uq_access_uid_lid UNIQUE (uid, lid);
+
+-- Everyone a location is shared with, answered from the index alone
+CREATE INDEX idx_access_lid_uid_type ON access (lid, uid, type);
+
+-- Locations of an owner
+CREATE INDEX idx_location_uid ON location (uid, lid);
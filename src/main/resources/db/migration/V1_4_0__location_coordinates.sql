@@ -0,0 +1,4 @@
+-- Optional WGS84 coordinates of a location, in degrees; nearby searches use an in-memory index, not the table
+ALTER TABLE location
+    ADD COLUMN latitude DOUBLE NULL,
+    ADD COLUMN longitude DOUBLE NULL;
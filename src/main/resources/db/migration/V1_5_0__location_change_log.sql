@@ -0,0 +1,53 @@
+-- Users whose /location/all rows of a location changed, in write order; read by delta syncs and pruned by age.
+-- No foreign keys: the rows have to outlive the locations and grants they are about.
+CREATE TABLE location_change (
+    version BIGINT AUTO_INCREMENT PRIMARY KEY,
+    uid BIGINT NOT NULL,
+    lid BIGINT NOT NULL,
+    changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+-- Changes of one user after a version, and the newest settled one
+CREATE INDEX idx_location_change_uid_version ON location_change (uid, version);
+-- Pruning by age
+CREATE INDEX idx_location_change_changed_at ON location_change (changed_at);
+
+-- The triggers run in the statement that changes the rows, so no write path can skip the log. Cascaded deletes do
+-- not fire triggers, so a deleted location or user logs its cascade before it happens.
+
+-- A new location is seen by its owner only
+CREATE TRIGGER location_change_insert AFTER INSERT ON location FOR EACH ROW
+    INSERT INTO location_change (uid, lid) VALUES (NEW.uid, NEW.lid);
+
+CREATE TRIGGER location_change_update AFTER UPDATE ON location FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT NEW.uid, NEW.lid
+    UNION SELECT OLD.uid, NEW.lid
+    UNION SELECT uid, NEW.lid FROM access WHERE lid = NEW.lid;
+
+CREATE TRIGGER location_change_delete BEFORE DELETE ON location FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT OLD.uid, OLD.lid
+    UNION SELECT uid, OLD.lid FROM access WHERE lid = OLD.lid;
+
+-- Everyone a location is shared with sees all of its grants
+CREATE TRIGGER access_change_insert AFTER INSERT ON access FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT uid, NEW.lid FROM access WHERE lid = NEW.lid;
+
+CREATE TRIGGER access_change_update AFTER UPDATE ON access FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT OLD.uid, OLD.lid
+    UNION SELECT uid, NEW.lid FROM access WHERE lid = NEW.lid;
+
+CREATE TRIGGER access_change_delete AFTER DELETE ON access FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT OLD.uid, OLD.lid
+    UNION SELECT uid, OLD.lid FROM access WHERE lid = OLD.lid;
+
+-- Grantees of the user's locations lose them, and those sharing a location with the user lose the user's grant
+CREATE TRIGGER users_change_delete BEFORE DELETE ON users FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT a.uid, a.lid FROM location l INNER JOIN access a ON a.lid = l.lid WHERE l.uid = OLD.uid
+    UNION SELECT other.uid, other.lid FROM access mine INNER JOIN access other ON other.lid = mine.lid
+    WHERE mine.uid = OLD.uid AND other.uid <> OLD.uid;
@@ -0,0 +1,38 @@
+-- Log each write of a location or grant once, for the owner or the grantee it is about, instead of once per user who
+-- can see the location: a delta sync finds the other users' changes through location(uid, lid) and access(uid, lid).
+-- Rows logged the old way stay valid, as a sync still reads the rows logged for the caller.
+
+-- Changes of one location after a version
+CREATE INDEX idx_location_change_lid_version ON location_change (lid, version);
+
+DROP TRIGGER location_change_update;
+DROP TRIGGER access_change_insert;
+DROP TRIGGER access_change_update;
+DROP TRIGGER access_change_delete;
+DROP TRIGGER users_change_delete;
+
+CREATE TRIGGER location_change_update AFTER UPDATE ON location FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT NEW.uid, NEW.lid
+    UNION SELECT OLD.uid, NEW.lid;
+
+-- location_change_delete still logs every grantee: the cascade removes the grants a sync would find the location by
+
+CREATE TRIGGER access_change_insert AFTER INSERT ON access FOR EACH ROW
+    INSERT INTO location_change (uid, lid) VALUES (NEW.uid, NEW.lid);
+
+CREATE TRIGGER access_change_update AFTER UPDATE ON access FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT NEW.uid, NEW.lid
+    UNION SELECT OLD.uid, OLD.lid;
+
+-- A revoked grantee finds the location by its own row only
+CREATE TRIGGER access_change_delete AFTER DELETE ON access FOR EACH ROW
+    INSERT INTO location_change (uid, lid) VALUES (OLD.uid, OLD.lid);
+
+-- Grantees of the user's locations lose them; the others sharing a location with the user find the user's lost grant
+-- through their own grants
+CREATE TRIGGER users_change_delete BEFORE DELETE ON users FOR EACH ROW
+    INSERT INTO location_change (uid, lid)
+    SELECT a.uid, a.lid FROM location l INNER JOIN access a ON a.lid = l.lid WHERE l.uid = OLD.uid
+    UNION SELECT OLD.uid, lid FROM access WHERE uid = OLD.uid;
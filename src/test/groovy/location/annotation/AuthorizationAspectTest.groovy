@@ -0,0 +1,127 @@
+package location.annotation
+
+import com.example.location.annotation.AuthorizationAspect
+import com.example.location.controllers.LocationController
+import com.example.location.dto.AccessDTO
+import com.example.location.dto.UserLocationDTO
+import com.example.location.services.UserService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.aspectj.lang.ProceedingJoinPoint
+import org.aspectj.lang.reflect.MethodSignature
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.web.context.request.RequestContextHolder
+import org.springframework.web.context.request.ServletRequestAttributes
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class AuthorizationAspectTest extends Specification {
+
+    UserService userService = Mock(UserService)
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    AuthorizationAspect aspect = new AuthorizationAspect(userService, meterRegistry)
+
+    def joinPoint(String methodName, Object[] args) {
+
+        def method = LocationController.methods.find { it.name == methodName }
+        def signature = Stub(MethodSignature) { getMethod() >> method }
+        return Mock(ProceedingJoinPoint) {
+            getSignature() >> signature
+            getArgs() >> args
+        }
+    }
+
+    def "checkOwner should resolve uid and lid from #methodName arguments"() {
+
+        given:
+            def jp = joinPoint(methodName, args as Object[])
+
+        when:
+            aspect.checkOwner(jp).join()
+
+        then:
+            1 * userService.authorizeOwnerOrAdmin(7L, 42L) >> CompletableFuture.completedFuture(true)
+            1 * jp.proceed() >> CompletableFuture.completedFuture(ResponseEntity.ok().build())
+
+        where:
+            methodName       | args
+            "getLocation"    | [7L, 42L]
+            "saveShare"      | [7L, new AccessDTO(42L, "guest@example.com", "admin")]
+            "unfriend"       | [7L, new UserLocationDTO("guest@example.com", 42L)]
+    }
+
+    def "checkOwner should not proceed when the user is not owner or admin"() {
+
+        given:
+            def jp = joinPoint("deleteLocation", [7L, 42L] as Object[])
+            userService.authorizeOwnerOrAdmin(7L, 42L) >> CompletableFuture.completedFuture(false)
+
+        when:
+            def result = aspect.checkOwner(jp).join() as ResponseEntity
+
+        then:
+            0 * jp.proceed()
+            result.statusCode == HttpStatus.FORBIDDEN
+            meterRegistry.get("authorization.owner").tag("outcome", "denied").timer().count() == 1
+    }
+
+    def "checkOwner should not block the caller while the authorization query runs"() {
+
+        given:
+            def jp = joinPoint("getLocation", [7L, 42L] as Object[])
+            def pending = new CompletableFuture<Boolean>()
+            userService.authorizeOwnerOrAdmin(7L, 42L) >> pending
+
+        when:
+            def result = aspect.checkOwner(jp)
+
+        then:
+            !result.isDone()
+            0 * jp.proceed()
+
+        when:
+            pending.complete(true)
+
+        then:
+            1 * jp.proceed() >> CompletableFuture.completedFuture(ResponseEntity.ok().build())
+            result.isDone()
+    }
+
+    def "checkOwner should hand the request context to a method run on the thread completing the check"() {
+
+        given:
+            def jp = joinPoint("getLocation", [7L, 42L] as Object[])
+            def pending = new CompletableFuture<Boolean>()
+            userService.authorizeOwnerOrAdmin(7L, 42L) >> pending
+            def attributes = new ServletRequestAttributes(new MockHttpServletRequest("GET", "/location/42"))
+            RequestContextHolder.setRequestAttributes(attributes)
+            def result = aspect.checkOwner(jp)
+            RequestContextHolder.resetRequestAttributes()
+            def seen = null
+
+        when:
+            Thread.start { pending.complete(true) }.join()
+
+        then:
+            1 * jp.proceed() >> {
+                seen = RequestContextHolder.getRequestAttributes()
+                CompletableFuture.completedFuture(ResponseEntity.ok().build())
+            }
+            result.join().statusCode == HttpStatus.OK
+            seen.is(attributes)
+            RequestContextHolder.getRequestAttributes() == null
+    }
+
+    def "an @AuthorizationOwner method that does not return a CompletableFuture is refused"() {
+
+        when:
+            aspect.resolveOwnerArguments(Object.getMethod("toString"))
+
+        then:
+            thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,63 @@
+package location.benchmark
+
+import groovy.transform.CompileStatic
+
+/**
+ * Collects the latency of every request to one endpoint. Samples are kept in full and sorted once at the end,
+ * which is cheap next to an HTTP round trip and gives exact percentiles.
+ */
+@CompileStatic
+class LatencyRecorder {
+
+    private long[] samples = new long[1024]
+    private int count
+    private long errors
+    private long rejected
+
+    /**
+     * Server errors and failed connections count as errors, 4xx answers as rejected requests.
+     */
+    synchronized void record(long nanos, int status) {
+
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2)
+        }
+        samples[count++] = nanos
+        if (status < 0 || status >= 500) {
+            errors++
+        } else if (status >= 400) {
+            rejected++
+        }
+    }
+
+    synchronized Map<String, Object> summary(String endpoint, double seconds) {
+
+        long[] sorted = Arrays.copyOf(samples, count)
+        Arrays.sort(sorted)
+        Map<String, Object> summary = new LinkedHashMap<>()
+        summary.put("endpoint", endpoint)
+        summary.put("requests", count)
+        summary.put("errors", errors)
+        summary.put("rejected", rejected)
+        summary.put("throughput", round(count / seconds))
+        summary.put("p50Ms", millis(sorted, 0.5d))
+        summary.put("p99Ms", millis(sorted, 0.99d))
+        summary.put("p999Ms", millis(sorted, 0.999d))
+        summary.put("maxMs", count == 0 ? 0.0d : round(sorted[count - 1] / 1_000_000.0d))
+        return summary
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+
+        if (sorted.length == 0) {
+            return 0.0d
+        }
+        int index = Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)
+        return round(sorted[index] / 1_000_000.0d)
+    }
+
+    private static double round(double value) {
+
+        return Math.round(value * 100) / 100.0d
+    }
+}
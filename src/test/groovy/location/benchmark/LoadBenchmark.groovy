@@ -0,0 +1,502 @@
+package location.benchmark
+
+import ch.vorburger.mariadb4j.DB
+import ch.vorburger.mariadb4j.DBConfigurationBuilder
+import com.example.location.LocationApplication
+import com.example.location.component.LocationIndex
+import com.example.location.component.PasswordHasher
+import com.example.location.component.SessionTokens
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.boot.builder.SpringApplicationBuilder
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext
+import org.springframework.context.ConfigurableApplicationContext
+import org.springframework.http.HttpEntity
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import org.springframework.http.MediaType
+import org.springframework.http.ResponseEntity
+import org.springframework.http.client.ClientHttpResponse
+import org.springframework.http.client.SimpleClientHttpRequestFactory
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.RowMapper
+import org.springframework.web.client.ResponseErrorHandler
+import org.springframework.web.client.RestTemplate
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.net.HttpURLConnection
+import java.net.URL
+import java.net.URLEncoder
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Boots {@link LocationApplication} with the {@code benchmark} profile against an embedded MariaDB, seeds a
+ * synthetic dataset and drives every endpoint from concurrent clients over HTTP. Prints throughput and
+ * p50/p99/p999 latency per endpoint and writes them as JSON.
+ * <p>
+ * Not part of {@code ./gradlew test}, run it with {@code ./gradlew loadBenchmark}. Every setting below can be
+ * overridden with {@code -Plocation.benchmark.<name>=<value>}.
+ */
+class LoadBenchmark extends Specification {
+
+    static final int USERS = setting("users", 1000)
+    static final int LOCATIONS_PER_USER = setting("locations-per-user", 10)
+    static final int SHARES_PER_LOCATION = setting("shares-per-location", 5)
+    static final int THREADS = setting("threads", 16)
+    static final int WARMUP_SECONDS = setting("warmup-seconds", 10)
+    static final int DURATION_SECONDS = setting("duration-seconds", 60)
+    static final int PASSWORD_COST = setting("password-cost", 10)
+    static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("location.benchmark.max-error-rate",
+        "0.01"))
+    static final String REPORT = System.getProperty("location.benchmark.report",
+        "build/reports/load-benchmark/results.json")
+
+    static final String PASSWORD = "password"
+    static final String EMAIL_DOMAIN = "@bench.example.com"
+    static final int IMPORT_ROWS = 20
+    static final int BULK_SHARES = 10
+    static final String SYNC_TOKEN = "Sync-Token"
+    // every location lies in this box, small enough for a nearby search to find a few of the caller's locations
+    static final double SOUTH = 52.4
+    static final double WEST = 13.3
+    static final double BOX_DEGREES = 0.2
+
+    /**
+     * Request mix, weighted towards the reads a client does most.
+     */
+    static final Map<String, Integer> ENDPOINTS = [
+        "GET /location/{lid}"      : 20,
+        "GET /user/locations"      : 20,
+        "GET /location/all"        : 15,
+        "GET /location/all?since=" : 10,
+        "GET /location/all/stream" : 2,
+        "GET /location/nearby"     : 10,
+        "GET /location/clusters"   : 5,
+        "GET /location/changes"    : 1,
+        "GET /history"             : 2,
+        "POST /login"              : 10,
+        "POST /location"           : 5,
+        "DELETE /location/{lid}"   : 3,
+        "POST /location/import"    : 1,
+        "POST /location/share"     : 5,
+        "POST /location/share/bulk": 2,
+        "POST /location/access"    : 5,
+        "POST /location/unfriend"  : 3,
+        "POST /register"           : 3,
+        "DELETE /user/{uid}"       : 2
+    ]
+
+    @Shared
+    DB db
+    @Shared
+    ConfigurableApplicationContext context
+    @Shared
+    ObjectMapper objectMapper
+    @Shared
+    RestTemplate client
+    @Shared
+    String baseUrl
+
+    @Shared
+    List<Long> uids = []
+    @Shared
+    List<long[]> locations = []
+    @Shared
+    List<long[]> shares = []
+    @Shared
+    Map<Long, String> emails = [:]
+    @Shared
+    SessionTokens sessionTokens
+
+    final AtomicLong registrations = new AtomicLong()
+    // one session per user, as a client logs in once and reuses its token
+    final Map<Long, String> tokens = new ConcurrentHashMap<>()
+    // the newest sync token of each user, as a client keeps the one its last load or sync returned
+    final Map<Long, String> syncTokens = new ConcurrentHashMap<>()
+    volatile Map<String, LatencyRecorder> recorders
+
+    def setupSpec() {
+
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder()
+        config.setPort(0)
+        db = DB.newEmbeddedDB(config.build())
+        db.start()
+        db.createDB("location_benchmark")
+
+        context = new SpringApplicationBuilder(LocationApplication)
+            .profiles("benchmark")
+            .properties("location.benchmark.db-port=" + db.getConfiguration().getPort(),
+                "location.password.cost=" + PASSWORD_COST)
+            .run()
+        objectMapper = context.getBean(ObjectMapper)
+        sessionTokens = context.getBean(SessionTokens)
+        baseUrl = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort()
+
+        // keep one connection per client thread alive between requests
+        System.setProperty("http.maxConnections", String.valueOf(THREADS))
+        client = new RestTemplate(new SimpleClientHttpRequestFactory())
+        client.setErrorHandler(new ResponseErrorHandler() {
+
+            boolean hasError(ClientHttpResponse response) {
+
+                return false
+            }
+
+            void handleError(ClientHttpResponse response) {
+
+            }
+        })
+
+        seed(context.getBean(JdbcTemplate), context.getBean(PasswordHasher).hash(PASSWORD).join())
+        // the index was loaded at startup, before the seeded locations existed
+        context.getBean(LocationIndex).load()
+    }
+
+    def cleanupSpec() {
+
+        context?.close()
+        db?.stop()
+    }
+
+    def "every endpoint keeps up under concurrent load"() {
+
+        when:
+            runPhase(WARMUP_SECONDS)
+            Map<String, LatencyRecorder> measured = runPhase(DURATION_SECONDS)
+            List<Map<String, Object>> report = measured.collect { endpoint, recorder ->
+                recorder.summary(endpoint, DURATION_SECONDS)
+            }.sort { it.endpoint }
+            printReport(report)
+            writeReport(report)
+
+            long requests = report.sum { it.requests } as long
+            long errors = report.sum { it.errors } as long
+
+        then:
+            report.every { it.requests > 0 }
+            errors <= requests * MAX_ERROR_RATE
+    }
+
+    private Map<String, LatencyRecorder> runPhase(int seconds) {
+
+        recorders = new ConcurrentHashMap<>()
+        ENDPOINTS.keySet().each { recorders.put(it, new LatencyRecorder()) }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds)
+
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS)
+        try {
+            List<Future<?>> workers = (1..THREADS).collect {
+                clients.submit({ work(deadline) } as Runnable)
+            }
+            workers.each { it.get() }
+        } finally {
+            clients.shutdownNow()
+        }
+        return recorders
+    }
+
+    /**
+     * One client thread. It only deletes locations, shares and users it created itself, so that the seeded
+     * dataset stays the same size for the whole run.
+     */
+    private void work(long deadline) {
+
+        Created created = new Created()
+        int totalWeight = ENDPOINTS.values().sum() as int
+        while (System.nanoTime() < deadline) {
+            int pick = ThreadLocalRandom.current().nextInt(totalWeight)
+            String endpoint = ENDPOINTS.find { name, weight -> (pick -= weight) < 0 }.key
+            call(endpoint, created)
+        }
+    }
+
+    private void call(String endpoint, Created created) {
+
+        long[] location = random(locations)
+        switch (endpoint) {
+            case "GET /location/{lid}":
+                send(endpoint, HttpMethod.GET, "/location/" + location[0], location[1], null)
+                break
+            case "GET /user/locations":
+                send(endpoint, HttpMethod.GET, "/user/locations?limit=100", random(uids), null)
+                break
+            case "GET /location/all":
+                Long loader = random(uids)
+                keepSyncToken(loader, send(endpoint, HttpMethod.GET, "/location/all?limit=100", loader, null))
+                break
+            case "GET /location/all?since=":
+                Long syncing = random(uids)
+                if (!syncTokens.containsKey(syncing)) {
+                    keepSyncToken(syncing, send("GET /location/all", HttpMethod.GET, "/location/all?limit=100",
+                        syncing, null))
+                }
+                String since = syncTokens.get(syncing)
+                if (since != null) {
+                    keepSyncToken(syncing, send(endpoint, HttpMethod.GET, "/location/all?since=" +
+                        URLEncoder.encode(since, StandardCharsets.UTF_8.name()), syncing, null))
+                }
+                break
+            case "GET /location/all/stream":
+                send(endpoint, HttpMethod.GET, "/location/all/stream", random(uids), null)
+                break
+            case "GET /location/nearby":
+                double[] point = randomPoint()
+                send(endpoint, HttpMethod.GET, "/location/nearby?lat=" + point[0] + "&lon=" + point[1] +
+                    "&radius=5000&limit=20", random(uids), null)
+                break
+            case "GET /location/clusters":
+                double[] center = randomPoint()
+                int zoom = ThreadLocalRandom.current().nextInt(10, 15)
+                double span = 360.0 / (1 << zoom) * 2
+                send(endpoint, HttpMethod.GET, "/location/clusters?south=" + (center[0] - span / 2) + "&west=" +
+                    (center[1] - span) + "&north=" + (center[0] + span / 2) + "&east=" + (center[1] + span) +
+                    "&zoom=" + zoom, random(uids), null)
+                break
+            case "GET /location/changes":
+                subscribe(endpoint, random(uids))
+                break
+            case "GET /history":
+                send(endpoint, HttpMethod.GET, "/history?limit=50", random(uids), null)
+                break
+            case "POST /login":
+                send(endpoint, HttpMethod.POST, "/login", null, [email: email(random(uids)), password: PASSWORD])
+                break
+            case "POST /location":
+                Long owner = random(uids)
+                double[] position = randomPoint()
+                ResponseEntity<String> saved = send(endpoint, HttpMethod.POST, "/location", owner,
+                    [name: "Bench", address: "Benchmark street " + owner, latitude: position[0],
+                     longitude: position[1]])
+                if (saved?.statusCode?.is2xx()) {
+                    created.locations << ([owner, objectMapper.readTree(saved.body).get("lid").asLong()] as long[])
+                }
+                break
+            case "DELETE /location/{lid}":
+                if (created.locations.isEmpty()) {
+                    return
+                }
+                long[] ownLocation = created.locations.remove(created.locations.size() - 1)
+                send(endpoint, HttpMethod.DELETE, "/location/" + ownLocation[1], ownLocation[0], null)
+                break
+            case "POST /location/import":
+                String rows = (1..IMPORT_ROWS).collect { "{\"name\":\"Import $it\",\"address\":\"Row $it\"}" }
+                    .join("\n")
+                send(endpoint, HttpMethod.POST, "/location/import", location[1], rows,
+                    MediaType.APPLICATION_NDJSON)
+                break
+            case "POST /location/share":
+                String guest = email(random(uids))
+                String mode = ThreadLocalRandom.current().nextBoolean() ? "read-only" : "admin"
+                ResponseEntity<String> shared = send(endpoint, HttpMethod.POST, "/location/share", location[1],
+                    [lid: location[0], email: guest, shareMode: mode])
+                if (shared?.statusCode?.is2xx()) {
+                    created.shares << ([location[1], location[0], guest] as Object[])
+                }
+                break
+            case "POST /location/share/bulk":
+                List<Map<String, String>> guests = (1..BULK_SHARES).collect {
+                    [email: email(random(uids)), shareMode: "read-only"]
+                }
+                send(endpoint, HttpMethod.POST, "/location/share/bulk", location[1],
+                    [lid: location[0], shares: guests])
+                break
+            case "POST /location/access":
+                long[] share = random(shares)
+                send(endpoint, HttpMethod.POST, "/location/access", share[1],
+                    [lid: share[0], email: email(share[2])])
+                break
+            case "POST /location/unfriend":
+                if (created.shares.isEmpty()) {
+                    return
+                }
+                Object[] ownShare = created.shares.remove(created.shares.size() - 1)
+                send(endpoint, HttpMethod.POST, "/location/unfriend", ownShare[0] as Long,
+                    [lid: ownShare[1], email: ownShare[2]])
+                break
+            case "POST /register":
+                String newEmail = "new" + registrations.incrementAndGet() + EMAIL_DOMAIN
+                ResponseEntity<String> registered = send(endpoint, HttpMethod.POST, "/register", null,
+                    [firstName: "New", lastName: "User", email: newEmail, password: PASSWORD])
+                if (registered?.statusCode?.is2xx()) {
+                    created.users << objectMapper.readTree(registered.body).get("uid").asLong()
+                }
+                break
+            case "DELETE /user/{uid}":
+                if (created.users.isEmpty()) {
+                    return
+                }
+                Long registeredUid = created.users.remove(created.users.size() - 1)
+                send(endpoint, HttpMethod.DELETE, "/user/" + registeredUid, null, null)
+                break
+        }
+    }
+
+    private ResponseEntity<String> send(String endpoint, HttpMethod method, String path, Long uid, Object body,
+                                        MediaType contentType = MediaType.APPLICATION_JSON) {
+
+        HttpHeaders headers = new HttpHeaders()
+        if (uid != null) {
+            headers.set(HttpHeaders.AUTHORIZATION, tokens.computeIfAbsent(uid, { sessionTokens.issue(it) }))
+        }
+        if (body != null) {
+            headers.setContentType(contentType)
+        }
+        HttpEntity<Object> request = new HttpEntity<>(body instanceof String ? body : toJson(body), headers)
+
+        long start = System.nanoTime()
+        try {
+            ResponseEntity<String> response = client.exchange(baseUrl + path, method, request, String)
+            recorders.get(endpoint).record(System.nanoTime() - start, response.getStatusCodeValue())
+            return response
+        } catch (Exception ignored) {
+            recorders.get(endpoint).record(System.nanoTime() - start, -1)
+            return null
+        }
+    }
+
+    /**
+     * Opens the change feed and hangs up once the first event arrives, timing the subscription. RestTemplate would
+     * read an event stream to its end before closing it, so this one goes through a plain connection.
+     */
+    private void subscribe(String endpoint, Long uid) {
+
+        long start = System.nanoTime()
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/location/changes").openConnection()
+        try {
+            String token = tokens.computeIfAbsent(uid, { sessionTokens.issue(it) })
+            connection.setRequestProperty(HttpHeaders.AUTHORIZATION, token)
+            connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+            int status = connection.getResponseCode()
+            if (status == 200) {
+                connection.getInputStream().read()
+            }
+            recorders.get(endpoint).record(System.nanoTime() - start, status)
+        } catch (Exception ignored) {
+            recorders.get(endpoint).record(System.nanoTime() - start, -1)
+        } finally {
+            // closes the socket instead of returning it to the keep-alive cache, so the server sees the client go
+            connection.disconnect()
+        }
+    }
+
+    private void keepSyncToken(Long uid, ResponseEntity<String> response) {
+
+        String token = response?.statusCode?.is2xx() ? response.headers.getFirst(SYNC_TOKEN) : null
+        if (token != null) {
+            syncTokens.put(uid, token)
+        } else if (response?.statusCodeValue == 410) {
+            syncTokens.remove(uid)
+        }
+    }
+
+    private String toJson(Object body) {
+
+        return body == null ? null : objectMapper.writeValueAsString(body)
+    }
+
+    /**
+     * Every user gets the same password hash, so a login costs what it costs in production without hashing a
+     * thousand passwords first.
+     */
+    private void seed(JdbcTemplate jdbcTemplate, String passwordHash) {
+
+        jdbcTemplate.batchUpdate("INSERT INTO users (firstname, lastname, email, password) VALUES (?, ?, ?, ?)",
+            (1..USERS).collect { ["First", "Last", "user" + it + EMAIL_DOMAIN, passwordHash] as Object[] })
+        jdbcTemplate.query("SELECT uid, email FROM users ORDER BY uid",
+            { rs -> emails.put(rs.getLong("uid"), rs.getString("email")) } as RowCallbackHandler)
+        uids = new ArrayList<>(emails.keySet())
+
+        Random random = new Random(42)
+        String insertLocation = "INSERT INTO location (uid, name, address, latitude, longitude) VALUES (?, ?, ?, ?, ?)"
+        jdbcTemplate.batchUpdate(insertLocation, uids.collectMany { uid ->
+            (1..LOCATIONS_PER_USER).collect {
+                [uid, "Location " + it, "Address " + it, SOUTH + random.nextDouble() * BOX_DEGREES,
+                 WEST + random.nextDouble() * BOX_DEGREES] as Object[]
+            }
+        })
+        locations = jdbcTemplate.query("SELECT lid, uid FROM location ORDER BY lid",
+            { rs, rowNum -> [rs.getLong("lid"), rs.getLong("uid")] as long[] } as RowMapper<long[]>)
+
+        List<Object[]> grants = []
+        locations.each { location ->
+            Set<Long> guests = new HashSet<>()
+            while (guests.size() < Math.min(SHARES_PER_LOCATION, USERS - 1)) {
+                Long guest = uids.get(random.nextInt(uids.size()))
+                if (guest != location[1] && guests.add(guest)) {
+                    grants << ([guest, location[0], random.nextBoolean() ? "read-only" : "admin"] as Object[])
+                    shares << ([location[0], location[1], guest] as long[])
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO access (uid, lid, type) VALUES (?, ?, ?)", grants)
+        jdbcTemplate.execute("ANALYZE TABLE users, location, access")
+    }
+
+    private void printReport(List<Map<String, Object>> report) {
+
+        println String.format("Load benchmark: %d users, %d locations, %d shares, %d threads, %d s, BCrypt cost %d",
+            USERS, locations.size(), shares.size(), THREADS, DURATION_SECONDS, PASSWORD_COST)
+        println String.format("%-26s %9s %7s %8s %10s %9s %9s %9s %9s", "endpoint", "requests", "errors",
+            "rejected", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms")
+        report.each { row ->
+            println String.format("%-26s %9d %7d %8d %10.1f %9.2f %9.2f %9.2f %9.2f", row.endpoint, row.requests,
+                row.errors, row.rejected, row.throughput, row.p50Ms, row.p99Ms, row.p999Ms, row.maxMs)
+        }
+    }
+
+    private void writeReport(List<Map<String, Object>> report) {
+
+        Path path = Paths.get(REPORT)
+        Files.createDirectories(path.toAbsolutePath().getParent())
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), [
+            users          : USERS,
+            locations      : locations.size(),
+            shares         : shares.size(),
+            threads        : THREADS,
+            durationSeconds: DURATION_SECONDS,
+            endpoints      : report
+        ])
+    }
+
+    /**
+     * What one client thread created and may delete again.
+     */
+    private static class Created {
+
+        final List<long[]> locations = []
+        final List<Object[]> shares = []
+        final List<Long> users = []
+    }
+
+    private static <T> T random(List<T> values) {
+
+        return values.get(ThreadLocalRandom.current().nextInt(values.size()))
+    }
+
+    private static double[] randomPoint() {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current()
+        return [SOUTH + random.nextDouble() * BOX_DEGREES, WEST + random.nextDouble() * BOX_DEGREES] as double[]
+    }
+
+    private String email(Long uid) {
+
+        return emails.get(uid)
+    }
+
+    private static int setting(String name, int defaultValue) {
+
+        return Integer.getInteger("location.benchmark." + name, defaultValue)
+    }
+}
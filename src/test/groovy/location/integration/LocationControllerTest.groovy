@@ -1,6 +1,8 @@
 package location.integration
 
 import com.example.location.LocationApplication
+import com.example.location.component.SessionTokens
+import com.example.location.component.UserCache
 import com.example.location.component.HistoryEventPublisher
 import com.example.location.dto.AccessDTO
 import com.example.location.dto.SharedLocation
@@ -54,6 +56,12 @@ class LocationControllerTest extends Specification {
     @Autowired
     private ObjectMapper objectMapper
 
+    @Autowired
+    private SessionTokens sessionTokens
+
+    @Autowired
+    private UserCache userCache
+
     @Value('${local.server.port}')
     private int port
     @Shared
@@ -115,6 +123,8 @@ class LocationControllerTest extends Specification {
 
         UidOwner = addUser(owner)
         UidGuest = addUser(guest)
+        // the users are written behind the repository's back, with new uids under the same emails
+        userCache.invalidateAll()
 
         def location = new Location(null, UidOwner, "Test Location", "Test Address")
 
@@ -126,7 +136,7 @@ class LocationControllerTest extends Specification {
         given:
             def access = new AccessDTO(LID, GUEST, "read-only")
             MvcResult request = mockMvc.perform(MockMvcRequestBuilders.post("/location/share")
-                .header("Authorization", UidOwner.toString())
+                .header("Authorization", sessionTokens.issue(UidOwner))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(access)))
                 .andExpect(request().asyncStarted())
@@ -148,15 +158,44 @@ class LocationControllerTest extends Specification {
             accessSaved.type == "read-only"
     }
 
+    def "Sharing again with the same mode returns the existing grant with 200"() {
+
+        given:
+            def access = new AccessDTO(LID, GUEST, "read-only")
+            def share = {
+                MvcResult request = mockMvc.perform(MockMvcRequestBuilders.post("/location/share")
+                    .header("Authorization", sessionTokens.issue(UidOwner))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(access)))
+                    .andExpect(request().asyncStarted())
+                    .andReturn()
+                mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(request)).andReturn().response
+            }
+            def first = share()
+
+        when:
+            def again = share()
+
+        then:
+            first.status == 201
+            again.status == 200
+            objectMapper.readValue(again.contentAsString, Access.class).aid ==
+                objectMapper.readValue(first.contentAsString, Access.class).aid
+    }
+
     def "Test Share Location with invalid type"() {
         given:
             def access = new AccessDTO(LID, GUEST, "invalid")
 
-        expect:
-            mockMvc.perform(MockMvcRequestBuilders.post("/location/share")
-                .header("Authorization", UidOwner.toString())
+            MvcResult request = mockMvc.perform(MockMvcRequestBuilders.post("/location/share")
+                .header("Authorization", sessionTokens.issue(UidOwner))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(access)))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+
+        expect:
+            mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(request))
                 .andExpect(status().isBadRequest())
 
 
@@ -166,7 +205,7 @@ class LocationControllerTest extends Specification {
 
         given:
             MvcResult request = mockMvc.perform(MockMvcRequestBuilders.get("/location/all")
-                .header("Authorization", UidGuest.toString()))
+                .header("Authorization", sessionTokens.issue(UidGuest)))
                 .andExpect(request().asyncStarted())
                 .andReturn()
 
@@ -184,7 +223,7 @@ class LocationControllerTest extends Specification {
             def access = new Access(null,  UidGuest,LID, "read-only")
             addShare(access)
             MvcResult request = mockMvc.perform(MockMvcRequestBuilders.get("/location/all")
-                .header("Authorization", UidGuest.toString()))
+                .header("Authorization", sessionTokens.issue(UidGuest)))
                 .andExpect(request().asyncStarted())
                 .andReturn()
 
@@ -199,6 +238,26 @@ class LocationControllerTest extends Specification {
             sharedLocation.accessType == "read-only"
     }
 
+    def "Test streaming all shared locations for guest"() {
+
+        given:
+            def access = new Access(null,  UidGuest, LID, "read-only")
+            addShare(access)
+            MvcResult request = mockMvc.perform(MockMvcRequestBuilders.get("/location/all/stream")
+                .header("Authorization", sessionTokens.issue(UidGuest)))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+
+        when:
+            def response = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(request)).andExpect(status().isOk()).andReturn().response
+            def sharedLocations = objectMapper.readValue(response.contentAsString, List)
+
+        then:
+            sharedLocations.size() == 1
+            sharedLocations[0].lid == LID
+            sharedLocations[0].accessType == "read-only"
+    }
+
     def "Test Change Share mode"() {
 
         given:
@@ -206,7 +265,7 @@ class LocationControllerTest extends Specification {
             addShare(access)
             def dto = new UserLocationDTO(GUEST, LID)
             MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/location/access")
-                .header("Authorization", UidOwner.toString())
+                .header("Authorization", sessionTokens.issue(UidOwner))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(dto)))
                 .andExpect(request().asyncStarted())
@@ -224,7 +283,7 @@ class LocationControllerTest extends Specification {
             addShare(access)
             def dto = new UserLocationDTO(GUEST, LID)
             MvcResult request = mockMvc.perform(MockMvcRequestBuilders.post("/location/unfriend")
-                .header("Authorization", UidOwner.toString())
+                .header("Authorization", sessionTokens.issue(UidOwner))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(dto)))
                 .andExpect(request().asyncStarted())
@@ -243,7 +302,7 @@ class LocationControllerTest extends Specification {
             def dto = new UserLocationDTO("guest3@mail.com", LID)
 
             MvcResult request = mockMvc.perform(MockMvcRequestBuilders.post("/location/unfriend")
-                .header("Authorization", UidGuest.toString())
+                .header("Authorization", sessionTokens.issue(UidGuest))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(dto)))
                 .andExpect(request().asyncStarted())
@@ -264,7 +323,7 @@ class LocationControllerTest extends Specification {
                 addShare(new Access(null,  UIDGuest2, LID,"read-only"))
                 def dto = new UserLocationDTO("guest3@mail.com", LID)
                 MvcResult request = mockMvc.perform(MockMvcRequestBuilders.post("/location/unfriend")
-                    .header("Authorization", UidGuest.toString())
+                    .header("Authorization", sessionTokens.issue(UidGuest))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(dto)))
                         .andExpect(request().asyncStarted())
@@ -1,6 +1,8 @@
 package location.integration
 
 import com.example.location.LocationApplication
+import com.example.location.component.SessionTokens
+import com.example.location.component.UserCache
 import com.example.location.dto.LoginDTO
 import com.example.location.entities.Location
 import com.example.location.entities.User
@@ -34,6 +36,12 @@ class MainControllerTest extends Specification {
     @Autowired
     private ObjectMapper objectMapper
 
+    @Autowired
+    private SessionTokens sessionTokens
+
+    @Autowired
+    private UserCache userCache
+
     @Value('${spring.datasource.url}')
     @Shared
     private String url
@@ -95,6 +103,8 @@ class MainControllerTest extends Specification {
     def setup() {
 
         addUser()
+        // the user is written behind the repository's back, with a new uid under the same email
+        userCache.invalidateAll()
     }
 
     def cleanup() {
@@ -143,10 +153,10 @@ class MainControllerTest extends Specification {
         when:
             def response = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(request)).andExpect(status().isOk()).andReturn().response
             def authorizationHeader = response.getHeader("Authorization")
-            UID = authorizationHeader.toLong()
 
         then:
             authorizationHeader != null
+            sessionTokens.verify(authorizationHeader) == UID
     }
 
     def "Test user login with incorrect password"() {
@@ -167,7 +177,7 @@ class MainControllerTest extends Specification {
 
         given:
             def request = mockMvc.perform(MockMvcRequestBuilders.get("/user/locations")
-                .header("Authorization", UID.toString()))
+                .header("Authorization", sessionTokens.issue(UID)))
                 .andExpect(request().asyncStarted())
                 .andReturn()
 
@@ -184,7 +194,7 @@ class MainControllerTest extends Specification {
         given:
             def location = new Location(UID, "testLocation", "testAddress")
             def request = mockMvc.perform(MockMvcRequestBuilders.post("/location")
-                .header("Authorization", UID.toString())
+                .header("Authorization", sessionTokens.issue(UID))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(location)))
                 .andExpect(request().asyncStarted())
@@ -205,7 +215,7 @@ class MainControllerTest extends Specification {
         given:
             addLocation()
             def request = mockMvc.perform(MockMvcRequestBuilders.get("/location/$LID")
-                .header("Authorization", UID.toString()))
+                .header("Authorization", sessionTokens.issue(UID)))
                 .andExpect(request().asyncStarted())
                 .andReturn()
 
@@ -229,4 +239,34 @@ class MainControllerTest extends Specification {
             response.contentAsString != null
             response.contentAsString == "Authorization header is missing"
     }
+
+    def "Test retrieving user locations with a forged token"() {
+
+        given:
+            def token = sessionTokens.issue(UID)
+            def forged = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "QA" : "AA")
+
+        when:
+            def response = mockMvc.perform(MockMvcRequestBuilders.get("/user/locations")
+                .header("Authorization", forged))
+                .andExpect(status().isUnauthorized()).andReturn().response
+
+        then:
+            response.contentAsString == "Invalid or expired session token"
+    }
+
+    def "Test logging out revokes the token"() {
+
+        given:
+            def token = sessionTokens.issue(UID)
+
+        when:
+            mockMvc.perform(MockMvcRequestBuilders.post("/logout").header("Authorization", token))
+                .andExpect(status().isNoContent())
+
+        then:
+            sessionTokens.verify(token) == 0L
+            mockMvc.perform(MockMvcRequestBuilders.get("/user/locations").header("Authorization", token))
+                .andExpect(status().isUnauthorized())
+    }
 }
@@ -0,0 +1,164 @@
+package location.repositories
+
+import ch.vorburger.mariadb4j.DB
+import ch.vorburger.mariadb4j.DBConfigurationBuilder
+import com.example.location.repositories.LocationRepositoryImpl
+import com.example.location.repositories.SyncRepositoryImpl
+import org.flywaydb.core.Flyway
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DriverManagerDataSource
+import spock.lang.Shared
+import spock.lang.Specification
+
+/**
+ * Runs EXPLAIN for the hot queries against an embedded MariaDB with the real migrations applied, so that a query
+ * or schema change that falls back to a full table scan fails the build.
+ */
+class QueryPlanTest extends Specification {
+
+    static final int USERS = 200
+    static final int LOCATIONS_PER_USER = 10
+    static final int GRANTS_PER_USER = 20
+
+    @Shared
+    DB db
+    @Shared
+    JdbcTemplate jdbcTemplate
+
+    def setupSpec() {
+
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder()
+        config.setPort(0)
+        db = DB.newEmbeddedDB(config.build())
+        db.start()
+        db.createDB("location_plan")
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(config.getURL("location_plan"), "root", "")
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate()
+        jdbcTemplate = new JdbcTemplate(dataSource)
+        seed()
+    }
+
+    def cleanupSpec() {
+
+        db?.stop()
+    }
+
+    def "findAllLocations is answered with index lookups"() {
+
+        expect:
+            fullScans(LocationRepositoryImpl.FIND_ALL_LOCATIONS_PAGE_SQL, 7L, 0L, 101, 7L, 0L, 101, 101) == []
+            fullScans(LocationRepositoryImpl.FIND_ALL_LOCATIONS_SQL, 7L, 0L, 2000L, 7L, 0L, 2000L) == []
+    }
+
+    def "access lookups by location and by grant use an index"() {
+
+        expect:
+            fullScans("SELECT * FROM access WHERE lid = ?", 42L) == []
+            fullScans("SELECT * FROM access WHERE uid = ? AND lid = ?", 7L, 42L) == []
+            fullScans("SELECT * FROM location WHERE uid = ? AND lid > ? ORDER BY lid LIMIT ?", 7L, 0L, 101) == []
+    }
+
+    def "delta sync reads the change log and the changed locations by index"() {
+
+        expect:
+            fullScans(SyncRepositoryImpl.CHANGES_SQL, 5_000_000L, 7L, 0L, 5_000_000L, 7L, 0L, 5_000_000L, 7L, 0L) == []
+            fullScans(SyncRepositoryImpl.SETTLED_VERSION_SQL, 5_000_000L) == []
+            fullScans(LocationRepositoryImpl.sharedLocationsSql(3), 7L, 61L, 62L, 63L, 7L, 61L, 62L, 63L) == []
+    }
+
+    def "the change log records a write once and a sync finds it for every user who can see the location"() {
+
+        given:
+            long owner = 1L
+            long grantee = 2L
+            long other = 3L
+            long start = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(version), 0) FROM location_change", Long)
+
+        when:
+            jdbcTemplate.update("INSERT INTO location (uid, name, address) VALUES (?, 'log', 'log')", owner)
+            long lid = jdbcTemplate.queryForObject("SELECT MAX(lid) FROM location", Long)
+            jdbcTemplate.update("INSERT INTO access (uid, lid, type) VALUES (?, ?, 'read')", grantee, lid)
+            jdbcTemplate.update("INSERT INTO access (uid, lid, type) VALUES (?, ?, 'read')", other, lid)
+            jdbcTemplate.update("UPDATE location SET name = 'renamed' WHERE lid = ?", lid)
+            jdbcTemplate.update("DELETE FROM access WHERE uid = ? AND lid = ?", other, lid)
+
+        then: "created and renamed for the owner, one row per grant written; the revoked user finds its own only"
+            logged(lid, start) == [(owner): 2, (grantee): 1, (other): 2]
+            changes(owner, start) == 5
+            changes(grantee, start) == 5
+            changes(other, start) == 2
+
+        when:
+            jdbcTemplate.update("DELETE FROM location WHERE lid = ?", lid)
+
+        then: "the grants go with the location, so its deletion is logged for the remaining grantee too"
+            logged(lid, start) == [(owner): 3, (grantee): 2, (other): 2]
+            changes(owner, start) == 3
+            changes(grantee, start) == 2
+            changes(other, start) == 2
+    }
+
+    def "duplicate grants are rejected"() {
+
+        given:
+            Map<String, Object> grant = jdbcTemplate.queryForMap("SELECT uid, lid FROM access LIMIT 1")
+
+        when:
+            jdbcTemplate.update("INSERT INTO access (uid, lid, type) VALUES (?, ?, 'read')", grant.uid, grant.lid)
+
+        then:
+            thrown(DuplicateKeyException)
+    }
+
+    /**
+     * Rows logged for the location after the version, counted by user.
+     */
+    private Map<Long, Integer> logged(long lid, long afterVersion) {
+
+        jdbcTemplate.queryForList("SELECT uid FROM location_change WHERE lid = ? AND version > ?", Long, lid,
+            afterVersion).countBy { it }
+    }
+
+    /**
+     * Rows a delta sync of the user reads after the version.
+     */
+    private int changes(long uid, long afterVersion) {
+
+        jdbcTemplate.queryForList(SyncRepositoryImpl.CHANGES_SQL, 0L, uid, afterVersion, 0L, uid, afterVersion, 0L,
+            uid, afterVersion).size()
+    }
+
+    /**
+     * Tables of the plan that are read with a full scan. Derived tables such as the union result are skipped.
+     */
+    private List<String> fullScans(String sql, Object... args) {
+
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, args)
+        plan.findAll { row -> row.type == "ALL" && row.table != null && !row.table.toString().startsWith("<") }
+            .collect { row -> row.table.toString() }
+    }
+
+    private void seed() {
+
+        jdbcTemplate.batchUpdate("INSERT INTO users (firstname, lastname, email, password) VALUES (?, ?, ?, ?)",
+            (1..USERS).collect { ["First", "Last", "user" + it + "@example.com", "password"] as Object[] })
+        jdbcTemplate.batchUpdate("INSERT INTO location (uid, name, address) VALUES (?, ?, ?)",
+            (1..USERS).collectMany { uid -> (1..LOCATIONS_PER_USER).collect { [uid, "name", "address"] as Object[] } })
+
+        int locations = USERS * LOCATIONS_PER_USER
+        Random random = new Random(42)
+        List<Object[]> grants = []
+        (1..USERS).each { uid ->
+            Set<Integer> lids = new HashSet<>()
+            while (lids.size() < GRANTS_PER_USER) {
+                lids << random.nextInt(locations) + 1
+            }
+            lids.each { lid -> grants << ([uid, lid, "read"] as Object[]) }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO access (uid, lid, type) VALUES (?, ?, ?)", grants)
+
+        jdbcTemplate.execute("ANALYZE TABLE users, location, access, location_change")
+    }
+}
@@ -0,0 +1,148 @@
+package location.repositories
+
+import ch.vorburger.mariadb4j.DB
+import ch.vorburger.mariadb4j.DBConfigurationBuilder
+import com.example.location.configuration.ExecutorProperties
+import com.example.location.configuration.JdbcExecutors
+import com.example.location.configuration.ReadReplica
+import com.example.location.configuration.ReplicaProperties
+import com.example.location.entities.Access
+import com.example.location.entities.Location
+import com.example.location.repositories.AccessRepositoryImpl
+import com.example.location.repositories.LocationRepositoryImpl
+import org.flywaydb.core.Flyway
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DriverManagerDataSource
+import spock.lang.Shared
+import spock.lang.Specification
+
+/**
+ * Two embedded databases stand in for a primary and its replica. They are not replicated, so the result of a query
+ * shows which of them it went to.
+ */
+class ReplicaRoutingTest extends Specification {
+
+    @Shared
+    DB db
+    @Shared
+    DBConfigurationBuilder config
+    @Shared
+    JdbcTemplate primary
+    @Shared
+    JdbcTemplate replica
+    @Shared
+    ReadReplica readReplica
+    @Shared
+    JdbcExecutors executors
+    @Shared
+    LocationRepositoryImpl locationRepository
+    @Shared
+    AccessRepositoryImpl accessRepository
+
+    def setupSpec() {
+
+        config = DBConfigurationBuilder.newBuilder()
+        config.setPort(0)
+        db = DB.newEmbeddedDB(config.build())
+        db.start()
+        primary = database("location_primary")
+        replica = database("location_replica")
+
+        readReplica = ReadReplica.create(new ReplicaProperties(url: config.getURL("location_replica"),
+            username: "root", password: ""), primary)
+        executors = new JdbcExecutors(new ExecutorProperties())
+        locationRepository = new LocationRepositoryImpl(primary, readReplica, executors)
+        accessRepository = new AccessRepositoryImpl(primary, readReplica, executors)
+
+        [primary, replica].each { template ->
+            template.update("INSERT INTO users (uid, firstname, lastname, email, password) VALUES " +
+                "(1, 'Owner', 'Test', 'owner@example.com', 'x'), (2, 'Guest', 'Test', 'guest@example.com', 'x')")
+        }
+        replica.update("INSERT INTO location (lid, uid, name, address) VALUES (10, 1, 'on replica', 'address')")
+        replica.update("INSERT INTO access (uid, lid, type) VALUES (2, 10, 'read')")
+        primary.update("INSERT INTO location (lid, uid, name, address) VALUES (20, 1, 'on primary', 'address')")
+    }
+
+    def cleanupSpec() {
+
+        executors?.shutdown()
+        readReplica?.destroy()
+        db?.stop()
+    }
+
+    def "the queries of the read endpoints go to the replica"() {
+
+        expect:
+            locationRepository.findAllByUid(1L, 0L, 10).join()*.name == ["on replica"]
+            locationRepository.findAllLocations(2L, 0L, 10).join()*.lid == [10L]
+            accessRepository.getUserAccessByLocationId(10L).join()*.email == ["guest@example.com"]
+            accessRepository.findAllByUid(2L).join()*.lid == [10L]
+    }
+
+    def "findById falls back to the primary for a location the replica does not have yet"() {
+
+        expect:
+            locationRepository.findById(10L).join().get().name == "on replica"
+            locationRepository.findById(20L).join().get().name == "on primary"
+            !locationRepository.findById(30L).join().present
+    }
+
+    def "writes, lookups deciding a write and authorization checks go to the primary"() {
+
+        when:
+            def saved = locationRepository.save(new Location(null, 1L, "saved", "address", null, null)).join()
+            accessRepository.save(new Access(null, 2L, 20L, "read")).join()
+
+        then:
+            primary.queryForObject("SELECT name FROM location WHERE lid = ?", String, saved.lid) == "saved"
+            replica.queryForList("SELECT lid FROM location WHERE lid = ?", Long, saved.lid).isEmpty()
+            locationRepository.findByUidAndLid(1L, 20L).join().present
+            accessRepository.findByUidAndLid(2L, 20L).join().present
+            accessRepository.findAllByLidAndUids(20L, [2L]).join()*.uid == [2L]
+            accessRepository.findAudienceByLid(20L).join() as Set == [1L, 2L] as Set
+    }
+
+    def "an export reads the replica on the export pool and stops when its consumer throws"() {
+
+        given:
+            replica.batchUpdate("INSERT INTO location (lid, uid, name, address) VALUES (?, 1, 'bulk', 'address')",
+                (100..1099).collect { [it] as Object[] })
+            def threads = [] as Set
+            def seen = 0
+
+        when:
+            def rows = locationRepository.streamAllLocations(1L, { threads << Thread.currentThread().name }).join()
+            def failure = locationRepository.streamAllLocations(1L, {
+                if (++seen == 10) {
+                    throw new IllegalStateException("client gone")
+                }
+            }).handle { count, ex -> ex.cause }.join()
+
+        then:
+            rows == 1001
+            threads.every { it.startsWith("jdbc-export-") }
+            failure instanceof IllegalStateException
+            seen == 10
+
+        cleanup:
+            replica.update("DELETE FROM location WHERE lid >= 100")
+    }
+
+    def "the replica refuses writes"() {
+
+        when:
+            readReplica.jdbcTemplate.update("DELETE FROM access")
+
+        then:
+            thrown(Exception)
+            replica.queryForObject("SELECT COUNT(*) FROM access", Integer) == 1
+    }
+
+    private JdbcTemplate database(String name) {
+
+        db.createDB(name)
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(config.getURL(name), "root", "")
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate()
+        return new JdbcTemplate(dataSource)
+    }
+}
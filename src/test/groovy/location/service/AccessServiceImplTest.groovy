@@ -1,11 +1,16 @@
 package location.service
 
+import com.example.location.component.AccessDecisionCache
+import com.example.location.component.ETagCache
 import com.example.location.component.HistoryEventPublisher
 import com.example.location.dto.AccessDTO
+import com.example.location.dto.ShareDTO
+import com.example.location.dto.ShareResult
 import com.example.location.dto.UserAccessDto
 import com.example.location.entities.Access
 import com.example.location.entities.User
 import com.example.location.repositories.AccessRepository
+import com.example.location.repositories.UpsertResult
 import com.example.location.repositories.UserRepository
 import com.example.location.services.AccessServiceImpl
 import com.example.location.util.NotFoundException
@@ -20,26 +25,107 @@ class AccessServiceImplTest extends Specification {
     UserRepository userRepository = Mock(UserRepository)
     HistoryEventPublisher historyEventPublisher = Mock(HistoryEventPublisher)
 
-    AccessServiceImpl accessService = new AccessServiceImpl(accessRepository, userRepository, historyEventPublisher)
+    AccessDecisionCache accessDecisionCache = Mock(AccessDecisionCache)
+    ETagCache etagCache = Mock(ETagCache)
 
-    def "saveAccess returns optional with aid 1"() {
+    AccessServiceImpl accessService = new AccessServiceImpl(accessRepository, userRepository, historyEventPublisher,
+        accessDecisionCache, etagCache)
+
+    def "saveAccess creates the grant with a single upsert"() {
 
         def shareMode = "admin"
         def email = "test@example.com"
         User user = new User(uid: 1L, email: email)
-        def lid = 1L, aid = 1L
+        def lid = 1L
         def dto = new AccessDTO(lid, email, shareMode)
-        def access = new Access(aid: null, uid: user.uid, lid: lid, type: shareMode)
+        def access = new Access(aid: 5L, uid: user.uid, lid: lid, type: shareMode)
 
         given:
-            accessRepository.save(_ as Access) >> CompletableFuture.completedFuture(access)
             userRepository.findByEmail(email) >> CompletableFuture.completedFuture(Optional.of(user))
-            accessRepository.findByUidAndLid(user.uid, lid) >> CompletableFuture.completedFuture(Optional.empty())
         when:
             def result = accessService.saveAccess(dto).join()
         then:
-            result == access
+            1 * accessRepository.upsert(new Access(null, user.uid, lid, shareMode)) >> { Access a ->
+                a.aid = 5L
+                CompletableFuture.completedFuture(UpsertResult.CREATED)
+            }
+            0 * accessRepository.findByUidAndLid(_, _)
+            0 * accessRepository.save(_)
+            result.access == access
+            result.status == ShareResult.Status.CREATED
             1 * historyEventPublisher.publishHistoryCreatedEvent(user.uid, Util.ObjectType.ACCESS, access)
+            1 * accessDecisionCache.invalidate(user.uid, lid)
+    }
+
+    def "saveAccess records the previous share mode when the grant is updated"() {
+
+        given:
+            def email = "test@example.com"
+            userRepository.findByEmail(email) >> CompletableFuture.completedFuture(Optional.of(new User(uid: 1L, email: email)))
+            accessRepository.upsert(_ as Access) >> { Access a ->
+                a.aid = 5L
+                CompletableFuture.completedFuture(UpsertResult.UPDATED)
+            }
+
+        when:
+            def result = accessService.saveAccess(new AccessDTO(2L, email, "read-only")).join()
+
+        then:
+            result.access == new Access(5L, 1L, 2L, "read-only")
+            result.status == ShareResult.Status.UPDATED
+            1 * historyEventPublisher.publishHistoryUpdatedEvent(1L, Util.ObjectType.ACCESS, new Access(5L, 1L, 2L, "admin"), result.access)
+            1 * accessDecisionCache.invalidate(1L, 2L)
+    }
+
+    def "saveAccess neither records history nor invalidates when nothing changed"() {
+
+        given:
+            def email = "test@example.com"
+            userRepository.findByEmail(email) >> CompletableFuture.completedFuture(Optional.of(new User(uid: 1L, email: email)))
+            accessRepository.upsert(_ as Access) >> { Access a ->
+                a.aid = 5L
+                CompletableFuture.completedFuture(UpsertResult.UNCHANGED)
+            }
+
+        when:
+            def result = accessService.saveAccess(new AccessDTO(2L, email, "admin")).join()
+
+        then: "the existing grant is returned as it is"
+            result.access == new Access(5L, 1L, 2L, "admin")
+            result.status == ShareResult.Status.UNCHANGED
+            0 * historyEventPublisher._
+            0 * accessDecisionCache._
+    }
+
+    def "saveAccesses resolves users and writes grants in one batch"() {
+
+        given:
+            def lid = 1L
+            def shares = [new ShareDTO("new@example.com", "admin"),
+                          new ShareDTO("Old@example.com", "read-only"),
+                          new ShareDTO("same@example.com", "admin"),
+                          new ShareDTO("missing@example.com", "admin"),
+                          new ShareDTO("bad@example.com", "owner")]
+            def users = [new User(uid: 2L, email: "new@example.com"),
+                         new User(uid: 3L, email: "old@example.com"),
+                         new User(uid: 4L, email: "same@example.com")]
+            def existing = [new Access(7L, 3L, lid, "admin"), new Access(8L, 4L, lid, "admin")]
+
+        when:
+            def result = accessService.saveAccesses(lid, shares).join()
+
+        then:
+            1 * userRepository.findAllByEmails(["new@example.com", "old@example.com", "same@example.com",
+                                                "missing@example.com"]) >> CompletableFuture.completedFuture(users)
+            1 * accessRepository.findAllByLidAndUids(lid, [2L, 3L, 4L]) >> CompletableFuture.completedFuture(existing)
+            1 * accessRepository.upsertAll([new Access(null, 2L, lid, "admin"), new Access(7L, 3L, lid, "read-only")]) >> CompletableFuture.completedFuture(null)
+            1 * historyEventPublisher.publishHistoryEvents({ it.size() == 2 })
+            1 * accessDecisionCache.invalidate(2L, lid)
+            1 * accessDecisionCache.invalidate(3L, lid)
+            0 * accessRepository.save(_)
+            result*.status == [ShareResult.Status.CREATED, ShareResult.Status.UPDATED, ShareResult.Status.UNCHANGED,
+                               ShareResult.Status.FAILED, ShareResult.Status.FAILED]
+            result*.error == [null, null, null, "User not found", "Invalid share mode"]
     }
 
     def "getUsersOnLocation should return list of UserAccessDto"() {
@@ -74,6 +160,21 @@ class AccessServiceImplTest extends Specification {
         then:
             result == true
             1 * historyEventPublisher.publishHistoryDeletedEvent(uid, Util.ObjectType.ACCESS, new Access(null, uid, lid, null))
+            1 * accessDecisionCache.invalidate(uid, lid)
+    }
+
+    def "delete should publish the grantee, not the owner, as the user of the deleted access"() {
+
+        given:
+            userRepository.findByEmail("grantee@example.com") >> CompletableFuture.completedFuture(
+                Optional.of(new User(uid: 2L)))
+            accessRepository.deleteByUidAndLid(2L, 10L) >> CompletableFuture.completedFuture(1)
+
+        when:
+            accessService.delete(1L, 10L, "grantee@example.com").join()
+
+        then:
+            1 * historyEventPublisher.publishHistoryDeletedEvent(1L, Util.ObjectType.ACCESS, new Access(null, 2L, 10L, null))
     }
 
     def "delete should return false when user doesn't exist"() {
@@ -113,6 +214,7 @@ class AccessServiceImplTest extends Specification {
         then:
             result == true
             1 * historyEventPublisher.publishHistoryUpdatedEvent(uid, Util.ObjectType.ACCESS, existingAccess, changedAccess)
+            1 * accessDecisionCache.invalidate(1L, lid)
     }
 
     def "change should return false when user doesn't exist"() {
@@ -0,0 +1,136 @@
+package location.service
+
+import com.example.location.component.UserCache
+import com.example.location.configuration.CacheProperties
+import com.example.location.entities.User
+import com.example.location.repositories.CachingUserRepository
+import com.example.location.repositories.UserRepository
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class CachingUserRepositoryTest extends Specification {
+
+    UserRepository delegate = Mock(UserRepository)
+    UserCache userCache = new UserCache(new CacheProperties())
+
+    CachingUserRepository repository = new CachingUserRepository(delegate, userCache)
+
+    def user(Long uid, String email) {
+
+        new User(uid, "First", "Last", email, "hash")
+    }
+
+    def "a user found by email is served from the cache by email and uid, without the password"() {
+
+        when:
+            def first = repository.findByEmail("a@b.c").join()
+            def second = repository.findByEmail("a@b.c").join()
+            def byId = repository.findById(7L).join()
+
+        then:
+            1 * delegate.findByEmail("a@b.c") >> CompletableFuture.completedFuture(Optional.of(user(7L, "a@b.c")))
+            0 * delegate.findById(_)
+            first.get().password == "hash"
+            second.get().uid == 7L
+            second.get().password == null
+            byId.get().email == "a@b.c"
+            userCache.hitCount == 2
+    }
+
+    def "callers get copies of the cached user"() {
+
+        given:
+            delegate.findById(7L) >> CompletableFuture.completedFuture(Optional.of(user(7L, "a@b.c")))
+            repository.findById(7L).join()
+
+        when:
+            repository.findById(7L).join().get().email = "changed@b.c"
+
+        then:
+            repository.findById(7L).join().get().email == "a@b.c"
+    }
+
+    def "an email belonging to nobody is remembered until a user registers with it"() {
+
+        when:
+            def missing = repository.findByEmail("new@b.c").join()
+            def again = repository.findByEmail("new@b.c").join()
+
+        then:
+            1 * delegate.findByEmail("new@b.c") >> CompletableFuture.completedFuture(Optional.empty())
+            !missing.present
+            !again.present
+
+        when:
+            repository.save(user(null, "new@b.c")).join()
+            def registered = repository.findByEmail("new@b.c").join()
+
+        then:
+            1 * delegate.save(_) >> { User saved -> saved.uid = 8L; CompletableFuture.completedFuture(saved) }
+            1 * delegate.findByEmail("new@b.c") >> CompletableFuture.completedFuture(Optional.of(user(8L, "new@b.c")))
+            registered.get().uid == 8L
+    }
+
+    def "deleting a user drops it under both keys"() {
+
+        given:
+            delegate.findByEmail("a@b.c") >> CompletableFuture.completedFuture(Optional.of(user(7L, "a@b.c")))
+            repository.findByEmail("a@b.c").join()
+
+        when:
+            repository.deleteById(7L).join()
+            repository.findById(7L).join()
+            repository.findByEmail("a@b.c").join()
+
+        then:
+            1 * delegate.deleteById(7L) >> CompletableFuture.completedFuture(true)
+            1 * delegate.findById(7L) >> CompletableFuture.completedFuture(Optional.empty())
+            1 * delegate.findByEmail("a@b.c") >> CompletableFuture.completedFuture(Optional.empty())
+    }
+
+    def "findAllByEmails queries only the emails not cached and remembers the missing ones"() {
+
+        given:
+            delegate.findByEmail("a@b.c") >> CompletableFuture.completedFuture(Optional.of(user(7L, "a@b.c")))
+            repository.findByEmail("a@b.c").join()
+
+        when:
+            def users = repository.findAllByEmails(["a@b.c", "D@b.c", "x@b.c"]).join()
+            def again = repository.findAllByEmails(["x@b.c"]).join()
+
+        then: "the database matched D@b.c in another case, so it is not missing"
+            1 * delegate.findAllByEmails(["D@b.c", "x@b.c"]) >>
+                CompletableFuture.completedFuture([user(9L, "d@b.c")])
+            users*.uid == [7L, 9L]
+            again.isEmpty()
+    }
+
+    def "a lookup started before an invalidation is not cached"() {
+
+        given:
+            def pending = new CompletableFuture<Optional<User>>()
+            delegate.findById(7L) >>> [pending, CompletableFuture.completedFuture(Optional.empty())]
+
+        when:
+            def result = repository.findById(7L)
+            userCache.invalidateUser(7L)
+            pending.complete(Optional.of(user(7L, "a@b.c")))
+
+        then:
+            result.join().present
+            !repository.findById(7L).join().present
+    }
+
+    def "logins and password updates always reach the database"() {
+
+        when:
+            repository.findByEmailForLogin("a@b.c").join()
+            repository.findByEmailForLogin("a@b.c").join()
+            repository.updatePassword(7L, "old", "new").join()
+
+        then:
+            2 * delegate.findByEmailForLogin("a@b.c") >> CompletableFuture.completedFuture(Optional.empty())
+            1 * delegate.updatePassword(7L, "old", "new") >> CompletableFuture.completedFuture(true)
+    }
+}
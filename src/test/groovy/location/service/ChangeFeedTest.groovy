@@ -0,0 +1,145 @@
+package location.service
+
+import com.example.location.component.ChangeFeed
+import com.example.location.component.HistoryEvent
+import com.example.location.configuration.FeedProperties
+import com.example.location.entities.Access
+import com.example.location.entities.Location
+import com.example.location.repositories.AccessRepository
+import com.example.location.util.Util
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.RejectedExecutionException
+
+class ChangeFeedTest extends Specification {
+
+    AccessRepository accessRepository = Mock(AccessRepository)
+
+    ChangeFeed changeFeed = new ChangeFeed(accessRepository, new FeedProperties(maxSubscribers: 5,
+        maxSubscribersPerUser: 2), 8192)
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def cleanup() {
+
+        changeFeed.destroy()
+    }
+
+    def "an access change should reach the owner, the grantees and the revoked grantee only"() {
+
+        given:
+            [1L, 2L, 3L, 4L].each { changeFeed.subscribe(it) }
+
+        when:
+            changeFeed.handleObjectEvent(new HistoryEvent(1L, Util.ObjectType.ACCESS, Util.ActionType.DELETED, null,
+                new Access(null, 4L, 10L, null), System.currentTimeMillis()))
+
+        then:
+            1 * accessRepository.findAudienceByLid(10L) >> CompletableFuture.completedFuture([1L, 2L])
+            conditions.eventually {
+                assert changeFeed.sentCount == 3
+            }
+    }
+
+    def "a new location should go to its owner without a lookup"() {
+
+        given:
+            changeFeed.subscribe(7L)
+            changeFeed.subscribe(8L)
+
+        when:
+            changeFeed.handleObjectEvent(new HistoryEvent(7L, Util.ObjectType.LOCATION, Util.ActionType.CREATED, null,
+                new Location(lid: 10L, uid: 7L, name: "name", address: "address"), System.currentTimeMillis()))
+
+        then:
+            0 * accessRepository.findAudienceByLid(_)
+            conditions.eventually {
+                assert changeFeed.sentCount == 1
+            }
+    }
+
+    def "nothing should be looked up without subscribers"() {
+
+        when:
+            changeFeed.handleObjectEvent(new HistoryEvent(1L, Util.ObjectType.ACCESS, Util.ActionType.CREATED, null,
+                new Access(null, 4L, 10L, "read-only"), System.currentTimeMillis()))
+
+        then:
+            0 * accessRepository.findAudienceByLid(_)
+    }
+
+    def "a subscription should keep the latest change per location and resync on overflow"() {
+
+        given:
+            def subscription = new ChangeFeed.Subscription(1L, new SseEmitter())
+
+        when:
+            def first = subscription.offer([change("created", 10L), change("updated", 11L)], 2)
+            def second = subscription.offer([change("deleted", 10L)], 2)
+            def pending = subscription.take()
+
+        then:
+            first
+            !second
+            pending.changes*.lid == [11L, 10L]
+            pending.changes*.action == ["updated", "deleted"]
+
+        when:
+            subscription.offer([change("created", 1L), change("created", 2L), change("created", 3L)], 2)
+            pending = subscription.take()
+
+        then:
+            pending.resync
+            pending.changes.isEmpty()
+            subscription.take() == null
+    }
+
+    def "a heartbeat sweep reaches every idle subscriber even with more of them than the queue holds"() {
+
+        given:
+            def feed = new ChangeFeed(accessRepository, new FeedProperties(maxSubscribers: 2000, threads: 1,
+                queueCapacity: 2, heartbeatInterval: Duration.ZERO), 8192)
+            (1L..1200L).each { feed.subscribe(it) }
+
+        when:
+            feed.heartbeat()
+
+        then:
+            conditions.eventually {
+                assert feed.heartbeatCount == 1200
+            }
+
+        cleanup:
+            feed.destroy()
+    }
+
+    def "subscriptions should be limited per user and per node"() {
+
+        when:
+            changeFeed.subscribe(1L)
+            changeFeed.subscribe(1L)
+            changeFeed.subscribe(1L)
+
+        then:
+            changeFeed.subscriberCount == 2
+
+        when:
+            changeFeed.subscribe(2L)
+            changeFeed.subscribe(3L)
+            changeFeed.subscribe(4L)
+            changeFeed.subscribe(5L)
+
+        then:
+            thrown(RejectedExecutionException)
+            changeFeed.subscriberCount == 5
+    }
+
+    private static change(String action, Long lid) {
+
+        ChangeFeed.change(Util.ObjectType.LOCATION, Util.ActionType.valueOf(action.toUpperCase()), lid)
+    }
+}
@@ -0,0 +1,96 @@
+package location.service
+
+import com.example.location.component.ETagCache
+import com.example.location.configuration.CacheProperties
+import com.example.location.dto.CursorPage
+import com.example.location.dto.SharedLocation
+import com.example.location.entities.Location
+import spock.lang.Specification
+
+class ETagCacheTest extends Specification {
+
+    ETagCache etagCache = new ETagCache(new CacheProperties())
+
+    def page(Long... lids) {
+
+        new CursorPage<SharedLocation>(lids.collect { new SharedLocation(it, "a@b.c", "name", "address", "owner") },
+            null)
+    }
+
+    def "tags change with the content and not otherwise"() {
+
+        given:
+            def location = new Location(1L, 7L, "name", "address", 1.5d, 2.5d)
+
+        expect:
+            etagCache.putLocation(location, etagCache.generation()) ==
+                etagCache.putLocation(new Location(1L, 7L, "name", "address", 1.5d, 2.5d), etagCache.generation())
+            etagCache.putLocation(location, etagCache.generation()) !=
+                etagCache.putLocation(new Location(1L, 7L, "name2", "address", 1.5d, 2.5d), etagCache.generation())
+            etagCache.putLocation(new Location(1L, 7L, "ab", "c", null, null), etagCache.generation()) !=
+                etagCache.putLocation(new Location(1L, 7L, "a", "bc", null, null), etagCache.generation())
+    }
+
+    def "a tag computed before an invalidation is not cached"() {
+
+        given:
+            def generation = etagCache.generation()
+            etagCache.invalidateLocation(1L)
+
+        when:
+            etagCache.putLocation(new Location(1L, 7L, "name", "address", null, null), generation)
+
+        then:
+            etagCache.getLocation(1L) == null
+    }
+
+    def "invalidateLocation drops the location and the pages showing it"() {
+
+        given:
+            def tag = etagCache.putLocation(new Location(2L, 7L, "name", "address", null, null), 0L)
+            etagCache.putPage(7L, null, null, page(1L, 2L, 3L), 0L)
+            etagCache.putPage(8L, null, null, page(4L), 0L)
+
+        when:
+            etagCache.invalidateLocation(2L)
+
+        then:
+            tag != null
+            etagCache.getLocation(2L) == null
+            etagCache.getPage(7L, null, null) == null
+            etagCache.getPage(8L, null, null) != null
+    }
+
+    def "invalidateAccess drops the pages showing the location and every page of the grantee"() {
+
+        given:
+            etagCache.putLocation(new Location(2L, 7L, "name", "address", null, null), 0L)
+            etagCache.putPage(7L, null, null, page(2L), 0L)
+            etagCache.putPage(8L, null, 10, page(5L), 0L)
+            etagCache.putPage(9L, null, null, page(5L), 0L)
+
+        when:
+            etagCache.invalidateAccess(8L, 2L)
+
+        then: "the location itself does not show its grants"
+            etagCache.getLocation(2L) != null
+            etagCache.getPage(7L, null, null) == null
+            etagCache.getPage(8L, null, 10) == null
+            etagCache.getPage(9L, null, null) != null
+    }
+
+    def "If-None-Match matches a listed, weak or wildcard tag"() {
+
+        expect:
+            ETagCache.matches(header, '"abc"') == matches
+
+        where:
+            header              | matches
+            null                | false
+            '"abc"'             | true
+            '"x", "abc"'        | true
+            'W/"abc"'           | true
+            '*'                 | true
+            '"abd"'             | false
+    }
+}
@@ -4,32 +4,24 @@ package location.service
 import com.example.location.entities.Access
 import com.example.location.entities.Location
 import com.example.location.entities.User
-import com.example.location.repositories.HistoryRepository
-import com.example.location.repositories.HistoryRepositoryImpl
-import com.example.location.services.HistoryService
 import com.fasterxml.jackson.databind.ObjectMapper
-import org.spockframework.spring.SpringBean
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.context.SpringBootTest
-import org.springframework.jdbc.core.JdbcTemplate
 import org.springframework.test.context.event.ApplicationEvents
 import org.springframework.test.context.event.RecordApplicationEvents
 import spock.lang.Specification
-import org.springframework.context.ApplicationEventPublisher
+import com.example.location.component.HistoryEvent
 import com.example.location.component.HistoryEventPublisher
+import com.example.location.component.HistorySerializer
 import com.example.location.entities.History
 import com.example.location.util.Util
 import spock.lang.Unroll
 
-import java.util.concurrent.CompletableFuture
 
-
-@SpringBootTest(classes = [HistoryEventPublisher.class, ObjectMapper.class, HistoryRepositoryImpl.class, HistoryService.class, JdbcTemplate.class, ApplicationEvents.class])
+@SpringBootTest(classes = [HistoryEventPublisher.class, HistorySerializer.class, ObjectMapper.class])
 @RecordApplicationEvents
 class HistoryEventPublisherTest extends Specification {
 
-    @Autowired
-    ApplicationEventPublisher eventPublisher
     @Autowired
     ObjectMapper objectMapper
     @Autowired
@@ -37,16 +29,17 @@ class HistoryEventPublisherTest extends Specification {
     @Autowired
     HistoryEventPublisher historyEventPublisher
     @Autowired
-    HistoryService historyService
-    @SpringBean
-    HistoryRepository historyRepository = Mock()
-    @SpringBean
-    JdbcTemplate jdbcTemplate = Mock()
+    HistorySerializer historySerializer
+
+    def publishedHistory() {
+
+        def events = applicationEvents.stream(HistoryEvent).collect()
+        return events.size() == 1 ? historySerializer.toHistory(events[0]) : null
+    }
 
     @Unroll
     def "test publishHistoryCreatedEvent with #objectType"() {
         given:
-        History history = null
         def object = eventObject
         def expectedObjectType = Util.ObjectType.valueOf(objectType)
         def expectedAction = Util.ActionType.CREATED.name()
@@ -56,12 +49,7 @@ class HistoryEventPublisherTest extends Specification {
         historyEventPublisher.publishHistoryCreatedEvent(expectedActionBy, expectedObjectType, object)
 
         then:
-        1 * historyRepository.save(_) >> { arg ->
-            history = arg[0] as History
-            CompletableFuture.completedFuture(arg[0])
-        }
-
-        and:
+        History history = publishedHistory()
         history != null
         history.getAction() == expectedAction
         history.getObjectType() == expectedObjectType.name()
@@ -78,7 +66,6 @@ class HistoryEventPublisherTest extends Specification {
     @Unroll
     def "test publishHistoryDeletedEvent with #objectType"() {
         given:
-        History history = null
         def object = eventObject
         def expectedObjectType = Util.ObjectType.valueOf(objectType)
         def expectedAction = Util.ActionType.DELETED.name()
@@ -88,12 +75,7 @@ class HistoryEventPublisherTest extends Specification {
         historyEventPublisher.publishHistoryDeletedEvent(expectedActionBy, expectedObjectType, object)
 
         then:
-        1 * historyRepository.save(_) >> { arg ->
-            history = arg[0] as History
-            CompletableFuture.completedFuture(arg[0])
-        }
-
-        and:
+        History history = publishedHistory()
         history != null
         history.getAction() == expectedAction
         history.getObjectType() == expectedObjectType.name()
@@ -110,7 +92,6 @@ class HistoryEventPublisherTest extends Specification {
     @Unroll
     def "test publishHistoryUpdatedEvent with #objectType"() {
         given:
-        History history = null
         def expectedObjectType = Util.ObjectType.valueOf(objectType)
         def expectedAction = Util.ActionType.UPDATED.name()
         def expectedActionBy = 123L
@@ -119,12 +100,7 @@ class HistoryEventPublisherTest extends Specification {
         historyEventPublisher.publishHistoryUpdatedEvent(expectedActionBy, expectedObjectType, oldObject, newObject)
 
         then:
-        1 * historyRepository.save(_) >> { arg ->
-            history = arg[0] as History
-            CompletableFuture.completedFuture(arg[0])
-        }
-
-        and:
+        History history = publishedHistory()
         history != null
         history.getAction() == expectedAction
         history.getObjectType() == expectedObjectType.name()
@@ -137,4 +113,22 @@ class HistoryEventPublisherTest extends Specification {
         "ACCESS"   | new Access(uid: 123L, lid: 123L, type: "test")                        | new Access(uid: 123L, lid: 123L, type: "test2")
 
     }
+
+    def "updated event should keep the old state even if the object changes after publishing"() {
+
+        given:
+        def access = new Access(aid: 1L, uid: 123L, lid: 123L, type: "read-only")
+        def old = new Access(aid: 1L, uid: 123L, lid: 123L, type: "read-only")
+        def changed = new Access(aid: 1L, uid: 123L, lid: 123L, type: "admin")
+
+        when:
+        historyEventPublisher.publishHistoryUpdatedEvent(123L, Util.ObjectType.ACCESS, access, changed)
+        access.type = "admin"
+        changed.type = "read-only"
+
+        then:
+        History history = publishedHistory()
+        history.getActionDetails() == objectMapper.writeValueAsString(old) + " -> " +
+            objectMapper.writeValueAsString(new Access(aid: 1L, uid: 123L, lid: 123L, type: "admin"))
+    }
 }
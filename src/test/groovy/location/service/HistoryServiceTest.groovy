@@ -1,11 +1,21 @@
 package location.service
 
+import com.example.location.component.HistoryEvent
+import com.example.location.component.HistoryEventBatch
+import com.example.location.component.HistoryWriter
+import com.example.location.dto.HistoryQuery
 import com.example.location.entities.History
+import com.example.location.entities.Location
 import com.example.location.repositories.HistoryRepository
+import com.example.location.util.BadRequestException
+import com.example.location.util.Cursor
+import com.example.location.util.Util
 import com.example.location.services.HistoryService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import spock.lang.Specification
 import spock.lang.Subject
 
+import java.sql.Timestamp
 import java.util.concurrent.CompletableFuture
 
 class HistoryServiceTest extends Specification {
@@ -13,22 +23,75 @@ class HistoryServiceTest extends Specification {
     @Subject
     HistoryService historyService
 
+    HistoryWriter historyWriter = Mock(HistoryWriter)
     HistoryRepository historyRepository = Mock(HistoryRepository)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
 
     def setup() {
 
-        historyService = new HistoryService(historyRepository)
+        historyService = new HistoryService(historyWriter, historyRepository, meterRegistry)
     }
 
     def "test handleObjectEvent"() {
 
         given:
-            History historyEvent = new History(hid: 123, actionBy: 456, objectType: "Object", action: "CREATE", actionDetails: "Details", date: new java.sql.Timestamp(System.currentTimeMillis()))
+            HistoryEvent historyEvent = new HistoryEvent(456L, Util.ObjectType.LOCATION, Util.ActionType.CREATED, null, new Location(lid: 1L), System.currentTimeMillis())
 
         when:
             historyService.handleObjectEvent(historyEvent)
 
         then:
-            1 * historyRepository.save(historyEvent) >> CompletableFuture.completedFuture(historyEvent)
+            1 * historyWriter.enqueue(historyEvent) >> true
+            meterRegistry.get("history.events").tag("outcome", "queued").counter().count() == 1
+    }
+
+    def "test handleObjectEvents enqueues every event of a batch"() {
+
+        given:
+            def events = (1..3).collect { new HistoryEvent(456L, Util.ObjectType.ACCESS, Util.ActionType.CREATED, null, new Location(lid: it as Long), 0L) }
+
+        when:
+            historyService.handleObjectEvents(new HistoryEventBatch(events))
+
+        then:
+            3 * historyWriter.enqueue(_ as HistoryEvent) >> true
+    }
+
+    def "findHistory returns a cursor to the next page when more rows exist"() {
+
+        given:
+            List<History> rows = (0..3).collect { new History(hid: 10L - it, actionBy: 1L, date: new Timestamp(1_000_000L - it * 1000L)) }
+
+        when:
+            def page = historyService.findHistory(1L, null, null, null, null, 3).join()
+
+        then:
+            1 * historyRepository.findPage({ HistoryQuery q -> q.limit == 4 && q.actionBy == 1L && q.afterHid == null }) >> CompletableFuture.completedFuture(rows)
+            page.items*.hid == [10L, 9L, 8L]
+            Cursor.decode(page.next, 2) == [998_000L, 8L] as long[]
+    }
+
+    def "findHistory continues after the cursor and stops on the last page"() {
+
+        given:
+            String cursor = Cursor.encode(998_000L, 8L)
+
+        when:
+            def page = historyService.findHistory(1L, "LOCATION", null, null, cursor, 3).join()
+
+        then:
+            1 * historyRepository.findPage({ HistoryQuery q -> q.afterDate.time == 998_000L && q.afterHid == 8L && q.objectType == "LOCATION" }) >> CompletableFuture.completedFuture([new History(hid: 7L)])
+            page.items*.hid == [7L]
+            page.next == null
+    }
+
+    def "findHistory rejects a malformed cursor"() {
+
+        when:
+            historyService.findHistory(1L, null, null, null, "not-a-cursor", null)
+
+        then:
+            thrown(BadRequestException)
+            0 * historyRepository.findPage(_)
     }
 }
@@ -0,0 +1,107 @@
+package location.service
+
+import com.example.location.component.HistoryEvent
+import com.example.location.component.HistorySerializer
+import com.example.location.component.HistoryWriter
+import com.example.location.configuration.HistoryProperties
+import com.example.location.entities.History
+import com.example.location.entities.Location
+import com.example.location.repositories.HistoryRepository
+import com.example.location.util.Util
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+
+class HistoryWriterTest extends Specification {
+
+    HistoryRepository historyRepository = Mock(HistoryRepository)
+
+    HistoryProperties properties = new HistoryProperties(queueCapacity: 3, batchSize: 2,
+        flushInterval: Duration.ofMillis(50), shutdownTimeout: Duration.ofSeconds(5))
+
+    HistorySerializer historySerializer = new HistorySerializer(new ObjectMapper())
+
+    def history(long actionBy) {
+
+        new HistoryEvent(actionBy, Util.ObjectType.LOCATION, Util.ActionType.CREATED, null,
+            new Location(lid: actionBy, name: "name", address: "address"), System.currentTimeMillis())
+    }
+
+    def "writer should save queued events in batches and drain on stop"() {
+
+        given:
+            def batches = new CopyOnWriteArrayList<List<History>>()
+            historyRepository.saveAll(_) >> { List<History> batch ->
+                batches.add(batch)
+                CompletableFuture.completedFuture(batch.size())
+            }
+            def writer = new HistoryWriter(historyRepository, historySerializer, properties)
+
+        when:
+            (1..3).each { writer.enqueue(history(it)) }
+            writer.start()
+            writer.stop()
+
+        then:
+            batches*.size().sum() == 3
+            batches.every { it.size() <= 2 }
+            batches.flatten()*.actionDetails.first() ==
+                '{"lid":1,"uid":null,"name":"name","address":"address","latitude":null,"longitude":null}'
+            writer.writtenCount == 3
+            writer.queueDepth == 0
+    }
+
+    def "enqueue should drop the newest event when the queue is full"() {
+
+        given:
+            def writer = new HistoryWriter(historyRepository, historySerializer, properties)
+
+        when:
+            def accepted = (1..4).collect { writer.enqueue(history(it)) }
+
+        then:
+            accepted == [true, true, true, false]
+            writer.droppedCount == 1
+            writer.queueDepth == 3
+    }
+
+    def "enqueue should evict the oldest event under DROP_OLDEST"() {
+
+        given:
+            properties.overflowPolicy = HistoryProperties.OverflowPolicy.DROP_OLDEST
+            def saved = new CopyOnWriteArrayList<History>()
+            historyRepository.saveAll(_) >> { List<History> batch ->
+                saved.addAll(batch)
+                CompletableFuture.completedFuture(batch.size())
+            }
+            def writer = new HistoryWriter(historyRepository, historySerializer, properties)
+
+        when:
+            (1..4).each { writer.enqueue(history(it)) }
+            writer.start()
+            writer.stop()
+
+        then:
+            writer.droppedCount == 1
+            saved*.actionBy == [2L, 3L, 4L]
+    }
+
+    def "a failing batch should be counted and not stop the writer"() {
+
+        given:
+            historyRepository.saveAll(_) >> { throw new IllegalStateException("db down") }
+            def writer = new HistoryWriter(historyRepository, historySerializer, properties)
+
+        when:
+            writer.enqueue(history(1))
+            writer.start()
+            writer.stop()
+
+        then:
+            writer.failedCount == 1
+            writer.flushCount == 1
+    }
+}
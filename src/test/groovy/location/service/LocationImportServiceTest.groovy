@@ -0,0 +1,210 @@
+package location.service
+
+import com.example.location.component.AccessDecisionCache
+import com.example.location.component.ChangeFeed
+import com.example.location.component.ETagCache
+import com.example.location.component.HistoryEventPublisher
+import com.example.location.component.HistoryWriter
+import com.example.location.component.LocationIndex
+import com.example.location.configuration.ImportProperties
+import com.example.location.controllers.ExceptionHandlerAdvice
+import com.example.location.entities.Location
+import com.example.location.entities.User
+import com.example.location.repositories.LocationRepository
+import com.example.location.repositories.UserRepository
+import com.example.location.services.LocationImportService
+import com.example.location.util.BadRequestException
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class LocationImportServiceTest extends Specification {
+
+    LocationRepository locationRepository = Mock(LocationRepository)
+    UserRepository userRepository = Stub(UserRepository) {
+        findById(1L) >> CompletableFuture.completedFuture(Optional.of(new User(uid: 1L)))
+    }
+    HistoryEventPublisher historyEventPublisher = Mock(HistoryEventPublisher)
+    HistoryWriter historyWriter = Mock(HistoryWriter)
+    AccessDecisionCache accessDecisionCache = Mock(AccessDecisionCache)
+    ETagCache etagCache = Mock(ETagCache)
+    LocationIndex locationIndex = Mock(LocationIndex)
+    ChangeFeed changeFeed = Mock(ChangeFeed)
+    ImportProperties properties = new ImportProperties(batchSize: 2)
+
+    LocationImportService importService = new LocationImportService(locationRepository, userRepository,
+        historyEventPublisher, historyWriter, accessDecisionCache, etagCache, locationIndex, changeFeed, properties,
+        new ObjectMapper())
+
+    long nextLid = 100
+
+    def cleanup() {
+
+        importService.destroy()
+    }
+
+    def "CSV rows are written in batches and invalid rows are reported"() {
+
+        given:
+            def csv = "name,address\n" +
+                "Home,Street 1\n" +
+                "Office,Street 2\n" +
+                ",Street 3\n" +
+                "Gym,Street 4\n" +
+                "Park,\"Street 5, corner\"\n" +
+                "Shop,Street 6\n"
+
+        when:
+            def report = importService.importLocations(1L, stream(csv), new MediaType("text", "csv")).join()
+
+        then:
+            3 * locationRepository.saveAll(_) >> { List<Location> batch -> saved(batch) }
+            5 * historyWriter.enqueue(_, Duration.ofSeconds(30)) >> true
+            5 * accessDecisionCache.invalidate(1L, _)
+            report.imported == 5
+            report.failed == 1
+            report.complete
+            report.errors*.row == [3L]
+            report.errors*.message == ["Name and address are required"]
+    }
+
+    def "a failed batch is reported and the import goes on"() {
+
+        given:
+            def ndjson = (1..4).collect { "{\"name\": \"Place $it\", \"address\": \"Street $it\"}" }.join("\n")
+            locationRepository.saveAll(_) >>> [failed(new IllegalStateException("deadlock")), saved([new Location(1L, "a", "b"), new Location(1L, "c", "d")])]
+
+        when:
+            def report = importService.importLocations(1L, stream(ndjson), MediaType.APPLICATION_NDJSON).join()
+
+        then:
+            report.imported == 2
+            report.failed == 2
+            report.errors*.row == [2L]
+    }
+
+    def "malformed NDJSON stops the import but keeps what was already saved"() {
+
+        given:
+            def ndjson = "{\"name\": \"Home\", \"address\": \"Street 1\"}\n{\"name\": \"Office\", \"address\n"
+            locationRepository.saveAll(_) >> { List<Location> batch -> saved(batch) }
+
+        when:
+            def report = importService.importLocations(1L, stream(ndjson), MediaType.APPLICATION_NDJSON).join()
+
+        then:
+            report.imported == 1
+            !report.complete
+            report.errors.size() == 1
+    }
+
+    def "only CSV and NDJSON uploads are accepted"() {
+
+        when:
+            importService.importLocations(1L, stream(""), MediaType.APPLICATION_XML)
+
+        then:
+            thrown(BadRequestException)
+    }
+
+    def "a saturated importer fails the upload with 503 instead of hanging"() {
+
+        given: "every import thread and queue slot taken by an upload that blocks"
+            def release = new CountDownLatch(1)
+            def busy = (1..properties.threads + properties.queueCapacity).collect {
+                importService.importLocations(1L, blocking(release), MediaType.APPLICATION_NDJSON)
+            }
+            def lookup = new CompletableFuture<Optional<User>>()
+            userRepository.findById(2L) >> lookup
+
+        when: "the user lookup completes after the call, so the import is submitted by the completing thread"
+            def upload = importService.importLocations(2L, stream(""), MediaType.APPLICATION_NDJSON)
+            lookup.complete(Optional.of(new User(uid: 2L)))
+            def failure = upload.handle { report, ex -> ex }.join()
+
+        then:
+            upload.isCompletedExceptionally()
+            new ExceptionHandlerAdvice().handleException(failure).statusCode == HttpStatus.SERVICE_UNAVAILABLE
+
+        cleanup:
+            release.countDown()
+            busy*.join()
+    }
+
+    def "cancelling the import, as a timed-out request does, stops it reading the upload"() {
+
+        given: "an endless upload that waits after a few rows until the import is cancelled"
+            def line = '{"name":"n","address":"a"}\n'.getBytes(StandardCharsets.UTF_8)
+            def reading = new CountDownLatch(1)
+            def cancelled = new CountDownLatch(1)
+            def closed = new CountDownLatch(1)
+            def body = new InputStream() {
+
+                long position
+
+                @Override
+                int read() {
+
+                    if (position == line.length * 5L) {
+                        reading.countDown()
+                        cancelled.await()
+                    }
+                    return line[(int) (position++ % line.length)]
+                }
+
+                @Override
+                void close() {
+
+                    closed.countDown()
+                }
+            }
+
+        when:
+            def upload = importService.importLocations(1L, body, MediaType.APPLICATION_NDJSON)
+            reading.await(5, TimeUnit.SECONDS)
+            upload.cancel(false)
+            cancelled.countDown()
+
+        then:
+            closed.await(5, TimeUnit.SECONDS)
+            upload.isCancelled()
+            0 * locationRepository.saveAll(_)
+    }
+
+    private CompletableFuture<List<Location>> saved(List<Location> batch) {
+
+        batch.each { it.lid = nextLid++ }
+        CompletableFuture.completedFuture(batch)
+    }
+
+    private static CompletableFuture<List<Location>> failed(Throwable ex) {
+
+        def future = new CompletableFuture<List<Location>>()
+        future.completeExceptionally(ex)
+        future
+    }
+
+    private static InputStream stream(String content) {
+
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))
+    }
+
+    private static InputStream blocking(CountDownLatch release) {
+
+        new InputStream() {
+
+            int read() {
+
+                release.await()
+                return -1
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package location.service
+
+import com.example.location.component.LocationIndex
+import com.example.location.configuration.NearbyProperties
+import com.example.location.entities.Location
+import com.example.location.repositories.LocationRepository
+import org.springframework.boot.actuate.health.Status
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.function.Consumer
+
+class LocationIndexTest extends Specification {
+
+    LocationIndex index = new LocationIndex(Stub(LocationRepository), new NearbyProperties(cellDegrees: 0.01))
+
+    def "nearest returns matches within the radius, nearest first"() {
+
+        given:
+            index.put(location(1L, 43.2500, 76.9500))
+            index.put(location(2L, 43.2400, 76.9500))
+            index.put(location(3L, 43.2300, 76.9500))
+            index.put(location(4L, 44.0000, 76.9500))
+
+        when:
+            def matches = index.nearest(43.2380, 76.9500, 2500, 10, { true })
+
+        then:
+            matches*.location*.lid == [2L, 3L, 1L]
+            matches*.distance == matches*.distance.sort()
+    }
+
+    def "nearest finds the k closest across many cells and applies the filter"() {
+
+        given:
+            def latitude = { int i -> 43.0 + (i % 20) * 0.013 }
+            def longitude = { int i -> 76.0 + i.intdiv(20) * 0.017 }
+            (1..400).each { int i -> index.put(location(i as Long, latitude(i), longitude(i))) }
+
+        when:
+            def matches = index.nearest(43.1, 76.15, 100_000, 5, { it.lid % 2 == 0 })
+
+        then:
+            def expected = (1..400).findAll { it % 2 == 0 }
+                .collect { int i -> [i, LocationIndex.distance(43.1, 76.15, latitude(i), longitude(i))] }
+                .sort { it[1] }
+                .take(5)*.getAt(0)
+            matches*.location*.lid == expected
+    }
+
+    def "nearest wraps around the antimeridian"() {
+
+        given:
+            index.put(location(1L, 0.0, 179.999))
+
+        expect:
+            index.nearest(0.0, -179.999, 1000, 1, { true })*.location*.lid == [1L]
+    }
+
+    def "removed locations, owners and locations without coordinates are dropped"() {
+
+        given:
+            index.put(location(1L, 43.25, 76.95))
+            index.put(location(2L, 43.25, 76.95))
+            index.put(new Location(3L, 8L, "n", "a", 43.25, 76.95))
+
+        when:
+            index.remove(1L)
+            index.put(new Location(2L, 7L, "n", "a"))
+            index.removeOwner(8L)
+
+        then:
+            index.size() == 0
+            index.nearest(43.25, 76.95, 1000, 10, { true }).isEmpty()
+    }
+
+    def "forEachVisible returns the owned and granted locations inside the box whichever way it walks"() {
+
+        given:
+            (1..200).each { int i ->
+                double longitude = i % 3 == 0 ? 0.0 : i % 2 == 0 ? 179.8 : -179.8
+                index.put(new Location(i as Long, (i % 4) as Long, "n", "a", i * 0.01, longitude))
+            }
+            def inBox = { Long lid, double north -> lid * 0.01 >= 0.5 && lid * 0.01 <= north && lid % 3 != 0 }
+
+        when:
+            def owned = []
+            index.forEachVisible(1L, [2L, 6L, 150L] as Set, 0.5, 179.5, 1.0, -179.5, { owned << it.lid })
+            def shared = []
+            index.forEachVisible(1L, (1L..200L) as Set, 0.5, 179.5, 1.0, -179.5, { shared << it.lid })
+            def small = []
+            index.forEachVisible(1L, (1L..200L) as Set, 0.5, 179.5, 0.6, -179.5, { small << it.lid })
+
+        then:
+            owned.sort() == (1L..200L).findAll { it % 4 == 1 && inBox(it, 1.0) }
+            shared.sort() == (1L..200L).findAll { inBox(it, 1.0) }
+            small.sort() == (1L..200L).findAll { inBox(it, 0.6) }
+    }
+
+    def "a location deleted or changed while the load streams is not brought back by the load"() {
+
+        given:
+            def repository = Mock(LocationRepository)
+            def loading = new LocationIndex(repository, new NearbyProperties(cellDegrees: 0.01))
+            repository.streamWithCoordinates(_) >> { Consumer<Location> consumer ->
+                loading.remove(1L)
+                loading.put(location(2L, 10.0, 10.0))
+                loading.removeOwner(8L)
+                consumer.accept(location(1L, 43.25, 76.95))
+                consumer.accept(location(2L, 43.25, 76.95))
+                consumer.accept(new Location(3L, 8L, "n", "a", 43.25, 76.95))
+                consumer.accept(location(4L, 43.25, 76.95))
+                CompletableFuture.completedFuture(4L)
+            }
+
+        when:
+            loading.load()
+
+        then:
+            loading.nearest(43.25, 76.95, 1000, 10, { true })*.location*.lid == [4L]
+            loading.nearest(10.0, 10.0, 1000, 10, { true })*.location*.lid == [2L]
+    }
+
+    def "a failed load reports the index down until a retry succeeds"() {
+
+        given:
+            def repository = Mock(LocationRepository)
+            def loading = new LocationIndex(repository, new NearbyProperties(cellDegrees: 0.01))
+            def failed = new CompletableFuture<Long>()
+            failed.completeExceptionally(new IllegalStateException("database down"))
+
+        when:
+            loading.load()
+
+        then:
+            1 * repository.streamWithCoordinates(_) >> failed
+            !loading.loaded
+            loading.health().status == Status.DOWN
+
+        when:
+            loading.retryLoad()
+            loading.retryLoad()
+
+        then: "a loaded index is not loaded again"
+            1 * repository.streamWithCoordinates(_) >> { Consumer<Location> consumer ->
+                consumer.accept(location(1L, 43.25, 76.95))
+                CompletableFuture.completedFuture(1L)
+            }
+            loading.loaded
+            loading.health().status == Status.UP
+            loading.size() == 1
+    }
+
+    private static Location location(Long lid, double latitude, double longitude) {
+
+        return new Location(lid, 7L, "Location " + lid, "Address", latitude, longitude)
+    }
+}
@@ -0,0 +1,41 @@
+package location.service
+
+import com.example.location.component.LocationMetrics
+import com.example.location.component.MetricsContext
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class LocationMetricsTest extends Specification {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    def "timed tasks record queue wait and run time tagged with the submitting operation"() {
+
+        given:
+            String seenOperation = null
+            String previous = MetricsContext.enterOperation("LocationRepository.findById")
+            Runnable task = LocationMetrics.timed(registry, "jdbc-read", {
+                Thread.sleep(5)
+                seenOperation = MetricsContext.operation()
+            })
+            MetricsContext.restoreOperation(previous)
+
+        when:
+            Thread.sleep(5)
+            Thread worker = new Thread(task)
+            worker.start()
+            worker.join()
+
+        then:
+            def wait = registry.get("jdbc.queue.wait").tag("operation", "LocationRepository.findById").timer()
+            def execution = registry.get("jdbc.execution").tag("executor", "jdbc-read").timer()
+            wait.count() == 1
+            wait.totalTime(TimeUnit.MILLISECONDS) >= 5
+            execution.count() == 1
+            execution.totalTime(TimeUnit.MILLISECONDS) >= 5
+            seenOperation == "LocationRepository.findById"
+            MetricsContext.operation() == MetricsContext.NONE
+    }
+}
@@ -1,14 +1,23 @@
 package location.service
 
+import com.example.location.component.AccessDecisionCache
+import com.example.location.component.ChangeFeed
+import com.example.location.component.ETagCache
 import com.example.location.component.HistoryEventPublisher
+import com.example.location.component.LocationIndex
+import com.example.location.configuration.ClusterProperties
+import com.example.location.configuration.NearbyProperties
 import com.example.location.dto.LocationDTO
 import com.example.location.dto.SharedLocation
+import com.example.location.entities.Access
 import com.example.location.entities.Location
 import com.example.location.entities.User
 import com.example.location.repositories.AccessRepository
 import com.example.location.repositories.LocationRepository
 import com.example.location.repositories.UserRepository
 import com.example.location.services.LocationServiceImpl
+import com.example.location.util.BadRequestException
+import com.example.location.util.Cursor
 import com.example.location.util.NotFoundException
 import com.example.location.util.Util
 import spock.lang.Specification
@@ -25,39 +34,87 @@ class LocationServiceImplTest extends Specification {
 
     HistoryEventPublisher historyEventPublisher = Mock(HistoryEventPublisher)
 
-    LocationServiceImpl locationService = new LocationServiceImpl(locationRepository, accessRepository, userRepository, historyEventPublisher)
+    AccessDecisionCache accessDecisionCache = Mock(AccessDecisionCache)
+
+    ETagCache etagCache = Mock(ETagCache)
+
+    LocationIndex locationIndex = new LocationIndex(locationRepository, new NearbyProperties())
+
+    ChangeFeed changeFeed = Mock(ChangeFeed)
+
+    LocationServiceImpl locationService = new LocationServiceImpl(locationRepository, accessRepository, userRepository,
+        historyEventPublisher, accessDecisionCache, etagCache, locationIndex, new NearbyProperties(),
+        new ClusterProperties(), changeFeed)
 
     def "findUserLocations should return a list of location DTOs for a given user"() {
 
         given:
             def uid = 1L
-            def location1 = new Location(uid: uid, name: "Location 1", address: "Address 1")
-            def location2 = new Location(uid: uid, name: "Location 2", address: "Address 2")
+            def location1 = new Location(lid: 10L, uid: uid, name: "Location 1", address: "Address 1")
+            def location2 = new Location(lid: 20L, uid: uid, name: "Location 2", address: "Address 2")
+            def access = new Access(aid: 1L, uid: 2L, lid: 20L, type: "read-only")
             def locations = [location1, location2]
-            locationRepository.findAllByUid(uid) >> CompletableFuture.completedFuture(locations)
-            accessRepository.findAllByLid(location1.lid) >> CompletableFuture.completedFuture([])
-            accessRepository.findAllByLid(location2.lid) >> CompletableFuture.completedFuture([])
+            locationRepository.findAllByUid(uid, 0L, 101) >> CompletableFuture.completedFuture(locations)
+            accessRepository.findAllByLids([10L, 20L]) >> CompletableFuture.completedFuture([access])
 
         when:
-            def result = locationService.findUserLocations(uid).join()
+            def result = locationService.findUserLocations(uid, null, null).join()
 
         then:
-            result == [new LocationDTO(location1, []),
-                       new LocationDTO(location2, [])]
+            result.items == [new LocationDTO(location1, []),
+                             new LocationDTO(location2, [access])]
+            result.next == null
+    }
+
+    def "findUserLocations should load access rows with a single batched query"() {
+
+        given:
+            def uid = 1L
+            def locations = (1..500).collect { new Location(lid: it as Long, uid: uid, name: "Location", address: "Address") }
+            def accessRepositoryMock = Mock(AccessRepository)
+            def service = new LocationServiceImpl(locationRepository, accessRepositoryMock, userRepository, historyEventPublisher,
+                accessDecisionCache, etagCache, locationIndex, new NearbyProperties(), new ClusterProperties(),
+                changeFeed)
+            locationRepository.findAllByUid(uid, 0L, 501) >> CompletableFuture.completedFuture(locations)
+
+        when:
+            def result = service.findUserLocations(uid, null, 500).join()
+
+        then:
+            1 * accessRepositoryMock.findAllByLids(_) >> CompletableFuture.completedFuture([])
+            0 * accessRepositoryMock.findAllByLid(_)
+            result.items.size() == 500
     }
 
     def "findUserLocations should return an empty list when no locations are found"() {
 
         given:
             def uid = 1L
-            locationRepository.findAllByUid(uid) >> CompletableFuture.completedFuture(new ArrayList<LocationDTO>())
+            locationRepository.findAllByUid(uid, 0L, 101) >> CompletableFuture.completedFuture(new ArrayList<Location>())
 
         when:
-            def result = locationService.findUserLocations(uid).join()
+            def result = locationService.findUserLocations(uid, null, null).join()
 
         then:
 
-            result == []
+            result.items == []
+            result.next == null
+    }
+
+    def "findUserLocations should return a cursor when there are more locations than the page size"() {
+
+        given:
+            def uid = 1L
+            def locations = (11..13).collect { new Location(lid: it as Long, uid: uid, name: "Location", address: "Address") }
+            locationRepository.findAllByUid(uid, 10L, 3) >> CompletableFuture.completedFuture(locations)
+            accessRepository.findAllByLids([11L, 12L]) >> CompletableFuture.completedFuture([])
+
+        when:
+            def result = locationService.findUserLocations(uid, Cursor.encode(10L), 2).join()
+
+        then:
+            result.items*.id == [11L, 12L]
+            Cursor.decode(result.next, 1) == [12L] as long[]
     }
 
     def "saveLocation should return the saved location when valid parameters are provided"() {
@@ -127,13 +184,32 @@ class LocationServiceImplTest extends Specification {
             def location2 = new Location(uid: uid as Long, name: "Location 2", address: "Address 2")
             def allSharedLocations = [new SharedLocation(location1, user.email),
                                       new SharedLocation(location2, user.email)]
-            locationRepository.findAllLocations(uidL) >> CompletableFuture.completedFuture(allSharedLocations)
+            locationRepository.findAllLocations(uidL, 0L, 101) >> CompletableFuture.completedFuture(allSharedLocations)
+
+        when:
+            def result = locationService.findAllLocations(uid, null, null).join()
+
+        then:
+            result.items == allSharedLocations
+            result.next == null
+    }
+
+    def "findAllLocations should not split the rows of one location across pages"() {
+
+        given:
+            def uid = 1L
+            def rows = [new SharedLocation(lid: 1L, email: "a@example.com"),
+                        new SharedLocation(lid: 2L, email: "a@example.com"),
+                        new SharedLocation(lid: 2L, email: "b@example.com"),
+                        new SharedLocation(lid: 3L, email: "a@example.com")]
+            locationRepository.findAllLocations(uid, 0L, 3) >> CompletableFuture.completedFuture(rows)
 
         when:
-            def result = locationService.findAllLocations(uid).join()
+            def result = locationService.findAllLocations(uid, null, 2).join()
 
         then:
-            result == allSharedLocations
+            result.items == rows.subList(0, 3)
+            Cursor.decode(result.next, 1) == [2L] as long[]
     }
 
     def "deleteById should return true when location with ID '#lid' exists"() {
@@ -150,6 +226,23 @@ class LocationServiceImplTest extends Specification {
         then:
             result == true
             1 * historyEventPublisher.publishHistoryDeletedEvent(1L, Util.ObjectType.LOCATION, location)
+            1 * accessDecisionCache.invalidateLocation(locationId)
+    }
+
+    def "deleteById should tell the former grantees through the change feed"() {
+
+        given:
+            def location = new Location(lid: 1L, uid: 1L, name: "Location 1", address: "Address 1")
+            changeFeed.hasSubscribers() >> true
+            accessRepository.findAudienceByLid(1L) >> CompletableFuture.completedFuture([1L, 5L, 6L])
+            locationRepository.findById(1L) >> CompletableFuture.completedFuture(Optional.of(location))
+            locationRepository.deleteById(1L) >> CompletableFuture.completedFuture(Boolean.TRUE)
+
+        when:
+            locationService.deleteById(1L).join()
+
+        then:
+            1 * changeFeed.publish([5L, 6L], { it*.lid == [1L] && it*.action == ["deleted"] })
     }
 
     def "deleteById should throw NotFoundException when location with ID '#lid' does not exist"() {
@@ -171,6 +264,99 @@ class LocationServiceImplTest extends Specification {
             result == null
             0 * historyEventPublisher.publishHistoryDeletedEvent(_)
     }
-}
 
+    def "findNearby should return only owned and shared locations, nearest first"() {
 
+        given:
+            locationIndex.put(new Location(1L, 7L, "Own", "Address", 43.2381, 76.9452))
+            locationIndex.put(new Location(2L, 8L, "Shared", "Address", 43.2400, 76.9500))
+            locationIndex.put(new Location(3L, 9L, "Foreign", "Address", 43.2382, 76.9453))
+            accessRepository.findAllByUid(7L) >> CompletableFuture.completedFuture(
+                [new Access(aid: 1L, uid: 7L, lid: 2L, type: "read-only")])
+
+        when:
+            def result = locationService.findNearby(7L, 43.2380, 76.9450, 2000d, null).join()
+
+        then:
+            result*.lid == [1L, 2L]
+            result*.accessType == ["owner", "read-only"]
+            result[0].distance < result[1].distance
+    }
+
+    def "findNearby should reject invalid coordinates and radius"() {
+
+        when:
+            locationService.findNearby(7L, latitude, longitude, radius, null)
+
+        then:
+            thrown(BadRequestException)
+
+        where:
+            latitude | longitude | radius
+            null     | 76.9      | null
+            91d      | 76.9      | null
+            43.2     | 181d      | null
+            43.2     | 76.9      | 0d
+            43.2     | 76.9      | 1_000_000d
+    }
+
+    def "saveLocation should reject a latitude without a longitude"() {
+
+        when:
+            locationService.saveLocation(new Location(lid: null, uid: 1L, name: "n", address: "a", latitude: 43.2))
+
+        then:
+            thrown(BadRequestException)
+    }
+
+    def "findClusters should aggregate visible locations per cell and return lone ones as points"() {
+
+        given:
+            locationIndex.put(new Location(1L, 7L, "Own", "Address", 43.20, 76.90))
+            locationIndex.put(new Location(2L, 8L, "Shared", "Address", 43.30, 77.00))
+            locationIndex.put(new Location(3L, 9L, "Foreign", "Address", 43.25, 76.95))
+            locationIndex.put(new Location(4L, 7L, "Far", "Address", 51.10, 71.40))
+            locationIndex.put(new Location(5L, 7L, "Outside", "Address", 10.00, 10.00))
+            accessRepository.findAllByUid(7L) >> CompletableFuture.completedFuture(
+                [new Access(aid: 1L, uid: 7L, lid: 2L, type: "read-only")])
+
+        when:
+            def result = locationService.findClusters(7L, 40d, 60d, 55d, 80d, 5).join()
+
+        then:
+            result.size() == 2
+            with(result.find { it.count == 2 }) {
+                Math.abs(latitude - 43.25d) < 1e-9
+                Math.abs(longitude - 76.95d) < 1e-9
+                lid == null
+            }
+            with(result.find { it.count == 1 }) {
+                lid == 4L
+                accessType == "owner"
+            }
+    }
+
+    def "findClusters should return single locations past the point zoom"() {
+
+        given:
+            locationIndex.put(new Location(1L, 7L, "Own", "Address", 43.2000, 76.9000))
+            locationIndex.put(new Location(2L, 7L, "Own", "Address", 43.2001, 76.9001))
+            accessRepository.findAllByUid(7L) >> CompletableFuture.completedFuture([])
+
+        when:
+            def result = locationService.findClusters(7L, 43.19d, 76.89d, 43.21d, 76.91d, 16).join()
+
+        then:
+            result*.lid.sort() == [1L, 2L]
+            result*.count == [1L, 1L]
+    }
+
+    def "findClusters should reject a box too large for the zoom"() {
+
+        when:
+            locationService.findClusters(7L, -90d, -180d, 90d, 180d, 10)
+
+        then:
+            thrown(BadRequestException)
+    }
+}
@@ -0,0 +1,116 @@
+package location.service
+
+import com.example.location.component.SessionTokens
+import com.example.location.configuration.SessionProperties
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+class SessionTokensTest extends Specification {
+
+    static final long NOW = 1_700_000_000_000L
+    static final String SECRET = Base64.encoder.encodeToString(new byte[32])
+
+    SessionProperties properties = new SessionProperties(secret: SECRET, ttl: Duration.ofHours(1))
+    Clock clock = Mock(Clock) { millis() >> { now } }
+    long now = NOW
+
+    SessionTokens sessionTokens = new SessionTokens(properties, clock)
+
+    def "a token verifies to the uid it was issued to, with or without the Bearer prefix"() {
+
+        when:
+            def token = sessionTokens.issue(42L)
+
+        then:
+            token.length() == 87
+            sessionTokens.verify(token) == 42L
+            sessionTokens.verify("Bearer " + token) == 42L
+    }
+
+    def "a token signed with another key or altered anywhere is rejected"() {
+
+        given:
+            def token = sessionTokens.issue(42L)
+            def otherSecret = Base64.encoder.encodeToString([1] * 32 as byte[])
+            def other = new SessionTokens(new SessionProperties(secret: otherSecret), clock)
+
+        expect:
+            other.verify(token) == 0L
+            (0..<token.length()).findAll { it != 43 }.every { i ->
+                def altered = token.substring(0, i) + (token.charAt(i) == 'A' ? 'B' : 'A') + token.substring(i + 1)
+                sessionTokens.verify(altered) == 0L
+            }
+    }
+
+    def "malformed tokens are rejected"() {
+
+        expect:
+            sessionTokens.verify(token) == 0L
+
+        where:
+            token << [null, "", "42", "Bearer ", "a" * 87, "a" * 43 + "." + "a" * 42, "é" * 43 + "." + "a" * 43]
+    }
+
+    def "a token stops verifying when it expires"() {
+
+        given:
+            def token = sessionTokens.issue(42L)
+
+        when:
+            now = NOW + Duration.ofHours(1).toMillis()
+
+        then:
+            sessionTokens.verify(token) == 0L
+    }
+
+    def "a revoked token is rejected until it expires and then forgotten"() {
+
+        given:
+            def token = sessionTokens.issue(42L)
+            def other = sessionTokens.issue(42L)
+
+        when:
+            sessionTokens.revoke(token)
+
+        then:
+            sessionTokens.verify(token) == 0L
+            sessionTokens.verify(other) == 42L
+
+        when:
+            now = NOW + Duration.ofHours(1).toMillis()
+            sessionTokens.purge()
+
+        then:
+            sessionTokens.revokedCount == 0
+    }
+
+    def "revoking a user rejects the tokens issued so far but not later ones"() {
+
+        given:
+            def token = sessionTokens.issue(42L)
+            def otherUser = sessionTokens.issue(43L)
+
+        when:
+            sessionTokens.revokeUser(42L)
+            now = NOW + 1
+            def later = sessionTokens.issue(42L)
+
+        then:
+            sessionTokens.verify(token) == 0L
+            sessionTokens.verify(otherUser) == 43L
+            sessionTokens.verify(later) == 42L
+    }
+
+    def "a secret shorter than 32 bytes is refused"() {
+
+        when:
+            new SessionTokens(new SessionProperties(secret: Base64.encoder.encodeToString(new byte[16])), clock)
+
+        then:
+            thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,96 @@
+package location.service
+
+import com.example.location.configuration.SyncProperties
+import com.example.location.dto.SharedLocation
+import com.example.location.dto.SyncChanges
+import com.example.location.repositories.LocationRepository
+import com.example.location.repositories.SyncRepository
+import com.example.location.services.SyncService
+import com.example.location.util.BadRequestException
+import com.example.location.util.Cursor
+import com.example.location.util.GoneException
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.CompletableFuture
+
+class SyncServiceTest extends Specification {
+
+    static final long NOW = 1_700_000_000_000L
+
+    SyncRepository syncRepository = Mock(SyncRepository)
+    LocationRepository locationRepository = Mock(LocationRepository)
+    SyncProperties properties = new SyncProperties(retention: Duration.ofDays(1), settle: Duration.ofSeconds(5))
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC)
+
+    SyncService syncService = new SyncService(syncRepository, locationRepository, properties, clock)
+
+    def "currentToken encodes the settled version and the time of issue"() {
+
+        when:
+            def token = syncService.currentToken().join()
+
+        then:
+            1 * syncRepository.findSettledVersion(Duration.ofSeconds(5)) >> CompletableFuture.completedFuture(42L)
+            Cursor.decode(token, 2) == [42L, NOW] as long[]
+    }
+
+    def "findChanges with nothing changed returns no rows and a fresh token"() {
+
+        given:
+            def token = Cursor.encode(42L, NOW - 60_000L)
+
+        when:
+            def delta = syncService.findChanges(1L, token).join()
+
+        then:
+            1 * syncRepository.findChanges(1L, 42L, Duration.ofSeconds(5)) >>
+                CompletableFuture.completedFuture(new SyncChanges([] as Set, 42L))
+            0 * locationRepository._
+            delta.items.isEmpty()
+            Cursor.decode(delta.token, 2) == [42L, NOW] as long[]
+    }
+
+    def "findChanges returns the changed rows and marks the ones no longer visible as revoked"() {
+
+        given:
+            def token = Cursor.encode(42L, NOW - 60_000L)
+            def changed = new LinkedHashSet<Long>([5L, 7L])
+            syncRepository.findChanges(1L, 42L, _) >> CompletableFuture.completedFuture(new SyncChanges(changed, 50L))
+
+        when:
+            def delta = syncService.findChanges(1L, token).join()
+
+        then:
+            1 * locationRepository.findSharedLocations(1L, changed) >>
+                CompletableFuture.completedFuture([new SharedLocation(5L, "a@b.c", "name", "address", "owner")])
+            delta.items*.lid == [5L, 7L]
+            delta.items*.accessType == ["owner", "revoked"]
+            Cursor.decode(delta.token, 2)[0] == 50L
+    }
+
+    def "findChanges rejects a token older than the retention"() {
+
+        given:
+            def token = Cursor.encode(42L, NOW - Duration.ofDays(1).toMillis())
+
+        when:
+            syncService.findChanges(1L, token)
+
+        then:
+            thrown(GoneException)
+            0 * syncRepository._
+    }
+
+    def "findChanges rejects a malformed token"() {
+
+        when:
+            syncService.findChanges(1L, "not-a-token")
+
+        then:
+            thrown(BadRequestException)
+    }
+}
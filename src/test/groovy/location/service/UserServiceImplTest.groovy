@@ -1,6 +1,12 @@
 package location.service
 
+import com.example.location.component.AccessDecisionCache
+import com.example.location.component.ETagCache
 import com.example.location.component.HistoryEventPublisher
+import com.example.location.component.LocationIndex
+import com.example.location.component.PasswordHasher
+import com.example.location.configuration.CacheProperties
+import com.example.location.configuration.PasswordProperties
 import com.example.location.entities.Access
 import com.example.location.entities.Location
 import com.example.location.entities.User
@@ -14,6 +20,7 @@ import com.example.location.util.Util
 import spock.lang.Specification
 
 import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
 
 class UserServiceImplTest extends Specification {
 
@@ -25,15 +32,29 @@ class UserServiceImplTest extends Specification {
 
     HistoryEventPublisher historyEventPublisher = Mock(HistoryEventPublisher)
 
-    UserServiceImpl userService = new UserServiceImpl(userRepository, locationRepository, accessRepository, historyEventPublisher)
+    AccessDecisionCache accessDecisionCache = new AccessDecisionCache(new CacheProperties())
+
+    ETagCache etagCache = Mock(ETagCache)
+
+    LocationIndex locationIndex = Mock(LocationIndex)
+
+    // the lowest BCrypt cost keeps the tests fast
+    PasswordHasher passwordHasher = new PasswordHasher(new PasswordProperties(cost: 4))
+
+    UserServiceImpl userService = new UserServiceImpl(userRepository, locationRepository, accessRepository, historyEventPublisher, accessDecisionCache, etagCache, locationIndex, passwordHasher)
+
+    def cleanup() {
+
+        passwordHasher.destroy()
+    }
 
     def "authorize should return user when email and password are valid"() {
 
         given:
             def email = "test@example.com"
             def password = "password"
-            def expectedUser = new User(email: email, password: password)
-            userRepository.findByEmailAndPassword(email, password) >> CompletableFuture.completedFuture(Optional.of(expectedUser))
+            def expectedUser = new User(uid: 1L, email: email, password: passwordHasher.hash(password).join())
+            userRepository.findByEmailForLogin(email) >> CompletableFuture.completedFuture(Optional.of(expectedUser))
 
         when:
             def result = userService.authorize(email, password).join()
@@ -43,6 +64,67 @@ class UserServiceImplTest extends Specification {
             result.get() == expectedUser
     }
 
+    def "authorize should return empty when the password is wrong or the user is unknown"() {
+
+        given:
+            def user = new User(uid: 1L, email: "test@example.com", password: passwordHasher.hash("password").join())
+            userRepository.findByEmailForLogin("test@example.com") >>
+                CompletableFuture.completedFuture(Optional.of(user))
+            userRepository.findByEmailForLogin("other@example.com") >>
+                CompletableFuture.completedFuture(Optional.empty())
+
+        expect:
+            !userService.authorize("test@example.com", "wrong").join().isPresent()
+            !userService.authorize("other@example.com", "password").join().isPresent()
+    }
+
+    def "authorize should accept a plaintext password and replace it with a hash"() {
+
+        given:
+            def users = Mock(UserRepository)
+            def service = new UserServiceImpl(users, locationRepository, accessRepository, historyEventPublisher,
+                accessDecisionCache, etagCache, locationIndex, passwordHasher)
+            def stored = new CompletableFuture<String>()
+            users.findByEmailForLogin("test@example.com") >>
+                CompletableFuture.completedFuture(Optional.of(new User(uid: 1L, password: "password")))
+            users.updatePassword(1L, "password", _) >> { Long uid, String expected, String hash ->
+                stored.complete(hash)
+                CompletableFuture.completedFuture(true)
+            }
+
+        when:
+            def result = service.authorize("test@example.com", "password").join()
+
+        then:
+            result.isPresent()
+            stored.get(5, TimeUnit.SECONDS).startsWith('$2a$04$')
+            !passwordHasher.needsRehash(stored.get())
+            passwordHasher.matches("password", stored.get()).join()
+    }
+
+    def "insertUser should store a hash of the password"() {
+
+        given:
+            def users = Mock(UserRepository)
+            def service = new UserServiceImpl(users, locationRepository, accessRepository, historyEventPublisher,
+                accessDecisionCache, etagCache, locationIndex, passwordHasher)
+            def user = new User(firstName: "John", lastName: "Doe", email: "test@example.com", password: "password")
+            String saved = null
+
+        when:
+            def result = service.insertUser(user).join()
+
+        then:
+            1 * users.save(_) >> { User it ->
+                saved = it.password
+                it.uid = 1L
+                CompletableFuture.completedFuture(it)
+            }
+            saved != "password"
+            passwordHasher.matches("password", saved).join()
+            result.password == null
+    }
+
     def "authorize should throw BadRequestException when email is null"() {
 
         when:
@@ -168,6 +250,51 @@ class UserServiceImplTest extends Specification {
             !result
     }
 
+    def "authorizeOwnerOrAdmin should answer repeated checks from the cache"() {
+
+        given:
+            def uid = 1L
+            def lid = 1L
+            def locations = Mock(LocationRepository)
+            def accesses = Mock(AccessRepository)
+            def service = new UserServiceImpl(userRepository, locations, accesses, historyEventPublisher, accessDecisionCache, etagCache, locationIndex, passwordHasher)
+
+        when:
+            def first = service.authorizeOwnerOrAdmin(uid, lid).join()
+            def second = service.authorizeOwnerOrAdmin(uid, lid).join()
+
+        then:
+            1 * locations.findByUidAndLid(uid, lid) >> CompletableFuture.completedFuture(Optional.of(new Location()))
+            1 * accesses.findByUidAndLid(uid, lid) >> CompletableFuture.completedFuture(Optional.empty())
+            first
+            second
+            accessDecisionCache.hitRatio() == 0.5d
+    }
+
+    def "authorizeOwnerOrAdmin should query again after the decision is invalidated"() {
+
+        given:
+            def uid = 1L
+            def lid = 1L
+            def locations = Mock(LocationRepository)
+            def accesses = Mock(AccessRepository)
+            def service = new UserServiceImpl(userRepository, locations, accesses, historyEventPublisher, accessDecisionCache, etagCache, locationIndex, passwordHasher)
+
+        when:
+            def before = service.authorizeOwnerOrAdmin(uid, lid).join()
+            accessDecisionCache.invalidate(uid, lid)
+            def after = service.authorizeOwnerOrAdmin(uid, lid).join()
+
+        then:
+            2 * locations.findByUidAndLid(uid, lid) >> CompletableFuture.completedFuture(Optional.empty())
+            2 * accesses.findByUidAndLid(uid, lid) >>> [
+                CompletableFuture.completedFuture(Optional.empty()),
+                CompletableFuture.completedFuture(Optional.of(new Access(uid: uid, lid: lid, type: Util.AccessType.ADMIN.getValue())))
+            ]
+            !before
+            after
+    }
+
     def "deleteUser should return true and publish event when user exists and is deleted successfully"() {
 
         given:
@@ -180,6 +307,7 @@ class UserServiceImplTest extends Specification {
         then:
             result == true
             1 * historyEventPublisher.publishHistoryDeletedEvent(uid, Util.ObjectType.USER, uid)
+            1 * locationIndex.removeOwner(uid)
     }
 
     def "deleteUser should return throw exception and don't publish event when user does not exist"() {
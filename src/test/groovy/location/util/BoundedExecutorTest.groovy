@@ -0,0 +1,40 @@
+package location.util
+
+import com.example.location.util.BoundedExecutor
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class BoundedExecutorTest extends Specification {
+
+    BoundedExecutor executor = new BoundedExecutor("test", 1, 1)
+
+    def cleanup() {
+
+        executor.shutdown(1, TimeUnit.SECONDS)
+    }
+
+    def "execute should reject tasks once threads and queue are full"() {
+
+        given:
+            def release = new CountDownLatch(1)
+            def started = new CountDownLatch(1)
+            executor.execute({ started.countDown(); release.await() })
+            started.await(1, TimeUnit.SECONDS)
+            executor.execute({ release.await() })
+
+        when:
+            executor.execute({})
+
+        then:
+            thrown(RejectedExecutionException)
+            executor.rejectedCount == 1
+            executor.queueDepth == 1
+            executor.activeCount == 1
+
+        cleanup:
+            release.countDown()
+    }
+}
@@ -0,0 +1,89 @@
+package location.util
+
+import com.example.location.util.LruCache
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class LruCacheTest extends Specification {
+
+    long now = 0L
+
+    LruCache<String, String> cache = new LruCache<>(2, 10, TimeUnit.SECONDS, { now })
+
+    def "the least recently used entry is evicted first"() {
+
+        given:
+            cache.put("a", "1")
+            cache.put("b", "2")
+            cache.get("a")
+
+        when:
+            cache.put("c", "3")
+
+        then:
+            cache.get("a") == "1"
+            cache.get("b") == null
+            cache.get("c") == "3"
+            cache.getEvictionCount() == 1
+    }
+
+    def "an entry expires after its time to live"() {
+
+        given:
+            cache.put("a", "1", [], 1, TimeUnit.SECONDS, cache.generation())
+            cache.put("b", "2")
+
+        when:
+            now = TimeUnit.SECONDS.toNanos(5)
+
+        then:
+            cache.get("a") == null
+            cache.get("b") == "2"
+            cache.size() == 1
+    }
+
+    def "a put is refused only if its own key or one of its tags was invalidated since the generation was read"() {
+
+        given:
+            def generation = cache.generation()
+            cache.invalidate("other")
+            cache.invalidateTag(1L)
+
+        expect:
+            cache.put("a", "1", [2L], generation)
+            !cache.put("b", "2", [1L, 2L], generation)
+            !cache.put("other", "3", generation)
+            cache.get("a") == "1"
+    }
+
+    def "invalidateAll refuses every put of an earlier generation"() {
+
+        given:
+            def generation = cache.generation()
+            cache.invalidateAll()
+
+        expect:
+            !cache.put("a", "1", generation)
+            cache.put("a", "1", cache.generation())
+    }
+
+    def "invalidateTag drops the entries carrying the tag and nothing else"() {
+
+        given:
+            def large = new LruCache<String, String>(10000, 10, TimeUnit.SECONDS)
+            large.put("a", "1", [1L], 0L)
+            large.put("b", "2", [1L, 2L], 0L)
+            large.put("c", "3", [2L], 0L)
+            large.put("a", "4", [3L], 0L)
+
+        when:
+            large.invalidateTag(1L)
+
+        then: "a was stored again without the tag"
+            large.get("a") == "4"
+            large.get("b") == null
+            large.get("c") == "3"
+            large.size() == 2
+    }
+}